@@ -0,0 +1,21 @@
+package com.the.rpc.common.consts;
+
+/**
+ * 提供者过载异常。请求被提供者的并发限制拒绝，没有执行，可以安全地换一个提供者重试
+ */
+public class OverloadedException extends RpcException {
+
+    /**
+     * 拒绝请求的提供者地址
+     */
+    private final String address;
+
+    public OverloadedException(String address) {
+        super("Provider is overloaded. address=" + address);
+        this.address = address;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+}
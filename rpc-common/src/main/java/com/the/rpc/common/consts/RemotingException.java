@@ -0,0 +1,26 @@
+package com.the.rpc.common.consts;
+
+/**
+ * 通信异常。连接失败、连接断开、调用超时等，说明提供者本身可能有问题，和服务实现抛出的业务异常区分开
+ */
+public class RemotingException extends RpcException {
+
+    /**
+     * 出问题的提供者地址
+     */
+    private final String address;
+
+    public RemotingException(String address, String message) {
+        super(message);
+        this.address = address;
+    }
+
+    public RemotingException(String address, String message, Throwable cause) {
+        super(message, cause);
+        this.address = address;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+}
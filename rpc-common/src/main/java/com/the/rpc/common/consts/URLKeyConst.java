@@ -5,7 +5,7 @@ package com.the.rpc.common.consts;
  */
 public interface URLKeyConst {
 
-    //客户端一开始连接到Zookeeper时连接时间的字段常量
+    //注册中心 URL 上是客户端一开始连接到Zookeeper时连接时间; 服务引用 URL 上是调用超时时间, 可以用 方法名.timeout 单独指定
     String TIMEOUT = "timeout";
 
     String DEFAULT_PREFIX = "default.";
@@ -24,4 +24,136 @@ public interface URLKeyConst {
     String ANY_HOST = "anyHost";
 
     String THE_RPC_PROTOCOL = "the-rpc";
+
+    //序列化方式, 可以用 方法名.serializer 单独指定
+    String SERIALIZER = "serializer";
+
+    //消费者代理的生成方式: stub, jdk
+    String PROXY = "proxy";
+
+    //提供者业务线程数
+    String THREADS = "threads";
+
+    //提供者流式调用的最大线程数, 默认 200. 流式调用和普通调用使用不同的线程池, 慢的流不会占满普通调用的线程
+    String STREAM_THREADS = "streamThreads";
+
+    //提供者并发限制算法: gradient(默认), none 表示不限制
+    String LIMITER = "limiter";
+
+    //提供者每个方法的最大并发数, 自适应限制不会超过这个值
+    String MAX_CONCURRENCY = "maxConcurrency";
+
+    //消费者负载均衡方式: random
+    String LOADBALANCE = "loadbalance";
+
+    //消费者是否对冲请求: 调用超过 p95 还没有返回就再发一份给另一个提供者, 只能用于幂等方法, 可以用 方法名.hedge 单独指定
+    String HEDGE = "hedge";
+
+    //消费者重试预算: 重试和对冲请求占正常请求的比例, 默认 0.1
+    String RETRY_BUDGET = "retryBudget";
+
+    //消费者是否缓存调用结果, 只能用于幂等方法, 可以用 方法名.cache 单独指定
+    String CACHE = "cache";
+
+    //每个方法最多缓存的结果数, 默认 10000
+    String CACHE_SIZE = "cacheSize";
+
+    //缓存过期毫秒数, 默认 60000
+    String CACHE_TTL = "cacheTtl";
+
+    //过滤器, 逗号分隔: name 加入过滤器, -name 去掉自动激活的过滤器, -default 去掉所有自动激活的过滤器
+    String FILTER = "filter";
+
+    //消费者分组
+    String CONSUMER = "consumer";
+
+    //提供者分组
+    String PROVIDER = "provider";
+
+    //是否使用 epoll 传输, 默认 true, 只在 Linux 并且本地库可用的时候生效, 否则使用 NIO
+    String EPOLL = "epoll";
+
+    //IO 线程数, 默认 CPU 核数的 2 倍. 消费者所有连接共用一组 IO 线程, 以第一个建立连接的引用为准
+    String IO_THREADS = "ioThreads";
+
+    //内存分配器: pooled(默认), unpooled
+    String ALLOCATOR = "allocator";
+
+    //是否优先使用堆外内存, 默认 true
+    String DIRECT_BUFFER = "directBuffer";
+
+    //是否关闭 Nagle 算法, 默认 true
+    String TCP_NODELAY = "tcpNoDelay";
+
+    //套接字发送缓冲区字节数, 不设置使用系统默认值
+    String SEND_BUFFER = "sendBuffer";
+
+    //套接字接收缓冲区字节数, 不设置使用系统默认值
+    String RECEIVE_BUFFER = "receiveBuffer";
+
+    //写缓冲区低水位字节数, 待发送的数据降到这个值以下连接重新变为可写, 默认 32768
+    String WRITE_BUFFER_LOW = "writeBufferLow";
+
+    //写缓冲区高水位字节数, 待发送的数据超过这个值连接变为不可写, 默认 65536
+    String WRITE_BUFFER_HIGH = "writeBufferHigh";
+
+    //消费者发现提供者在同一个 JVM 里面的时候是否直接调用, 不经过序列化和网络, 默认 true
+    String INJVM = "injvm";
+
+    //同一个 JVM 里面直接调用的时候, 参数和返回值是否通过序列化复制一份, 默认 false. 调用双方会修改参数或者返回值的时候开启
+    String INJVM_COPY = "injvmCopy";
+
+    //提供者的 Unix 域套接字路径, 需要 epoll. 配置了之后除了 TCP 端口还会监听这个路径, 同一台机器上的消费者优先通过它连接
+    String UNIX_SOCKET = "unixSocket";
+
+    //消费者和提供者在同一台机器上的时候是否优先使用 Unix 域套接字, 默认 true
+    String PREFER_UNIX_SOCKET = "preferUnixSocket";
+
+    //提供者的共享内存目录, 实验性质. 配置了之后同一台机器上的消费者通过目录里面的内存映射文件发送普通请求
+    String SHM = "shm";
+
+    //消费者共享内存每个方向的缓冲区字节数, 默认 4194304, 向上取整到 2 的幂
+    String SHM_SIZE = "shmSize";
+
+    //消费者和提供者在同一台机器上的时候是否优先使用共享内存, 默认 true
+    String PREFER_SHM = "preferShm";
+
+    //提供者关闭时从注册中心取消注册之后等待消费者感知的毫秒数, 这段时间里面照常处理请求, 默认 2000
+    String SHUTDOWN_WAIT = "shutdownWait";
+
+    //提供者关闭时等待正在执行的请求结束的最长毫秒数, 超过之后直接关闭连接, 默认 10000
+    String SHUTDOWN_TIMEOUT = "shutdownTimeout";
+
+    //管理端口, 配置了之后在 /metrics 上暴露 Prometheus 指标, 在 /admin/命令名 上执行管理命令, 一个 JVM 只启动一个, 默认 0 不启动
+    String METRICS_PORT = "metricsPort";
+
+    //管理端口监听的地址, 默认 127.0.0.1 只允许本机访问, 需要从别的机器抓取指标的时候配置成网卡地址或者 0.0.0.0
+    String METRICS_HOST = "metricsHost";
+
+    //是否开启链路追踪, 默认 false. 任意一个服务引用或者提供者开启之后对整个 JVM 生效, 开启之后同时向下游传递链路上下文
+    String TRACE = "trace";
+
+    //是否向下游传递链路上下文和 baggage, 默认 false, 开启了链路追踪的时候自动开启. 本服务不记录 span 但是要把上下游的链路串起来的时候单独开启
+    String TRACE_PROPAGATE = "tracePropagate";
+
+    //新建 trace 的采样率, 0 到 1 之间, 默认 1. 下游跟随上游的采样结果
+    String TRACE_SAMPLE = "traceSample";
+
+    //span 导出器: file(默认)
+    String TRACE_EXPORTER = "traceExporter";
+
+    //file 导出器写入的文件, 默认临时目录下的 the-rpc-spans-进程号.jsonl
+    String TRACE_FILE = "traceFile";
+
+    //应用名, 链路追踪导出的 service.name, 默认 the-rpc
+    String APPLICATION = "application";
+
+    //提供者的静态权重, 默认 100. 消费者按提供者上报的负载和预热进度在这个基础上调整
+    String WEIGHT = "weight";
+
+    //提供者是否在响应里面上报负载, 默认 false. 任意一个提供者开启之后对整个 JVM 生效. 不认识附件的旧版本消费者会丢弃带附件的响应, 全部升级之后再开启
+    String LOAD_REPORT = "loadReport";
+
+    //提供者预热毫秒数, 预热期间消费者按启动时长线性增加权重, 需要开启 loadReport, 默认 60000, 0 表示不预热
+    String WARMUP = "warmup";
 }
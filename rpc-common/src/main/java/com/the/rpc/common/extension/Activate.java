@@ -0,0 +1,34 @@
+package com.the.rpc.common.extension;
+
+import java.lang.annotation.*;
+
+/**
+ * 自动激活的扩展。通过 {@link ExtensionLoader#getActivateExtensions} 获取一组扩展的时候，
+ * 标记了此注解并且分组匹配的扩展会自动加入，按 order 从小到大排序
+ *
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Activate {
+    /**
+     * 在哪些分组激活，例如 consumer、provider
+     *
+     * @return 为空表示所有分组都激活
+     */
+    String[] group() default {};
+
+    /**
+     * URL 里面有哪些参数的时候才激活，写 key 表示参数有值就激活，写 key:value 表示参数等于 value 才激活，多个满足一个就激活
+     *
+     * @return 为空表示不看 URL 参数
+     */
+    String[] value() default {};
+
+    /**
+     * 排序，越小越靠前
+     *
+     * @return 默认 0
+     */
+    int order() default 0;
+}
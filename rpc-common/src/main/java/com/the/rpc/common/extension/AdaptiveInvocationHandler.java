@@ -4,58 +4,115 @@ import com.the.rpc.common.consts.URLKeyConst;
 import com.the.rpc.common.url.URL;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
+ * 自适应扩展的代理处理器。<br>
+ * 每个方法的 {@link Adaptive} 注解和 URL 参数的位置在创建的时候解析好，调用的时候只需要从 URL 里面取出扩展名，
+ * 再从扩展加载器的缓存里面拿到扩展实例
  */
 public class AdaptiveInvocationHandler<T> implements InvocationHandler {
 
     private final Class<T> clazz;
 
+    private final ExtensionLoader<T> loader;
+
+    /**
+     * 标记了 {@link Adaptive} 的方法 {方法: 解析好的信息}，创建之后只读
+     */
+    private final Map<Method, AdaptiveMethod> adaptiveMethods = new HashMap<>();
+
     public AdaptiveInvocationHandler(Class<T> tClass) {
         clazz = tClass;
+        loader = ExtensionLoader.getLoader(tClass);
+        for (Method method : tClass.getMethods()) {
+            //这里要增强的是RegistryFactory接口中的getRegistry(URL url)方法它被Adaptive注解
+            Adaptive adaptive = method.getAnnotation(Adaptive.class);
+            if (adaptive == null) {
+                continue;
+            }
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (URL.class.isAssignableFrom(parameterTypes[i])) {
+                    adaptiveMethods.put(method, new AdaptiveMethod(adaptive.value(), i, method));
+                    break;
+                }
+            }
+        }
     }
 
-    //这里要增强的是RegistryFactory接口中的getRegistry(URL url)方法它被Adaptive注解
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        //如果方法参数为0说明没有传入要zookeeper的注册url, 直接执行代理对象的原方法
-        if (args.length == 0) {
-            return method.invoke(proxy, args);
-        }
-        // 如果有参数就要看这参数是否是URL对象
-        URL url = null;
-        for (Object arg : args) {
-            if (arg instanceof URL) {
-                url = (URL) arg;
-                break;
-            }
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
         }
-        //没有就还是要执行原方法
+        AdaptiveMethod adaptiveMethod = adaptiveMethods.get(method);
+        //没有被Adaptive注解或者没有URL参数, 不知道该用哪个扩展
+        if (adaptiveMethod == null) {
+            throw new UnsupportedOperationException("Method is not adaptive. method=" + method + ", type=" + clazz.getName());
+        }
+        URL url = (URL) args[adaptiveMethod.urlIndex];
         if (url == null) {
-            return method.invoke(proxy, args);
-        }
-        //查看该方法有被Adaptive注解吗, 没有还是执行原方法
-        Adaptive adaptive = method.getAnnotation(Adaptive.class);
-        if (adaptive == null) {
-            return method.invoke(proxy, args);
-        }
-        //获取注解值,查看是不是属于协议的方法
-        String extendNameKey = adaptive.value();
-        //定义协议名
-        String extendName;
-        //如果该方法是协议就将url里参数协议名设置好, 比如在url中我们设置协议为protocol : zk, 那么它就会注解判断是不是protocol方法, 如果是就拿到URL中的protocol key ,然后拿到具体协议名
-        if (URLKeyConst.PROTOCOL.equals(extendNameKey)) {
-            extendName = url.getProtocol();
-        } else {
+            throw new IllegalArgumentException("url == null. method=" + method);
+        }
+        //根据协议名也就是name= zk ,扩展加载器中的name为zk的扩展类
+        T extension = loader.getExtension(adaptiveMethod.getExtensionName(url));
+        try {
+            return method.invoke(extension, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Adaptive " + clazz.getName();
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    /**
+     * 解析好的自适应方法
+     */
+    private static class AdaptiveMethod {
+
+        /**
+         * URL 里面保存扩展名的参数 key
+         */
+        private final String key;
+
+        /**
+         * URL 参数的位置
+         */
+        private final int urlIndex;
+
+        /**
+         * URL 里面没有参数的时候使用的扩展名
+         */
+        private final String defaultName;
+
+        AdaptiveMethod(String key, int urlIndex, Method method) {
+            this.key = key;
+            this.urlIndex = urlIndex;
+            this.defaultName = method.getDeclaringClass() + "." + method.getName();
+        }
+
+        String getExtensionName(URL url) {
+            //如果该方法是协议就将url里参数协议名设置好, 比如在url中我们设置协议为protocol : zk, 那么它就会注解判断是不是protocol方法, 如果是就拿到URL中的protocol key ,然后拿到具体协议名
+            if (URLKeyConst.PROTOCOL.equals(key)) {
+                return url.getProtocol();
+            }
             //如果定义参数没有协议protocol,那么就查看是否有扩展名是否有协议名, 没有就将该方法的全限定名作为协议名
-            extendName = url.getParam(extendNameKey, method.getDeclaringClass() + "." + method.getName());
-        }
-        //获取该clazz的扩展加载器 RegistryFactory的扩展加载器
-        ExtensionLoader<T> extensionLoader = ExtensionLoader.getLoader(clazz);
-        //根据协议名也就是name= zk ,扩展假期器中的name为zk的扩展类
-        T extension = extensionLoader.getExtension(extendName);
-        //最后将执行扩展类(实现方法调用)
-        return method.invoke(extension, args);
+            return url.getParam(key, defaultName);
+        }
     }
 }
@@ -0,0 +1,132 @@
+package com.the.rpc.common.extension;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 编译时生成扩展索引的注解处理器。<br>
+ * 编译结束的时候读取输出目录里面的 {@code META-INF/the-rpc/} 扩展配置文件，连同扩展类上的 {@link Activate} 信息，
+ * 写到一个索引文件 {@link ExtensionLoader#INDEX_PATH} 里面。运行时 {@link ExtensionLoader} 只读这一个文件，
+ * 不用按类型扫描类路径，也不用为了读取 {@link Activate} 加载扩展类。<br>
+ * 索引每一行的格式：类型|扩展名|扩展类全名|自动激活信息|包装信息。<br>
+ * 自动激活信息为空表示不自动激活，否则是 order;分组1,分组2;参数1,参数2。包装信息为空表示不是包装扩展，否则是 {@link Wrapper#order()}<br>
+ * 打包了 rpc-common 的模块编译时自动执行。只改了扩展配置文件没有改代码的时候，编译插件可能跳过编译，索引不会更新，需要重新完整编译。<br>
+ * 输出目录不在文件系统上的时候（例如某些 IDE 或者构建工具的内存 Filer）不生成索引，运行时读取配置文件，结果一样。<br>
+ * 只声明扩展相关的注解，编译的代码里面用到了其中一个才会执行，不会参与其他模块的每一轮注解处理。
+ * 扩展类都没有标记这些注解的模块不生成索引，同样按配置文件读取
+ *
+ */
+@SupportedAnnotationTypes({
+        "com.the.rpc.common.extension.SPI",
+        "com.the.rpc.common.extension.Activate",
+        "com.the.rpc.common.extension.Wrapper",
+        "com.the.rpc.common.extension.Adaptive"
+})
+public class ExtensionIndexProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // 所有类都编译完再生成，不认领这些注解，其他处理器照常处理
+        if (roundEnv.processingOver()) {
+            try {
+                generate();
+            } catch (IOException | RuntimeException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Generate extension index fail. " + e);
+            }
+        }
+        return false;
+    }
+
+    private void generate() throws IOException {
+        FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ExtensionLoader.INDEX_PATH);
+        URI uri = index.toUri();
+        // Filer 不保证输出目录在文件系统上，列不出配置文件就不生成索引，运行时照常读取配置文件
+        if (!"file".equalsIgnoreCase(uri.getScheme())) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Extension index is skipped, class output is not a directory. uri=" + uri);
+            return;
+        }
+        // 资源文件在编译之前已经复制到输出目录
+        Path dir = Paths.get(uri).getParent().resolve(ExtensionLoader.EXTENSION_DIR);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        StringBuilder buf = new StringBuilder("# Generated by ").append(getClass().getSimpleName()).append(", do not edit\n");
+        for (Path file : files) {
+            String type = file.getFileName().toString();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] kv = ExtensionLoader.parseLine(line);
+                if (kv != null) {
+                    TypeElement element = getTypeElement(kv[1]);
+                    buf.append(type).append('|').append(kv[0]).append('|').append(kv[1]).append('|')
+                            .append(activateInfo(element)).append('|').append(wrapperInfo(type, element)).append('\n');
+                }
+            }
+        }
+        try (Writer writer = index.openWriter()) {
+            writer.write(buf.toString());
+        }
+    }
+
+    private TypeElement getTypeElement(String className) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        if (element == null) {
+            throw new IllegalStateException("Extension class not found. class=" + className);
+        }
+        return element;
+    }
+
+    private String activateInfo(TypeElement element) {
+        Activate activate = element.getAnnotation(Activate.class);
+        if (activate == null) {
+            return "";
+        }
+        return activate.order() + ";" + String.join(",", activate.group()) + ";" + String.join(",", activate.value());
+    }
+
+    /**
+     * 有只接收扩展接口类型参数的 public 构造函数就是包装扩展
+     */
+    private String wrapperInfo(String type, TypeElement element) {
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PUBLIC) && parameters.size() == 1
+                    && type.equals(types.erasure(parameters.get(0).asType()).toString())) {
+                Wrapper wrapper = element.getAnnotation(Wrapper.class);
+                return String.valueOf(wrapper == null ? 0 : wrapper.order());
+            }
+        }
+        return "";
+    }
+}
@@ -1,22 +1,37 @@
 package com.the.rpc.common.extension;
 
+import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.StrUtil;
+import com.the.rpc.common.consts.URLKeyConst;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>扩展类加载器。</p>
  * <p>扩展类的配置写到 {@code META-INF/extensions/ccx-rpc} 目录下，文件名为接口全名。</p>
  * <p>文件格式为：扩展名=扩展类全名。例如：{@code zk=com.ccx.core.registry.ZkRegistry}</p>
+ * <p>编译时 {@link ExtensionIndexProcessor} 把配置文件汇总成一个索引，带索引的 jar 只读索引，不再读取它里面的配置文件；
+ * 没有索引或者索引格式不认识的 jar 照常读取配置文件，和索引合并在一起。扩展类在第一次获取这个扩展的时候才加载。</p>
+ * <p>构造函数只接收扩展接口类型参数的扩展类是包装扩展，创建每个扩展实例的时候按 {@link Wrapper#order()} 自动套上，
+ * 获取到的是最外层的包装。</p>
  * <p>获取扩展类实例的代码示例如下：</p>
  * <pre>{@code
  *     ExtensionLoader loader = ExtensionLoader.getExtensionLoader(Registry.class)
@@ -38,24 +53,69 @@ public class ExtensionLoader<T> {
     private static final Map<Class<?>, ExtensionLoader<?>> extensionLoaderCache = new ConcurrentHashMap<>();
 
     /**
-     * 扩展类配置列表缓存 {type: {name, 扩展类}} {} {zk : RegistryFactory.class}
+     * 扩展类配置列表缓存 {name: 扩展定义} {zk : ZkRegistryFactory 的定义}，扩展类用到的时候才加载
      */
-    private final Holder<Map<String, Class<?>>> extensionClassesCache = new Holder<>();
+    private final Holder<Map<String, ExtensionDefinition>> extensionClassesCache = new Holder<>();
 
     /**
-     * 创建扩展实例类的锁缓存 {name: synchronized 持有的锁} {zk , 对象锁}
+     * 包装扩展，按 {@link Wrapper#order()} 从外到内排好序，第一次创建扩展实例的时候读取
      */
-    private final Map<String, Object> createExtensionLockMap = new ConcurrentHashMap<>();
+    private volatile List<ExtensionDefinition> wrappers;
+
+    /**
+     * 扩展索引 {类型全名: [[扩展名, 扩展类全名, 自动激活信息, 包装信息]]}，所有类型共用，第一次使用的时候读取
+     */
+    private static volatile Map<String, List<String[]>> extensionIndex;
+
+    /**
+     * 索引可用的类路径根目录，这些根目录下的配置文件已经汇总在索引里面，和 {@link #extensionIndex} 一起读取
+     */
+    private static Set<String> indexedRoots;
+
+    /**
+     * 当前类型的扩展是否来自索引
+     */
+    private volatile boolean indexed;
+
+    /**
+     * 自适应扩展实例，第一次获取的时候创建
+     */
+    private volatile T adaptiveExtension;
+
+    /**
+     * 自动激活的扩展缓存 {group: 按 order 排好序的扩展定义}，不限分组的 key 是 {@link #ALL_GROUPS}
+     */
+    private final Map<String, List<ExtensionDefinition>> activateCache = new ConcurrentHashMap<>();
+
+    /**
+     * 不限分组时自动激活扩展缓存的 key
+     */
+    private static final String ALL_GROUPS = "*";
 
     /**
      * 扩展类加载器的类型  {RegistryFactory.class}
      */
     private final Class<T> type;
 
+    /**
+     * 扩展类配置文件在 META-INF 下面的目录名
+     */
+    static final String EXTENSION_DIR = "the-rpc";
+
     /**
      * 扩展类存放的目录地址
      */
-    private static final String EXTENSION_PATH = "META-INF/the-rpc/";
+    private static final String EXTENSION_PATH = "META-INF/" + EXTENSION_DIR + "/";
+
+    /**
+     * 编译时生成的扩展索引
+     */
+    static final String INDEX_PATH = "META-INF/the-rpc.index";
+
+    /**
+     * 是否使用扩展索引的系统属性，默认 true。设置为 false 的时候按类型扫描类路径里面的配置文件
+     */
+    private static final String INDEX_ENABLED_KEY = "the-rpc.extension.index";
 
     /**
      * 默认扩展名缓存
@@ -92,14 +152,11 @@ public class ExtensionLoader<T> {
         }
         //查看本地缓存是否已经有对应的扩展加载器实例, 如果有就返回, 反之就新创建一个对应的扩展加载器实例
         ExtensionLoader<?> extensionLoader = extensionLoaderCache.get(type);
-        if (extensionLoader != null) {
-            //noinspection unchecked
-            return (ExtensionLoader<S>) extensionLoader;
+        if (extensionLoader == null) {
+            //放入缓存当中 {RegistryFactory.class,ExtensionLoader<RegistryFactory>}, 并发创建的时候以先放入的为准
+            extensionLoaderCache.putIfAbsent(type, new ExtensionLoader<>(type));
+            extensionLoader = extensionLoaderCache.get(type);
         }
-        //创建扩展加载器类实例
-        extensionLoader = new ExtensionLoader<>(type);
-        //放入缓存当中 {RegistryFactory.class,ExtensionLoader<RegistryFactory>}
-        extensionLoaderCache.putIfAbsent(type, extensionLoader);
         //noinspection unchecked
         return (ExtensionLoader<S>) extensionLoader;
     }
@@ -123,12 +180,11 @@ public class ExtensionLoader<T> {
         if (StrUtil.isBlank(name)) {
             return getDefaultExtension();
         }
-        // 从缓存中获取扩展类单例(扩展加载器的实现类, 因为扩展加载器是由接口实现的所以它的实现类就是扩展类)
+        // 从缓存中获取扩展类单例(扩展加载器的实现类, 因为扩展加载器是由接口实现的所以它的实现类就是扩展类), 创建好之后只有这一次 map 读取
         T extension = extensionsCache.get(name);
         if (extension == null) {
-            //没有就需要创建扩展类,因为防止多个线程同时获取到单例对象,需要设置对应的name的资源锁
-            Object lock = createExtensionLockMap.computeIfAbsent(name, k -> new Object());
-            synchronized (lock) {
+            //没有就需要创建扩展类,防止多个线程同时创建单例对象. 创建只发生一次, 所有名字共用一把锁
+            synchronized (extensionsCache) {
                 //再次获取扩展类,防止在之前已经有线程创建了该实现类
                 extension = extensionsCache.get(name);
                 if (extension == null) {
@@ -143,19 +199,101 @@ public class ExtensionLoader<T> {
     }
 
     /**
-     * 获取自适应扩展类
+     * 获取一组激活的扩展，先是分组和 URL 参数都匹配的自动激活扩展，再是 URL 参数里面指定的扩展。<br>
+     * 参数值是逗号分隔的扩展名：name 加入扩展，-name 去掉自动激活的扩展，-default 去掉所有自动激活的扩展
+     *
+     * @param url   URL
+     * @param key   指定扩展名的参数 key
+     * @param group 分组，为 null 表示不限分组，所有分组的自动激活扩展都加入
+     * @return 扩展列表，可以直接用来构建调用链
+     */
+    public List<T> getActivateExtensions(com.the.rpc.common.url.URL url, String key, String group) {
+        String value = url == null ? null : url.getParam(key, null);
+        List<String> names = StrUtil.isBlank(value) ? Collections.emptyList() : StrUtil.split(value, ',', true, true);
+        List<T> extensions = new ArrayList<>();
+        if (!names.contains("-" + URLKeyConst.DEFAULT)) {
+            for (ExtensionDefinition definition : getActivateDefinitions(group)) {
+                String name = definition.name;
+                if (!names.contains(name) && !names.contains("-" + name) && definition.isActivate(url)) {
+                    extensions.add(getExtension(name));
+                }
+            }
+        }
+        for (String name : names) {
+            if (!name.startsWith("-")) {
+                extensions.add(getExtension(name));
+            }
+        }
+        return extensions;
+    }
+
+    /**
+     * 获取分组下自动激活的扩展
+     *
+     * @param group 分组，为 null 表示不限分组
+     * @return 按 {@link Activate#order()} 排好序的扩展定义，order 相同的按扩展名排序
+     */
+    private List<ExtensionDefinition> getActivateDefinitions(String group) {
+        // ConcurrentHashMap 的 key 不能为 null
+        String cacheKey = group == null ? ALL_GROUPS : group;
+        List<ExtensionDefinition> activated = activateCache.get(cacheKey);
+        if (activated != null) {
+            return activated;
+        }
+        activated = new ArrayList<>();
+        for (ExtensionDefinition definition : getAllExtensionClasses().values()) {
+            if (!definition.isWrapper() && definition.isActivate(group)) {
+                activated.add(definition);
+            }
+        }
+        activated.sort(Comparator.comparingInt(ExtensionDefinition::getOrder).thenComparing(d -> d.name));
+        activateCache.putIfAbsent(cacheKey, Collections.unmodifiableList(activated));
+        return activateCache.get(cacheKey);
+    }
+
+    /**
+     * 获取当前类型的包装扩展
+     *
+     * @return 按 {@link Wrapper#order()} 排好序的包装扩展，第一个在最外层
+     */
+    private List<ExtensionDefinition> getWrappers() {
+        List<ExtensionDefinition> list = wrappers;
+        if (list != null) {
+            return list;
+        }
+        list = new ArrayList<>();
+        for (ExtensionDefinition definition : getAllExtensionClasses().values()) {
+            if (definition.isWrapper()) {
+                list.add(definition);
+            }
+        }
+        list.sort(Comparator.comparingInt(ExtensionDefinition::getWrapperOrder).thenComparing(d -> d.name));
+        return wrappers = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 获取自适应扩展类，每个类型只创建一个
      *
      * @return 动态代理自适应类
      */
     public T getAdaptiveExtension() {
-        //将RegistryFactory.class传入到AdaptiveInvocationHandler动态代理处理器中
-        InvocationHandler handler = new AdaptiveInvocationHandler<>(type);
-        //noinspection unchecked
-        return (T) Proxy.newProxyInstance(
-                ExtensionLoader.class.getClassLoader(),
-                new Class<?>[]{type},
-                handler
-        );
+        T adaptive = adaptiveExtension;
+        if (adaptive != null) {
+            return adaptive;
+        }
+        synchronized (this) {
+            if (adaptiveExtension == null) {
+                //将RegistryFactory.class传入到AdaptiveInvocationHandler动态代理处理器中
+                InvocationHandler handler = new AdaptiveInvocationHandler<>(type);
+                //noinspection unchecked
+                adaptiveExtension = (T) Proxy.newProxyInstance(
+                        ExtensionLoader.class.getClassLoader(),
+                        new Class<?>[]{type},
+                        handler
+                );
+            }
+            return adaptiveExtension;
+        }
     }
 
     /**
@@ -166,28 +304,54 @@ public class ExtensionLoader<T> {
      */
     private T createExtension(String name) {
         // 获取当前类型所有扩展类, 因为除了ZkRegistryFactory可能还有其他实现类
-        Map<String, Class<?>> extensionClasses = getAllExtensionClasses();
+        Map<String, ExtensionDefinition> extensionClasses = getAllExtensionClasses();
         // 再根据名字找到对应的扩展类
-        Class<?> clazz = extensionClasses.get(name);
-        if (clazz == null) {
+        ExtensionDefinition definition = extensionClasses.get(name);
+        if (definition == null && indexed) {
+            // 只改了配置文件没有重新编译的时候索引会过期, 再扫描一次配置文件
+            definition = loadClassesFromResources().get(name);
+            if (definition != null) {
+                extensionClasses.putIfAbsent(name, definition);
+            }
+        }
+        if (definition == null) {
             throw new IllegalStateException("Extension not found. name=" + name + ", type=" + type.getName());
         }
+        if (definition.isWrapper()) {
+            throw new IllegalStateException("Extension is a wrapper. name=" + name + ", type=" + type.getName());
+        }
+        Class<?> clazz = definition.getExtensionClass();
+        T extension;
         try {
             //noinspection unchecked
-            return (T) clazz.newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
+            extension = (T) clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
             throw new IllegalStateException("Extension not found. name=" + name + ", type=" + type.getName() + ". " + e.toString());
         }
+        // 从内到外一层层包装, 第一个包装在最外层
+        List<ExtensionDefinition> wrapperList = getWrappers();
+        for (int i = wrapperList.size() - 1; i >= 0; i--) {
+            ExtensionDefinition wrapper = wrapperList.get(i);
+            try {
+                //noinspection unchecked
+                extension = (T) wrapper.getExtensionClass().getConstructor(type).newInstance(extension);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Create wrapper fail. wrapper=" + wrapper.name + ", name=" + name + ", type=" + type.getName() + ". " + e.getTargetException().toString());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Create wrapper fail. wrapper=" + wrapper.name + ", name=" + name + ", type=" + type.getName() + ". " + e.toString());
+            }
+        }
+        return extension;
     }
 
     /**
      * 获取当前类型{@link #type}的所有扩展类
      *
-     * @return {name: clazz}
+     * @return {name: 扩展定义}
      */
-    private Map<String, Class<?>> getAllExtensionClasses() {
+    private Map<String, ExtensionDefinition> getAllExtensionClasses() {
         //先获取全部的扩展类
-        Map<String, Class<?>> extensionClasses = extensionClassesCache.get();
+        Map<String, ExtensionDefinition> extensionClasses = extensionClassesCache.get();
         //如果不为空说明已经有对应的全部扩展实现类,直接返回
         if (extensionClasses != null) {
             return extensionClasses;
@@ -196,9 +360,16 @@ public class ExtensionLoader<T> {
         synchronized (extensionClassesCache) {
             extensionClasses = extensionClassesCache.get();
             if (extensionClasses == null) {
-                //正式获取到全部的扩展实现类
-                extensionClasses = loadClassesFromResources();
-                //获取到全部的对应的扩展实现类后放入缓存中 , [{zk: ZkRegistryFactory.class}, {http: httpRegistryFactory.class}]
+                //有索引用索引, 没有再扫描配置文件
+                extensionClasses = loadClassesFromIndex();
+                indexed = extensionClasses != null;
+                if (extensionClasses == null) {
+                    extensionClasses = loadClassesFromResources();
+                } else {
+                    // 没有索引的 jar 里面的配置文件不在索引里面
+                    loadClassesFromResources(extensionClasses, getIndexedRoots());
+                }
+                //获取到全部的对应的扩展实现类后放入缓存中 , [{zk: ZkRegistryFactory}, {http: httpRegistryFactory}]
                 extensionClassesCache.set(extensionClasses);
             }
         }
@@ -207,53 +378,176 @@ public class ExtensionLoader<T> {
     }
 
     /**
-     * 从资源文件中加载所有扩展类
+     * 从索引中加载扩展定义
+     *
+     * @return {name: 扩展定义}，索引里面没有这个类型返回 null
+     */
+    private Map<String, ExtensionDefinition> loadClassesFromIndex() {
+        List<String[]> entries = getExtensionIndex().get(type.getName());
+        if (entries == null) {
+            return null;
+        }
+        Map<String, ExtensionDefinition> extensionClasses = new ConcurrentHashMap<>();
+        for (String[] entry : entries) {
+            if (extensionClasses.putIfAbsent(entry[0], new ExtensionDefinition(type, entry[0], entry[1], entry[2], entry[3])) != null) {
+                throw new IllegalStateException(entry[0] + " is already exists!");
+            }
+        }
+        return extensionClasses;
+    }
+
+    /**
+     * 从资源文件中加载所有扩展定义，只读取扩展类名，不加载类
      *
-     * @return {name: 扩展类}
+     * @return {name: 扩展定义}
      */
-    private Map<String, Class<?>> loadClassesFromResources() {
+    private Map<String, ExtensionDefinition> loadClassesFromResources() {
         //新创一个所有扩展类集合用于设置
-        Map<String, Class<?>> extensionClasses = new ConcurrentHashMap<>();
-        // 扩展配置文件名 META-INF/ccx-rpc/type.getName(会获取RegistryFactory.class的全限定名com.ccx.rpc.core.registry.RegistryFactory)
+        Map<String, ExtensionDefinition> extensionClasses = new ConcurrentHashMap<>();
+        loadClassesFromResources(extensionClasses, Collections.emptySet());
+        //当设置完后将集合返回回去
+        return extensionClasses;
+    }
+
+    /**
+     * 从资源文件中加载扩展定义，放进已有的扩展定义里面
+     *
+     * @param extensionClasses {name: 扩展定义}
+     * @param skipRoots        跳过的类路径根目录
+     */
+    private void loadClassesFromResources(Map<String, ExtensionDefinition> extensionClasses, Set<String> skipRoots) {
+        // 扩展配置文件名 META-INF/the-rpc/type.getName(会获取RegistryFactory.class的全限定名com.the.rpc.core.registry.RegistryFactory)
         String fileName = EXTENSION_PATH + type.getName();
-        // 拿到资源文件夹resource里的META-INF/ccx-rpc
-        ClassLoader classLoader = ExtensionLoader.class.getClassLoader();
         try {
             //根据资源文件夹拿到对应的文件,读取文件的内容
-            Enumeration<URL> resources = classLoader.getResources(fileName);
-            while (resources.hasMoreElements()) {
-                URL url = resources.nextElement();
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
-                    // 开始读文件
-                    while (true) {
-                        String line = reader.readLine();
-                        if (line == null) {
-                            break;
+            for (String line : readLines(fileName, skipRoots)) {
+                //拿到一行后就解析行,如 zk=com.the.rpc.core.registry.zk.ZkRegistryFactory
+                String[] kv = parseLine(line);
+                if (kv == null) {
+                    continue;
+                }
+                //如果集合里面已经有它就不需要再次设置, 我们只允许一个name对应的它实现类
+                if (extensionClasses.putIfAbsent(kv[0], new ExtensionDefinition(type, kv[0], kv[1], null, null)) != null) {
+                    throw new IllegalStateException(kv[0] + " is already exists!");
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Parse file fail. " + e.toString());
+        }
+    }
+
+    /**
+     * 获取扩展索引，所有类路径上的索引文件合并在一起
+     */
+    private static Map<String, List<String[]>> getExtensionIndex() {
+        Map<String, List<String[]>> index = extensionIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (ExtensionLoader.class) {
+            if (extensionIndex == null) {
+                index = new HashMap<>();
+                Set<String> roots = new HashSet<>();
+                if (Boolean.parseBoolean(System.getProperty(INDEX_ENABLED_KEY, "true"))) {
+                    try {
+                        Enumeration<URL> resources = ExtensionLoader.class.getClassLoader().getResources(INDEX_PATH);
+                        while (resources.hasMoreElements()) {
+                            URL url = resources.nextElement();
+                            List<String[]> entries = parseIndex(url);
+                            if (entries == null) {
+                                continue;
+                            }
+                            for (String[] entry : entries) {
+                                index.computeIfAbsent(entry[0], k -> new ArrayList<>()).add(Arrays.copyOfRange(entry, 1, 5));
+                            }
+                            roots.add(getRoot(url, INDEX_PATH));
                         }
-                        //拿到一行后就解析行,如 zk=com.ccx.rpc.core.registry.zk.ZkRegistryFactory, 需要将集合传过去
-                        parseLine(line, extensionClasses);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Parse file fail. " + e.toString());
                     }
                 }
+                indexedRoots = roots;
+                extensionIndex = index;
             }
-        } catch (IOException | ClassNotFoundException e) {
-            throw new IllegalStateException("Parse file fail. " + e.toString());
+            return extensionIndex;
         }
-        //当设置完后将集合返回回去
-        return extensionClasses;
+    }
+
+    private static Set<String> getIndexedRoots() {
+        getExtensionIndex();
+        return indexedRoots;
+    }
+
+    /**
+     * 解析一个索引文件。旧版本生成的索引没有后面的自动激活信息和包装信息，缺少的信息用到的时候加载类读取
+     *
+     * @return [[类型, 扩展名, 扩展类全名, 自动激活信息, 包装信息]]，格式不认识返回 null，这个 jar 按没有索引处理
+     */
+    private static List<String[]> parseIndex(URL url) throws IOException {
+        List<String[]> entries = new ArrayList<>();
+        for (String line : readLines(url)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            // 类型|扩展名|扩展类全名|自动激活信息|包装信息
+            String[] parts = line.split("\\|", -1);
+            if (parts.length < 3 || parts.length > 5 || parts[0].isEmpty() || parts[1].isEmpty() || parts[2].isEmpty()) {
+                return null;
+            }
+            entries.add(Arrays.copyOf(parts, 5));
+        }
+        return entries;
+    }
+
+    /**
+     * 读取类路径上所有同名资源文件的所有行
+     *
+     * @param skipRoots 跳过这些类路径根目录下面的文件
+     */
+    private static List<String> readLines(String fileName, Set<String> skipRoots) throws IOException {
+        List<String> lines = new ArrayList<>();
+        // 拿到资源文件夹resource里的META-INF/the-rpc
+        Enumeration<URL> resources = ExtensionLoader.class.getClassLoader().getResources(fileName);
+        while (resources.hasMoreElements()) {
+            URL url = resources.nextElement();
+            if (!skipRoots.contains(getRoot(url, fileName))) {
+                lines.addAll(readLines(url));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(URL url) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 资源文件所在的类路径根目录，去掉资源路径之后的 URL，例如 jar:file:/a.jar!/
+     */
+    private static String getRoot(URL url, String fileName) {
+        String path = url.toString();
+        return path.endsWith(fileName) ? path.substring(0, path.length() - fileName.length()) : path;
     }
 
     /**
-     * 解析行，并且把解析到的类，放到 extensionClasses 中
+     * 解析配置文件的一行
      *
-     * @param line             行
-     * @param extensionClasses 扩展类列表
-     * @throws ClassNotFoundException 找不到类
+     * @param line 行
+     * @return [扩展名, 扩展类全名]，注释和空行返回 null
      */
-    private void parseLine(String line, Map<String, Class<?>> extensionClasses) throws ClassNotFoundException {
+    static String[] parseLine(String line) {
         line = line.trim();
         // 忽略#号开头的注释
-        if (line.startsWith("#")) {
-            return;
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
         }
         //以等号做分割,以[0] = name [1] = 实现类的全限定名
         String[] kv = line.split("=");
@@ -261,13 +555,141 @@ public class ExtensionLoader<T> {
         if (kv.length != 2 || kv[0].isEmpty() || kv[1].isEmpty()) {
             throw new IllegalStateException("Extension file parsing error. Invalid format!");
         }
-        //如果集合里面已经有它就不需要再次设置, 我们只允许一个name对应的它实现类
-        if (extensionClasses.containsKey(kv[0])) {
-            throw new IllegalStateException(kv[0] + " is already exists!");
+        return kv;
+    }
+
+    /**
+     * 扩展定义。扩展类和它上面的 {@link Activate}、{@link Wrapper} 用到的时候才加载，索引里面已经有这些信息的不用加载类
+     */
+    private static class ExtensionDefinition {
+
+        private final Class<?> type;
+
+        private final String name;
+
+        private final String className;
+
+        private volatile Class<?> clazz;
+
+        /**
+         * 是否自动激活，null 表示还没有读取
+         */
+        private Boolean activate;
+
+        private String[] groups;
+
+        /**
+         * 激活需要的 URL 参数，见 {@link Activate#value()}
+         */
+        private String[] keys;
+
+        private int order;
+
+        /**
+         * 是否包装扩展，null 表示还没有读取
+         */
+        private Boolean wrapper;
+
+        private int wrapperOrder;
+
+        /**
+         * @param activateInfo 索引里面的自动激活信息，为空表示不自动激活，为 null 表示需要加载类读取
+         * @param wrapperInfo  索引里面的包装信息，为空表示不是包装扩展，为 null 表示需要加载类读取
+         */
+        ExtensionDefinition(Class<?> type, String name, String className, String activateInfo, String wrapperInfo) {
+            this.type = type;
+            this.name = name;
+            this.className = className;
+            if (activateInfo != null) {
+                this.activate = !activateInfo.isEmpty();
+                if (activate) {
+                    // order;分组1,分组2;参数1,参数2
+                    String[] parts = activateInfo.split(";", -1);
+                    this.order = Integer.parseInt(parts[0]);
+                    this.groups = parts[1].isEmpty() ? new String[0] : parts[1].split(",");
+                    this.keys = parts[2].isEmpty() ? new String[0] : parts[2].split(",");
+                }
+            }
+            if (wrapperInfo != null) {
+                this.wrapper = !wrapperInfo.isEmpty();
+                if (wrapper) {
+                    this.wrapperOrder = Integer.parseInt(wrapperInfo);
+                }
+            }
+        }
+
+        Class<?> getExtensionClass() {
+            Class<?> loaded = clazz;
+            if (loaded != null) {
+                return loaded;
+            }
+            try {
+                loaded = ExtensionLoader.class.getClassLoader().loadClass(className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Extension class not found. name=" + name + ", type=" + type.getName() + ". " + e.toString());
+            }
+            return clazz = loaded;
+        }
+
+        /**
+         * 是否在分组下自动激活，group 为 null 表示不限分组
+         */
+        synchronized boolean isActivate(String group) {
+            if (activate == null) {
+                Activate annotation = getExtensionClass().getAnnotation(Activate.class);
+                activate = annotation != null;
+                if (annotation != null) {
+                    groups = annotation.group();
+                    keys = annotation.value();
+                    order = annotation.order();
+                }
+            }
+            return activate && (groups.length == 0 || group == null || ArrayUtil.contains(groups, group));
+        }
+
+        /**
+         * URL 参数是否满足激活条件，只在 {@link #isActivate(String)} 之后调用
+         */
+        synchronized boolean isActivate(com.the.rpc.common.url.URL url) {
+            if (keys.length == 0) {
+                return true;
+            }
+            if (url == null) {
+                return false;
+            }
+            for (String key : keys) {
+                // key 或者 key:value
+                int i = key.indexOf(':');
+                String value = url.getParam(i < 0 ? key : key.substring(0, i), null);
+                if (i < 0 ? StrUtil.isNotBlank(value) : key.substring(i + 1).equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int getOrder() {
+            return order;
+        }
+
+        synchronized boolean isWrapper() {
+            if (wrapper == null) {
+                try {
+                    getExtensionClass().getConstructor(type);
+                    wrapper = true;
+                } catch (NoSuchMethodException e) {
+                    wrapper = false;
+                }
+                if (wrapper) {
+                    Wrapper annotation = getExtensionClass().getAnnotation(Wrapper.class);
+                    wrapperOrder = annotation == null ? 0 : annotation.order();
+                }
+            }
+            return wrapper;
+        }
+
+        synchronized int getWrapperOrder() {
+            return wrapperOrder;
         }
-        //如果没有就要根据全限定名获取类信息,如拿到ZkRegistryFactory.class
-        Class<?> clazz = ExtensionLoader.class.getClassLoader().loadClass(kv[1]);
-        //将对应name的value设置为对应的类信息{zk,ZkRegistryFactory.class},然后返回
-        extensionClasses.put(kv[0], clazz);
     }
 }
@@ -5,7 +5,7 @@ package com.the.rpc.common.extension;
 
  */
 public class Holder<T> {
-    private T value;
+    private volatile T value;
 
     public T get() {
         return value;
@@ -0,0 +1,22 @@
+package com.the.rpc.common.extension;
+
+import java.lang.annotation.*;
+
+/**
+ * 包装扩展的排序。<br>
+ * 扩展类有一个只接收扩展接口类型参数的 public 构造函数的，就是包装扩展，不需要此注解。
+ * 包装扩展和普通扩展一样写在配置文件里面，{@link ExtensionLoader#getExtension} 创建每个扩展实例的时候自动套上所有包装扩展，
+ * 不能按名字单独获取。用来在不修改调用方的情况下给扩展加上统计、缓存、限流这些功能
+ *
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Wrapper {
+    /**
+     * 排序，越小越靠外层，最先执行
+     *
+     * @return 默认 0
+     */
+    int order() default 0;
+}
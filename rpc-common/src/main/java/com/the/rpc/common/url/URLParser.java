@@ -4,14 +4,27 @@ import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.StrUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.the.rpc.common.consts.URLKeyConst.DEFAULT_PREFIX;
 
 /**
- * 转成整个字符串
+ * 转成整个字符串。<br>
+ * 解析和拼接都只扫描一遍，按下标截取，不再反复 substring 和 split。
+ * 注册中心的事件和每次查找都要解析同样的字符串，解析结果按字符串缓存起来
  */
 public class URLParser {
 
+    /**
+     * 解析结果缓存的最大数量，超过之后清空重新缓存
+     */
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    /**
+     * 解析结果缓存 {url 字符串: URL}
+     */
+    private static final Map<String, URL> cache = new ConcurrentHashMap<>();
+
     /**
      * 转成字符串
      *
@@ -22,7 +35,7 @@ public class URLParser {
      * @return url 格式的字符串
      */
     public static String parseToStr(URL url, boolean appendUser, boolean appendParameter, String... parameters) {
-        StringBuilder buf = new StringBuilder();
+        StringBuilder buf = new StringBuilder(128);
         if (StrUtil.isNotEmpty(url.getProtocol())) {
             buf.append(url.getProtocol());
             buf.append("://");
@@ -54,20 +67,21 @@ public class URLParser {
     }
 
     private static void buildParameters(URL url, StringBuilder buf, String[] parameters) {
-        List<String> includes = (ArrayUtil.isEmpty(parameters) ? null : Arrays.asList(parameters));
+        Map<String, String> params = url.getParams();
+        if (params.isEmpty()) {
+            return;
+        }
+        // 按参数名排序，保证同一个 URL 拼出来的字符串一样
+        String[] keys = params.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        boolean includeAll = ArrayUtil.isEmpty(parameters);
         boolean first = true;
-        for (Map.Entry<String, String> entry : new TreeMap<>(url.getParams()).entrySet()) {
-            if (StrUtil.isNotEmpty(entry.getKey())
-                    && (includes == null || includes.contains(entry.getKey()))) {
-                if (first) {
-                    buf.append("?");
-                    first = false;
-                } else {
-                    buf.append("&");
-                }
-                buf.append(entry.getKey());
-                buf.append("=");
-                buf.append(entry.getValue() == null ? "" : entry.getValue().trim());
+        for (String key : keys) {
+            if (StrUtil.isNotEmpty(key) && (includeAll || ArrayUtil.contains(parameters, key))) {
+                buf.append(first ? '?' : '&');
+                first = false;
+                String value = params.get(key);
+                buf.append(key).append('=').append(value == null ? "" : value.trim());
             }
         }
     }
@@ -83,6 +97,22 @@ public class URLParser {
         if (url == null || (url = url.trim()).isEmpty()) {
             throw new IllegalArgumentException("url == null");
         }
+        URL cached = cache.get(url);
+        if (cached != null) {
+            return cached;
+        }
+        URL parsed = parse(url);
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(url, parsed);
+        return parsed;
+    }
+
+    /**
+     * 用 [start, end) 表示还没有解析的部分，从后往前依次截出参数、路径、端口，从前往后截出协议、用户名密码
+     */
+    private static URL parse(String url) {
         String protocol = null;
         String username = null;
         String password = null;
@@ -90,81 +120,105 @@ public class URLParser {
         int port = 0;
         String path = null;
         Map<String, String> parameters = null;
+        int start = 0;
+        int end = url.length();
         int i = url.indexOf('?'); // separator between body and parameters
         if (i >= 0) {
-            String[] parts = url.substring(i + 1).split("&");
-            parameters = new HashMap<>();
-            for (String part : parts) {
-                part = part.trim();
-                if (!part.isEmpty()) {
-                    int j = part.indexOf('=');
-                    if (j >= 0) {
-                        String key = part.substring(0, j);
-                        String value = part.substring(j + 1);
-                        parameters.put(key, value);
-                        // compatible with lower versions registering "default." keys
-                        if (key.startsWith(DEFAULT_PREFIX)) {
-                            parameters.putIfAbsent(key.substring(DEFAULT_PREFIX.length()), value);
-                        }
-                    } else {
-                        parameters.put(part, part);
-                    }
-                }
-            }
-            url = url.substring(0, i);
+            parameters = parseParameters(url, i + 1);
+            end = i;
         }
         i = url.indexOf("://");
-        if (i >= 0) {
+        if (i >= 0 && i < end) {
             if (i == 0) {
-                throw new IllegalStateException("url missing protocol: \"" + url + "\"");
+                throw new IllegalStateException("url missing protocol: \"" + url.substring(0, end) + "\"");
             }
             protocol = url.substring(0, i);
-            url = url.substring(i + 3);
+            start = i + 3;
         } else {
             // case: file:/path/to/file.txt
             i = url.indexOf(":/");
-            if (i >= 0) {
+            if (i >= 0 && i < end) {
                 if (i == 0) {
-                    throw new IllegalStateException("url missing protocol: \"" + url + "\"");
+                    throw new IllegalStateException("url missing protocol: \"" + url.substring(0, end) + "\"");
                 }
                 protocol = url.substring(0, i);
-                url = url.substring(i + 1);
+                start = i + 1;
             }
         }
 
-        i = url.indexOf('/');
-        if (i >= 0) {
-            path = url.substring(i + 1);
-            url = url.substring(0, i);
+        i = url.indexOf('/', start);
+        if (i >= 0 && i < end) {
+            path = url.substring(i + 1, end);
+            end = i;
         }
-        i = url.lastIndexOf('@');
-        if (i >= 0) {
-            username = url.substring(0, i);
-            int j = username.indexOf(':');
-            if (j >= 0) {
-                password = username.substring(j + 1);
-                username = username.substring(0, j);
+        i = url.lastIndexOf('@', end - 1);
+        if (i >= start) {
+            int j = url.indexOf(':', start);
+            if (j >= 0 && j < i) {
+                username = url.substring(start, j);
+                password = url.substring(j + 1, i);
+            } else {
+                username = url.substring(start, i);
             }
-            url = url.substring(i + 1);
+            start = i + 1;
         }
-        i = url.lastIndexOf(':');
-        if (i >= 0 && i < url.length() - 1) {
+        i = url.lastIndexOf(':', end - 1);
+        if (i >= start && i < end - 1) {
             //noinspection StatementWithEmptyBody
-            if (url.lastIndexOf('%') > i) {
+            if (url.lastIndexOf('%', end - 1) > i) {
                 // ipv6 address with scope id
                 // e.g. fe80:0:0:0:894:aeec:f37d:23e1%en0
                 // see https://howdoesinternetwork.com/2013/ipv6-zone-id
                 // ignore
             } else {
-                port = Integer.parseInt(url.substring(i + 1));
-                url = url.substring(0, i);
+                port = Integer.parseInt(url, i + 1, end, 10);
+                end = i;
             }
         }
-        if (!url.isEmpty()) {
-            host = url;
+        if (start < end) {
+            host = url.substring(start, end);
         }
 
         return URL.builder().protocol(protocol).username(username).password(password)
                 .host(host).port(port).path(path).params(parameters).build();
     }
+
+    /**
+     * 解析 from 之后的参数，每个参数去掉前后空白，没有等号的参数值就是参数名
+     */
+    private static Map<String, String> parseParameters(String url, int from) {
+        Map<String, String> parameters = new HashMap<>();
+        int length = url.length();
+        while (from <= length) {
+            int next = url.indexOf('&', from);
+            if (next < 0) {
+                next = length;
+            }
+            int begin = from;
+            int end = next;
+            while (begin < end && url.charAt(begin) <= ' ') {
+                begin++;
+            }
+            while (end > begin && url.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (begin < end) {
+                int j = url.indexOf('=', begin);
+                if (j >= 0 && j < end) {
+                    String key = url.substring(begin, j);
+                    String value = url.substring(j + 1, end);
+                    parameters.put(key, value);
+                    // compatible with lower versions registering "default." keys
+                    if (key.startsWith(DEFAULT_PREFIX)) {
+                        parameters.putIfAbsent(key.substring(DEFAULT_PREFIX.length()), value);
+                    }
+                } else {
+                    String part = url.substring(begin, end);
+                    parameters.put(part, part);
+                }
+            }
+            from = next + 1;
+        }
+        return parameters;
+    }
 }
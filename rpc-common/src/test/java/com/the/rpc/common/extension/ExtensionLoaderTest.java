@@ -0,0 +1,333 @@
+package com.the.rpc.common.extension;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 扩展索引和没有索引的 jar 混在一起的时候，两边的扩展都要能加载到；包装扩展的顺序和自动激活扩展的分组、URL 参数匹配、排序、排除。<br>
+ * 索引是静态缓存，每个用例在单独的类加载器里面重新加载扩展包下面的类，类路径上只多出测试生成的 jar
+ */
+class ExtensionLoaderTest {
+
+    private static final String PACKAGE = ExtensionLoader.class.getPackage().getName() + ".";
+
+    private static final String CONFIG = ExtensionLoader.EXTENSION_DIR + "/" + Greeter.class.getName();
+
+    @TempDir
+    File dir;
+
+    @Test
+    void indexedAndUnindexedJars() throws Exception {
+        // 有索引的 jar 里面的配置文件已经汇总在索引里面，再读一次会报扩展名重复
+        File indexed = jar("indexed.jar",
+                ExtensionLoader.INDEX_PATH, Greeter.class.getName() + "|indexed|" + Indexed.class.getName() + "||\n",
+                "META-INF/" + CONFIG, "indexed=" + Indexed.class.getName() + "\n");
+        File plain = jar("plain.jar", "META-INF/" + CONFIG, "plain=" + Plain.class.getName() + "\n");
+        try (URLClassLoader classLoader = new IsolatedClassLoader(indexed, plain)) {
+            Object loader = getLoader(classLoader);
+            assertEquals(Indexed.class.getName(), getExtension(loader, "indexed"));
+            assertEquals(Plain.class.getName(), getExtension(loader, "plain"));
+            assertTrue(isIndexed(loader));
+        }
+    }
+
+    @Test
+    void oldIndexFormat() throws Exception {
+        // 旧版本的索引只有三列
+        File old = jar("old.jar", ExtensionLoader.INDEX_PATH, Greeter.class.getName() + "|indexed|" + Indexed.class.getName() + "\n");
+        File plain = jar("plain.jar", "META-INF/" + CONFIG, "plain=" + Plain.class.getName() + "\n");
+        try (URLClassLoader classLoader = new IsolatedClassLoader(old, plain)) {
+            Object loader = getLoader(classLoader);
+            assertEquals(Indexed.class.getName(), getExtension(loader, "indexed"));
+            assertEquals(Plain.class.getName(), getExtension(loader, "plain"));
+        }
+    }
+
+    @Test
+    void unrecognizedIndexIsIgnored() throws Exception {
+        File broken = jar("broken.jar",
+                ExtensionLoader.INDEX_PATH, "not an index\n",
+                "META-INF/" + CONFIG, "indexed=" + Indexed.class.getName() + "\n");
+        try (URLClassLoader classLoader = new IsolatedClassLoader(broken)) {
+            Object loader = getLoader(classLoader);
+            assertEquals(Indexed.class.getName(), getExtension(loader, "indexed"));
+            assertFalse(isIndexed(loader));
+        }
+    }
+
+    @Test
+    void wrapperOrder() throws Exception {
+        File plain = jar("plain.jar", "META-INF/" + ExtensionLoader.EXTENSION_DIR + "/" + Handler.class.getName(),
+                "impl=" + Impl.class.getName() + "\n"
+                        + "inner=" + InnerWrapper.class.getName() + "\n"
+                        + "outer=" + OuterWrapper.class.getName() + "\n");
+        try (URLClassLoader classLoader = new IsolatedClassLoader(plain)) {
+            Object loader = getLoader(classLoader, Handler.class);
+            Object handler = loader.getClass().getMethod("getExtension", String.class).invoke(loader, "impl");
+            // order 小的在外层
+            assertEquals("outer(inner(impl))", handler.getClass().getMethod("handle").invoke(handler));
+            // 包装扩展不能按名字单独获取
+            InvocationTargetException e = assertThrows(InvocationTargetException.class,
+                    () -> loader.getClass().getMethod("getExtension", String.class).invoke(loader, "outer"));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    void activateByGroupAndUrl() throws Exception {
+        try (URLClassLoader classLoader = new IsolatedClassLoader(chainJar())) {
+            Object loader = getLoader(classLoader, Chain.class);
+            // 分组匹配，order 从小到大；需要 URL 参数的没有激活
+            assertEquals(Arrays.asList("c", "a"), activate(loader, "the-rpc://127.0.0.1:0", "consumer"));
+            assertEquals(Arrays.asList("b", "c"), activate(loader, "the-rpc://127.0.0.1:0", "provider"));
+            // 参数有值，或者等于指定的值才激活；order 相同的按扩展名排序
+            assertEquals(Arrays.asList("d", "e", "c", "a"), activate(loader, "the-rpc://127.0.0.1:0?cache=true&mode=fast", "consumer"));
+            assertEquals(Arrays.asList("d", "c", "a"), activate(loader, "the-rpc://127.0.0.1:0?cache=true&mode=slow", "consumer"));
+            assertEquals(Arrays.asList("c", "a"), activate(loader, null, "consumer"));
+        }
+    }
+
+    @Test
+    void activateFromIndex() throws Exception {
+        // 索引里面的激活信息不用加载类就能判断
+        String prefix = Chain.class.getName() + "|";
+        File indexed = jar("indexed.jar", ExtensionLoader.INDEX_PATH,
+                prefix + "a|" + A.class.getName() + "|2;consumer;|\n"
+                        + prefix + "b|" + B.class.getName() + "|0;provider;|\n"
+                        + prefix + "c|" + C.class.getName() + "|1;;|\n"
+                        + prefix + "d|" + D.class.getName() + "|0;;cache|\n"
+                        + prefix + "manual|" + Manual.class.getName() + "||\n");
+        try (URLClassLoader classLoader = new IsolatedClassLoader(indexed)) {
+            Object loader = getLoader(classLoader, Chain.class);
+            assertEquals(Arrays.asList("d", "c", "a"), activate(loader, "the-rpc://127.0.0.1:0?cache=true", "consumer"));
+            assertEquals(Arrays.asList("b", "c"), activate(loader, "the-rpc://127.0.0.1:0", "provider"));
+            assertTrue(isIndexed(loader));
+        }
+    }
+
+    @Test
+    void excludeAndAppendByUrl() throws Exception {
+        try (URLClassLoader classLoader = new IsolatedClassLoader(chainJar())) {
+            Object loader = getLoader(classLoader, Chain.class);
+            // -name 去掉自动激活的扩展，指定的扩展加在自动激活的后面
+            assertEquals(Arrays.asList("a", "manual"), activate(loader, "the-rpc://127.0.0.1:0?chain=-c,manual", "consumer"));
+            // 指定了自动激活的扩展，按指定的位置加入，不会重复
+            assertEquals(Arrays.asList("a", "c"), activate(loader, "the-rpc://127.0.0.1:0?chain=c", "consumer"));
+            // -default 去掉所有自动激活的扩展
+            assertEquals(Collections.singletonList("manual"), activate(loader, "the-rpc://127.0.0.1:0?chain=-default,manual", "consumer"));
+        }
+    }
+
+    @Test
+    void activateWithoutGroup() throws Exception {
+        try (URLClassLoader classLoader = new IsolatedClassLoader(chainJar())) {
+            Object loader = getLoader(classLoader, Chain.class);
+            // 不限分组，所有分组的都激活
+            assertEquals(Arrays.asList("b", "c", "a"), activate(loader, "the-rpc://127.0.0.1:0", null));
+            assertEquals(Arrays.asList("b", "d", "c", "a"), activate(loader, "the-rpc://127.0.0.1:0?cache=1", null));
+            // 不限分组的缓存和具体分组的缓存互不影响
+            assertEquals(Arrays.asList("c", "a"), activate(loader, "the-rpc://127.0.0.1:0", "consumer"));
+        }
+    }
+
+    private File chainJar() throws IOException {
+        return jar("chain.jar", "META-INF/" + ExtensionLoader.EXTENSION_DIR + "/" + Chain.class.getName(),
+                "a=" + A.class.getName() + "\n"
+                        + "b=" + B.class.getName() + "\n"
+                        + "c=" + C.class.getName() + "\n"
+                        + "d=" + D.class.getName() + "\n"
+                        + "e=" + E.class.getName() + "\n"
+                        + "manual=" + Manual.class.getName() + "\n");
+    }
+
+    /**
+     * @return 激活的扩展名，按返回的顺序
+     */
+    private static List<String> activate(Object loader, String url, String group) throws Exception {
+        List<?> extensions = (List<?>) loader.getClass()
+                .getMethod("getActivateExtensions", com.the.rpc.common.url.URL.class, String.class, String.class)
+                .invoke(loader, url == null ? null : com.the.rpc.common.url.URL.valueOf(url), "chain", group);
+        List<String> names = new ArrayList<>();
+        for (Object extension : extensions) {
+            names.add(extension.getClass().getSimpleName().toLowerCase());
+        }
+        return names;
+    }
+
+    private File jar(String name, String... entries) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            files.put(entries[i], entries[i + 1]);
+        }
+        File file = new File(dir, name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static Object getLoader(ClassLoader classLoader) throws Exception {
+        return getLoader(classLoader, Greeter.class);
+    }
+
+    private static Object getLoader(ClassLoader classLoader, Class<?> spi) throws Exception {
+        Class<?> loaderClass = classLoader.loadClass(ExtensionLoader.class.getName());
+        Class<?> type = classLoader.loadClass(spi.getName());
+        return loaderClass.getMethod("getLoader", Class.class).invoke(null, type);
+    }
+
+    private static String getExtension(Object loader, String name) throws Exception {
+        return loader.getClass().getMethod("getExtension", String.class).invoke(loader, name).getClass().getName();
+    }
+
+    private static boolean isIndexed(Object loader) throws Exception {
+        Field field = loader.getClass().getDeclaredField("indexed");
+        field.setAccessible(true);
+        return field.getBoolean(loader);
+    }
+
+    @SPI("indexed")
+    public interface Greeter {
+    }
+
+    public static class Indexed implements Greeter {
+    }
+
+    public static class Plain implements Greeter {
+    }
+
+    @SPI
+    public interface Handler {
+
+        String handle();
+    }
+
+    public static class Impl implements Handler {
+
+        @Override
+        public String handle() {
+            return "impl";
+        }
+    }
+
+    @Wrapper(order = 1)
+    public static class OuterWrapper implements Handler {
+
+        private final Handler handler;
+
+        public OuterWrapper(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String handle() {
+            return "outer(" + handler.handle() + ")";
+        }
+    }
+
+    @Wrapper(order = 2)
+    public static class InnerWrapper implements Handler {
+
+        private final Handler handler;
+
+        public InnerWrapper(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String handle() {
+            return "inner(" + handler.handle() + ")";
+        }
+    }
+
+    @SPI
+    public interface Chain {
+    }
+
+    @Activate(group = "consumer", order = 2)
+    public static class A implements Chain {
+    }
+
+    @Activate(group = "provider")
+    public static class B implements Chain {
+    }
+
+    @Activate(order = 1)
+    public static class C implements Chain {
+    }
+
+    @Activate(value = "cache")
+    public static class D implements Chain {
+    }
+
+    @Activate(value = "mode:fast", group = "consumer")
+    public static class E implements Chain {
+    }
+
+    public static class Manual implements Chain {
+    }
+
+    /**
+     * 扩展包下面的类自己加载，其他的交给父加载器；资源先找父加载器再找测试生成的 jar
+     */
+    private static class IsolatedClassLoader extends URLClassLoader {
+
+        IsolatedClassLoader(File... jars) throws IOException {
+            super(toUrls(jars), ExtensionLoaderTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+                try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    if (in == null) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    byte[] bytes = in.readAllBytes();
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+
+        private static URL[] toUrls(File... jars) throws IOException {
+            URL[] urls = new URL[jars.length];
+            for (int i = 0; i < jars.length; i++) {
+                urls[i] = jars[i].toURI().toURL();
+            }
+            return urls;
+        }
+    }
+}
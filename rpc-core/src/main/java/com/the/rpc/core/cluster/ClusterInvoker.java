@@ -0,0 +1,348 @@
+package com.the.rpc.core.cluster;
+
+import com.the.rpc.common.consts.OverloadedException;
+import com.the.rpc.common.consts.RemotingException;
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.ExtensionLoader;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.AdminServer;
+import com.the.rpc.core.filter.FilterChain;
+import com.the.rpc.core.invoke.BatchInvoker;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.loadbalance.LoadBalance;
+import com.the.rpc.core.loadbalance.OutlierDetector;
+import com.the.rpc.core.loadbalance.ProviderBackoff;
+import com.the.rpc.core.metrics.MethodMetrics;
+import com.the.rpc.core.registry.Registry;
+import com.the.rpc.core.trace.Span;
+import com.the.rpc.core.trace.TraceContext;
+import com.the.rpc.core.trace.Tracing;
+import com.the.rpc.core.transport.injvm.InjvmInvoker;
+import com.the.rpc.core.transport.netty.NettyInvoker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 集群调用器。从注册中心查找提供者，通过负载均衡选一个调用。<br>
+ * 提供者过载的时候请求没有执行，记录退避并换一个提供者重试一次。<br>
+ * 打开了对冲的幂等方法，调用超过最近的 p95 还没有返回，就再发一份给另一个提供者，用先返回的结果，另一个取消。<br>
+ * 重试和对冲都受 {@link RetryBudget} 限制，提供者大面积出问题的时候不会把负载放大。<br>
+ * 每次调用的结果和耗时交给 {@link OutlierDetector}，用来摘除有问题的提供者。<br>
+ * 单个调用先经过过滤器链再进入集群调用，调用的次数、耗时和失败由过滤器链里面的指标过滤器记录。
+ * 批量调用不经过过滤器，在这里记录到其中每个方法消费者一侧的 {@link MethodMetrics}。<br>
+ * 开启了链路追踪的时候每个单个调用记录一个 CLIENT span，批量调用只传递当前的链路上下文
+ *
+ */
+public class ClusterInvoker implements BatchInvoker {
+
+    private final Registry registry;
+
+    /**
+     * 服务引用的 URL，同时也是查找提供者的条件
+     */
+    private final URL url;
+
+    private final LoadBalance loadBalance;
+
+    /**
+     * 提供者调用器缓存 {address: 调用器}
+     */
+    private final Map<String, NettyInvoker> invokers = new ConcurrentHashMap<>();
+
+    private final RetryBudget retryBudget;
+
+    /**
+     * 对冲方法的耗时统计 {methodId: 耗时统计}
+     */
+    private final Map<Long, LatencyTracker> trackers = new ConcurrentHashMap<>();
+
+    /**
+     * 过滤器链，最里面是集群调用
+     */
+    private final Invoker chain;
+
+    /**
+     * 本机提供者的调用器，injvm=false 的时候为 null
+     */
+    private final InjvmInvoker injvmInvoker;
+
+    public ClusterInvoker(Registry registry, URL url) {
+        this.registry = registry;
+        this.url = url;
+        this.loadBalance = ExtensionLoader.getLoader(LoadBalance.class).getExtension(url.getParam(URLKeyConst.LOADBALANCE, null));
+        String ratio = url.getParam(URLKeyConst.RETRY_BUDGET, null);
+        this.retryBudget = new RetryBudget(ratio == null ? RetryBudget.DEFAULT_RATIO : Double.parseDouble(ratio));
+        this.chain = FilterChain.build(this::clusterInvoke, url, URLKeyConst.CONSUMER);
+        this.injvmInvoker = url.getBooleanParam(URLKeyConst.INJVM, true) ? new InjvmInvoker(url) : null;
+        AdminServer.start(url);
+        Tracing.start(url);
+    }
+
+    @Override
+    public Object invoke(RemoteMethod method, Object[] args) throws Throwable {
+        TraceContext previous = Tracing.current();
+        Span span = Tracing.startClientSpan(method.getDescriptor());
+        String error = null;
+        try {
+            return chain.invoke(method, args);
+        } catch (Throwable e) {
+            error = e.toString();
+            throw e;
+        } finally {
+            Tracing.end(span, error, previous);
+        }
+    }
+
+    private Object clusterInvoke(RemoteMethod method, Object[] args) {
+        List<URL> providers = registry.lookup(url);
+        // 提供者在本机的时候直接调用，本机过载了再按正常流程换一个提供者
+        URL local = injvmInvoker != null ? injvmInvoker.selectLocal(providers, method) : null;
+        URL provider = local != null ? local : loadBalance.select(providers, method);
+        retryBudget.onRequest();
+        if (local == null && method.isHedge() && providers.size() > 1) {
+            return hedgedInvoke(providers, provider, method, args);
+        }
+        try {
+            return local != null ? injvmInvoker.invoke(method, args) : doInvoke(provider, method, args);
+        } catch (OverloadedException e) {
+            List<URL> others = exclude(providers, provider);
+            if (others.isEmpty() || !retryBudget.tryAcquire()) {
+                throw e;
+            }
+            return doInvoke(loadBalance.select(others, method), method, args);
+        }
+    }
+
+    /**
+     * 批量调用，批量的耗时记录到其中每个方法上
+     */
+    @Override
+    public Object[] invokeBatch(RemoteMethod[] methods, Object[][] args) {
+        long start = System.nanoTime();
+        for (RemoteMethod method : methods) {
+            method.getMetrics().start();
+        }
+        boolean success = false;
+        try {
+            Object[] results = clusterInvokeBatch(methods, args);
+            success = true;
+            return results;
+        } finally {
+            for (RemoteMethod method : methods) {
+                method.getMetrics().end(start, success);
+            }
+        }
+    }
+
+    private Object[] clusterInvokeBatch(RemoteMethod[] methods, Object[][] args) {
+        List<URL> providers = registry.lookup(url);
+        URL local = injvmInvoker != null ? selectLocal(providers, methods) : null;
+        URL provider = local != null ? local : loadBalance.select(providers, methods.length > 0 ? methods[0] : null);
+        retryBudget.onRequest();
+        try {
+            return local != null ? injvmInvoker.invokeBatch(methods, args) : doInvokeBatch(provider, methods, args);
+        } catch (OverloadedException e) {
+            List<URL> others = exclude(providers, provider);
+            if (others.isEmpty() || !retryBudget.tryAcquire()) {
+                throw e;
+            }
+            return doInvokeBatch(loadBalance.select(others, methods[0]), methods, args);
+        }
+    }
+
+    /**
+     * 对冲调用。先发给选中的提供者，等待最近的 p95；超时或者提供者过载，在预算允许的情况下再发一份给另一个提供者。<br>
+     * 两份请求使用同一个截止时间，任意一份成功就返回，都失败才失败，没用上的那一份取消
+     */
+    private Object hedgedInvoke(List<URL> providers, URL provider, RemoteMethod method, Object[] args) {
+        LatencyTracker tracker = trackers.computeIfAbsent(method.getMethodId(), k -> new LatencyTracker());
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long deadline = RpcContext.getContext().computeDeadline(now, method.getTimeout());
+        if (deadline <= now) {
+            throw new RpcException("Deadline exceeded before sending. method=" + method);
+        }
+        long delay = tracker.getP95Millis();
+        CompletableFuture<Object> primary = doInvokeAsync(provider, method, args, deadline);
+        CompletableFuture<Object> backup = null;
+        try {
+            // 还没有足够的样本算 p95 的时候不对冲
+            boolean hedgeable = delay > 0 && delay < deadline - now;
+            try {
+                Object result = await(primary, hedgeable ? delay : deadline - now);
+                tracker.record(System.nanoTime() - start);
+                return result;
+            } catch (TimeoutException e) {
+                if (hedgeable) {
+                    backup = hedge(providers, provider, method, args, deadline);
+                }
+            } catch (OverloadedException e) {
+                backup = hedge(providers, provider, method, args, deadline);
+                if (backup == null) {
+                    throw e;
+                }
+            }
+            CompletableFuture<Object> winner = backup == null ? primary : firstSuccess(primary, backup);
+            Object result = await(winner, deadline - System.currentTimeMillis());
+            tracker.record(System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException e) {
+            OutlierDetector.onFailure(provider.getAddress(), System.nanoTime() - start);
+            throw new RpcException("Invoke timeout. method=" + method + ", timeout=" + (deadline - now) + "ms");
+        } finally {
+            primary.cancel(false);
+            if (backup != null) {
+                backup.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 发送对冲请求
+     *
+     * @return 对冲请求的结果，没有其他提供者、预算不够或者发送失败返回 null
+     */
+    private CompletableFuture<Object> hedge(List<URL> providers, URL excluded, RemoteMethod method, Object[] args, long deadline) {
+        List<URL> others = exclude(providers, excluded);
+        if (others.isEmpty() || !retryBudget.tryAcquire()) {
+            return null;
+        }
+        try {
+            return doInvokeAsync(loadBalance.select(others, method), method, args, deadline);
+        } catch (RpcException e) {
+            // 对冲请求发不出去不影响原来的请求
+            return null;
+        }
+    }
+
+    private CompletableFuture<Object> doInvokeAsync(URL provider, RemoteMethod method, Object[] args, long deadline) {
+        String address = provider.getAddress();
+        long start = System.nanoTime();
+        CompletableFuture<Object> future = getInvoker(provider).invokeAsync(method, args, deadline);
+        future.whenComplete((result, e) -> {
+            if (e == null) {
+                ProviderBackoff.onSuccess(address);
+                OutlierDetector.onSuccess(address, System.nanoTime() - start);
+            } else if (e instanceof OverloadedException) {
+                ProviderBackoff.onOverloaded(address);
+            } else if (e instanceof RemotingException) {
+                OutlierDetector.onFailure(address, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    private Object doInvoke(URL provider, RemoteMethod method, Object[] args) {
+        String address = provider.getAddress();
+        long start = System.nanoTime();
+        try {
+            Object result = getInvoker(provider).invoke(method, args);
+            ProviderBackoff.onSuccess(address);
+            OutlierDetector.onSuccess(address, System.nanoTime() - start);
+            return result;
+        } catch (OverloadedException e) {
+            ProviderBackoff.onOverloaded(address);
+            throw e;
+        } catch (RemotingException e) {
+            OutlierDetector.onFailure(address, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private Object[] doInvokeBatch(URL provider, RemoteMethod[] methods, Object[][] args) {
+        String address = provider.getAddress();
+        long start = System.nanoTime();
+        try {
+            Object[] results = getInvoker(provider).invokeBatch(methods, args);
+            ProviderBackoff.onSuccess(address);
+            OutlierDetector.onSuccess(address, System.nanoTime() - start);
+            return results;
+        } catch (OverloadedException e) {
+            ProviderBackoff.onOverloaded(address);
+            throw e;
+        } catch (RemotingException e) {
+            OutlierDetector.onFailure(address, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量调用的所有方法都在本机导出了才直接调用
+     */
+    private URL selectLocal(List<URL> providers, RemoteMethod[] methods) {
+        URL local = null;
+        for (RemoteMethod method : methods) {
+            local = injvmInvoker.selectLocal(providers, method);
+            if (local == null) {
+                return null;
+            }
+        }
+        return local;
+    }
+
+    private NettyInvoker getInvoker(URL provider) {
+        return invokers.computeIfAbsent(provider.getAddress(), k -> new NettyInvoker(provider, url));
+    }
+
+    /**
+     * 等待调用结果
+     *
+     * @param future  调用结果
+     * @param timeout 最多等待的毫秒数
+     * @throws TimeoutException 等待超时
+     */
+    private static Object await(CompletableFuture<Object> future, long timeout) throws TimeoutException {
+        try {
+            return future.get(Math.max(0, timeout), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RpcException("Invoke fail.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Invoke interrupted.", e);
+        }
+    }
+
+    /**
+     * 两个调用中先成功的那个，都失败的时候以后失败的那个异常结束
+     */
+    private static CompletableFuture<Object> firstSuccess(CompletableFuture<Object> a, CompletableFuture<Object> b) {
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<Object, Throwable> action = (result, e) -> {
+            if (e == null) {
+                first.complete(result);
+            } else if (failures.incrementAndGet() == 2) {
+                first.completeExceptionally(e);
+            }
+        };
+        a.whenComplete(action);
+        b.whenComplete(action);
+        return first;
+    }
+
+    private static List<URL> exclude(List<URL> providers, URL excluded) {
+        List<URL> others = new ArrayList<>(providers.size());
+        for (URL provider : providers) {
+            if (!provider.getAddress().equals(excluded.getAddress())) {
+                others.add(provider);
+            }
+        }
+        return others;
+    }
+}
@@ -0,0 +1,129 @@
+package com.the.rpc.core.cluster;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 调用耗时统计，用来估算 p95。<br>
+ * 耗时按指数增长的桶计数，记录只有一次二分查找和一次原子加。每个窗口结束的时候算一次 p95，然后清空计数。<br>
+ * 只在对冲请求的方法上使用
+ *
+ */
+public class LatencyTracker {
+
+    /**
+     * 第一个桶的上限微秒数
+     */
+    private static final long MIN_BUCKET_MICROS = 100;
+
+    /**
+     * 桶的增长倍数
+     */
+    private static final double BUCKET_FACTOR = 1.2;
+
+    /**
+     * 桶数量，最后一个桶的上限大约 10 秒，再大的都算进最后一个桶
+     */
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * 每个桶的上限微秒数
+     */
+    private static final long[] BOUNDS = new long[BUCKET_COUNT];
+
+    static {
+        double bound = MIN_BUCKET_MICROS;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            BOUNDS[i] = (long) bound;
+            bound *= BUCKET_FACTOR;
+        }
+    }
+
+    /**
+     * 窗口时长
+     */
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 一个窗口最少的样本数，样本太少不更新 p95
+     */
+    private static final int MIN_WINDOW_SAMPLES = 20;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * 当前窗口开始的时间
+     */
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * 是否有线程正在更新
+     */
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    /**
+     * 最近一次算出来的 p95 微秒数，0 表示还没有足够的样本
+     */
+    private volatile long p95Micros;
+
+    /**
+     * 记录一次调用耗时
+     *
+     * @param nanos 耗时纳秒数
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int index = Arrays.binarySearch(BOUNDS, micros);
+        if (index < 0) {
+            index = Math.min(-index - 1, BUCKET_COUNT - 1);
+        }
+        counts.incrementAndGet(index);
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS && updating.compareAndSet(false, true)) {
+            try {
+                update(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * 获取最近一个窗口的 p95
+     *
+     * @return p95 毫秒数，至少 1 毫秒。0 表示还没有足够的样本
+     */
+    public long getP95Millis() {
+        long micros = p95Micros;
+        return micros == 0 ? 0 : Math.max(1, TimeUnit.MICROSECONDS.toMillis(micros));
+    }
+
+    private void update(long now) {
+        windowStart = now;
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        // 样本不够的时候计数留到下一个窗口继续累加
+        if (total < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.getAndSet(i, 0);
+            total += snapshot[i];
+        }
+        long threshold = (long) Math.ceil(total * 0.95);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                p95Micros = BOUNDS[i];
+                return;
+            }
+        }
+    }
+}
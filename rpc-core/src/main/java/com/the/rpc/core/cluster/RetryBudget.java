@@ -0,0 +1,78 @@
+package com.the.rpc.core.cluster;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算，每个服务引用一个。<br>
+ * 令牌桶：每个正常请求存入 ratio 个令牌，每次重试或者对冲取出一个令牌，令牌不够就不重试。<br>
+ * 这样重试请求最多占正常请求的 ratio 比例，提供者出问题的时候不会因为重试把负载放大好几倍
+ *
+ */
+public class RetryBudget {
+
+    /**
+     * 默认比例
+     */
+    public static final double DEFAULT_RATIO = 0.1;
+
+    /**
+     * 一个令牌的单位，令牌数按千分之一记录，避免浮点数的 CAS
+     */
+    private static final long UNIT = 1000;
+
+    /**
+     * 初始令牌数，刚启动、请求量很小的时候也允许少量重试
+     */
+    private static final long INITIAL_TOKENS = 10 * UNIT;
+
+    /**
+     * 最大令牌数，避免长时间正常之后积累太多令牌，出问题的时候一下子全用来重试
+     */
+    private static final long MAX_TOKENS = 100 * UNIT;
+
+    /**
+     * 每个请求存入的令牌数
+     */
+    private final long deposit;
+
+    private final AtomicLong tokens = new AtomicLong(INITIAL_TOKENS);
+
+    public RetryBudget(double ratio) {
+        this.deposit = Math.max(0, (long) (ratio * UNIT));
+    }
+
+    /**
+     * 记录一个正常请求，存入令牌
+     */
+    public void onRequest() {
+        if (deposit == 0) {
+            return;
+        }
+        while (true) {
+            long current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+            if (tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + deposit))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 尝试取出一个令牌用来重试或者对冲
+     *
+     * @return false 表示预算用完了，不能重试
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = tokens.get();
+            if (current < UNIT) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - UNIT)) {
+                return true;
+            }
+        }
+    }
+}
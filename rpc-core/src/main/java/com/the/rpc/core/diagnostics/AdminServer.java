@@ -0,0 +1,129 @@
+package com.the.rpc.core.diagnostics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 用 JDK 自带的 HTTP 服务提供的管理端口：
+ * <ul>
+ *     <li>/metrics 按 Prometheus 文本格式导出指标</li>
+ *     <li>/admin/命令名 执行 {@link Diagnostics} 里面注册的管理命令，/admin/help 列出所有命令</li>
+ * </ul>
+ * 一个 JVM 只启动一个，单线程处理，消费者和提供者配置的端口以先启动的为准。<br>
+ * 管理端口没有认证，默认只监听 {@link #DEFAULT_HOST}
+ *
+ */
+@Slf4j
+public class AdminServer {
+
+    private static final String METRICS_PATH = "/metrics";
+
+    private static final String ADMIN_PATH = "/admin/";
+
+    private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    /**
+     * 默认监听的地址，只允许本机访问
+     */
+    public static final String DEFAULT_HOST = "127.0.0.1";
+
+    private static HttpServer server;
+
+    private static ExecutorService executor;
+
+    private AdminServer() {
+    }
+
+    /**
+     * 按 URL 上的 {@link URLKeyConst#METRICS_PORT} 和 {@link URLKeyConst#METRICS_HOST} 启动
+     *
+     * @param url 服务引用或者提供者的 URL
+     */
+    public static void start(URL url) {
+        start(url.getParam(URLKeyConst.METRICS_HOST, DEFAULT_HOST), url.getIntParam(URLKeyConst.METRICS_PORT, 0));
+    }
+
+    /**
+     * 启动，已经启动的时候不做任何事
+     *
+     * @param host 监听的地址
+     * @param port 端口，0 表示不启动
+     */
+    public static synchronized void start(String host, int port) {
+        if (server != null || port <= 0) {
+            return;
+        }
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+            httpServer.createContext(METRICS_PATH, exchange -> reply(exchange, 200, METRICS_CONTENT_TYPE, Metrics.scrape()));
+            httpServer.createContext(ADMIN_PATH, AdminServer::handleCommand);
+            ExecutorService httpExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "the-rpc-admin");
+                thread.setDaemon(true);
+                return thread;
+            });
+            httpServer.setExecutor(httpExecutor);
+            httpServer.start();
+            server = httpServer;
+            executor = httpExecutor;
+            log.info("admin server started. host={}, port={}", host, port);
+        } catch (IOException e) {
+            throw new IllegalStateException("Start admin server fail. host=" + host + ", port=" + port, e);
+        }
+    }
+
+    /**
+     * 停止
+     */
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+            executor = null;
+        }
+    }
+
+    private static void handleCommand(HttpExchange exchange) throws IOException {
+        String command = exchange.getRequestURI().getPath().substring(ADMIN_PATH.length());
+        String output;
+        try {
+            output = Diagnostics.execute(command);
+        } catch (RuntimeException e) {
+            log.warn("Admin command fail. command={}", command, e);
+            reply(exchange, 500, TEXT_CONTENT_TYPE, e.toString() + "\n");
+            return;
+        }
+        if (output == null) {
+            reply(exchange, 404, TEXT_CONTENT_TYPE, "Unknown command: " + command + "\n");
+        } else {
+            reply(exchange, 200, TEXT_CONTENT_TYPE, output);
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        try {
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
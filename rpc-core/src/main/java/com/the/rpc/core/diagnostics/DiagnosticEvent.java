@@ -0,0 +1,97 @@
+package com.the.rpc.core.diagnostics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 采样并且限流的结构化诊断事件。<br>
+ * 每条事件先按 {@link Diagnostics#getSample()} 采样，采中的再限流，每种事件每秒最多输出 {@link Diagnostics#getRate()} 条。
+ * 没采中和超过限制的只计数，下一条输出的时候带上 suppressed=被丢弃的条数。
+ * 丢弃的时候只有一次读和一次原子加，不拼字符串也不调用日志。<br>
+ * 输出的事件写到名为 the-rpc.diagnostics 的日志里面，格式是 event=名字 key=value ...，同时保留在 {@link Diagnostics} 的最近事件里面
+ *
+ */
+@Slf4j(topic = "the-rpc.diagnostics")
+public class DiagnosticEvent {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 事件名，例如 registry.reset
+     */
+    private final String name;
+
+    /**
+     * 当前的秒和这一秒已经输出的条数，高 32 位是秒的低 32 位，低 32 位是条数。
+     * 放在一起用一次 CAS 修改，换秒和计数不会被别的线程插进来
+     */
+    private final AtomicLong window = new AtomicLong();
+
+    /**
+     * 因为采样或者限流被丢弃、还没有报告的条数
+     */
+    private final LongAdder suppressed = new LongAdder();
+
+    DiagnosticEvent(String name) {
+        this.name = name;
+    }
+
+    public void record(String k1, Object v1) {
+        if (acquire()) {
+            emit(new Object[]{k1, v1});
+        }
+    }
+
+    public void record(String k1, Object v1, String k2, Object v2) {
+        if (acquire()) {
+            emit(new Object[]{k1, v1, k2, v2});
+        }
+    }
+
+    public void record(String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        if (acquire()) {
+            emit(new Object[]{k1, v1, k2, v2, k3, v3});
+        }
+    }
+
+    /**
+     * 这一条是否可以输出
+     */
+    private boolean acquire() {
+        double sample = Diagnostics.getSample();
+        if (sample < 1 && ThreadLocalRandom.current().nextDouble() >= sample) {
+            suppressed.increment();
+            return false;
+        }
+        int now = (int) (System.nanoTime() / SECOND_NANOS);
+        while (true) {
+            long state = window.get();
+            long count = (int) (state >>> 32) == now ? state & 0xFFFFFFFFL : 0;
+            if (count >= Diagnostics.getRate()) {
+                suppressed.increment();
+                return false;
+            }
+            if (window.compareAndSet(state, ((long) now << 32) | (count + 1))) {
+                return true;
+            }
+        }
+    }
+
+    private void emit(Object[] kvs) {
+        StringBuilder buf = new StringBuilder(64).append("event=").append(name);
+        for (int i = 0; i < kvs.length; i += 2) {
+            buf.append(' ').append(kvs[i]).append('=').append(kvs[i + 1]);
+        }
+        long dropped = suppressed.sumThenReset();
+        if (dropped > 0) {
+            buf.append(" suppressed=").append(dropped);
+        }
+        String line = buf.toString();
+        Diagnostics.addRecent(line);
+        log.info(line);
+    }
+}
@@ -0,0 +1,122 @@
+package com.the.rpc.core.diagnostics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * 诊断入口。<br>
+ * 热点路径上不再直接打印日志，而是记录采样并且限流的 {@link DiagnosticEvent}，只带数量和关键字段，不带完整的 URL 列表；
+ * 需要看完整状态的时候通过管理命令按需导出，例如 registry 命令导出注册中心的本地缓存。<br>
+ * 管理命令通过 {@link AdminServer} 的 /admin/命令名 执行
+ *
+ */
+public class Diagnostics {
+
+    /**
+     * 每种事件每秒最多输出的条数的系统属性，默认 {@link #DEFAULT_RATE}
+     */
+    private static final String RATE_KEY = "the-rpc.diagnostics.rate";
+
+    private static final int DEFAULT_RATE = 10;
+
+    /**
+     * 事件的采样率的系统属性，0 到 1 之间，默认 1 全部采样
+     */
+    private static final String SAMPLE_KEY = "the-rpc.diagnostics.sample";
+
+    /**
+     * 保留的最近事件条数，2 的幂
+     */
+    private static final int RECENT_SIZE = 256;
+
+    private static final int rate = Integer.getInteger(RATE_KEY, DEFAULT_RATE);
+
+    private static final double sample = Double.parseDouble(System.getProperty(SAMPLE_KEY, "1"));
+
+    /**
+     * 事件 {事件名: 事件}
+     */
+    private static final Map<String, DiagnosticEvent> events = new ConcurrentHashMap<>();
+
+    /**
+     * 管理命令 {命令名: 输出}
+     */
+    private static final Map<String, Supplier<String>> commands = new ConcurrentHashMap<>();
+
+    /**
+     * 最近输出的事件，环形覆盖
+     */
+    private static final AtomicReferenceArray<String> recent = new AtomicReferenceArray<>(RECENT_SIZE);
+
+    private static final AtomicLong recentIndex = new AtomicLong();
+
+    static {
+        registerCommand("events", Diagnostics::dumpRecent);
+        registerCommand("help", () -> String.join("\n", new TreeMap<>(commands).keySet()) + "\n");
+    }
+
+    private Diagnostics() {
+    }
+
+    /**
+     * 获取事件，在初始化的时候获取一次保存下来
+     *
+     * @param name 事件名，例如 registry.reset
+     * @return 事件，同名返回同一个
+     */
+    public static DiagnosticEvent event(String name) {
+        return events.computeIfAbsent(name, DiagnosticEvent::new);
+    }
+
+    /**
+     * 注册管理命令
+     *
+     * @param name   命令名
+     * @param output 执行命令，返回文本
+     */
+    public static void registerCommand(String name, Supplier<String> output) {
+        commands.put(name, output);
+    }
+
+    /**
+     * 执行管理命令
+     *
+     * @param name 命令名
+     * @return 输出，命令不存在返回 null
+     */
+    public static String execute(String name) {
+        Supplier<String> command = commands.get(name);
+        return command == null ? null : command.get();
+    }
+
+    static int getRate() {
+        return rate;
+    }
+
+    static double getSample() {
+        return sample;
+    }
+
+    static void addRecent(String line) {
+        recent.set((int) (recentIndex.getAndIncrement() & (RECENT_SIZE - 1)), line);
+    }
+
+    /**
+     * 按时间顺序导出最近的事件
+     */
+    private static String dumpRecent() {
+        long end = recentIndex.get();
+        StringBuilder buf = new StringBuilder();
+        for (long i = Math.max(0, end - RECENT_SIZE); i < end; i++) {
+            String line = recent.get((int) (i & (RECENT_SIZE - 1)));
+            if (line != null) {
+                buf.append(line).append('\n');
+            }
+        }
+        return buf.toString();
+    }
+}
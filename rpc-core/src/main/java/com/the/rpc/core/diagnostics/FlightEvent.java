@@ -0,0 +1,75 @@
+package com.the.rpc.core.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次调用各阶段耗时的 JFR 事件，系统属性 the-rpc.flight.jfr=true 的时候由 {@link FlightRecorder} 在调用结束时提交。<br>
+ * 阶段的含义和 {@link FlightRecorder} 导出的一样，消费者是 serialize、enqueue、network、decode，提供者是 queue、execute、serialize、response
+ *
+ */
+@Name("the_rpc.Call")
+@Label("RPC Call")
+@Category("the-rpc")
+@Description("Per-stage timings of one RPC call.")
+@StackTrace(false)
+class FlightEvent extends Event {
+
+    @Label("Side")
+    String side;
+
+    @Label("Method")
+    String method;
+
+    @Label("Request ID")
+    long requestId;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+
+    @Label("Stage 1")
+    @Timespan(Timespan.NANOSECONDS)
+    long stage1;
+
+    @Label("Stage 2")
+    @Timespan(Timespan.NANOSECONDS)
+    long stage2;
+
+    @Label("Stage 3")
+    @Timespan(Timespan.NANOSECONDS)
+    long stage3;
+
+    @Label("Stage 4")
+    @Timespan(Timespan.NANOSECONDS)
+    long stage4;
+
+    /**
+     * 没有开启录制的时候直接返回，方法名只在真正提交的时候才查
+     */
+    static void commit(byte side, long methodId, long requestId, boolean success, long total,
+                       long stage1, long stage2, long stage3, long stage4) {
+        FlightEvent event = new FlightEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.side = side == FlightRecorder.CONSUMER ? "consumer" : "provider";
+        event.method = FlightRecorder.methodName(methodId);
+        event.requestId = requestId;
+        event.success = success;
+        event.total = total;
+        event.stage1 = stage1;
+        event.stage2 = stage2;
+        event.stage3 = stage3;
+        event.stage4 = stage4;
+        event.commit();
+    }
+}
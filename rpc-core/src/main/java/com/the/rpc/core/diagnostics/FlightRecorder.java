@@ -0,0 +1,492 @@
+package com.the.rpc.core.diagnostics;
+
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.ServiceDescriptor;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 飞行记录器，一直开着，记录最近每次普通调用在每个阶段的时间点，用来分析长尾耗时出在哪个阶段。<br>
+ * 记录放在堆外的环形缓冲区里面，每次调用占一条 72 字节的记录，写满了覆盖最旧的；调用经过每个阶段的时候直接把
+ * {@link System#nanoTime()} 写到自己那条记录里面，不分配对象也不加锁。记录的序号跟着报文在线程之间传递。<br>
+ * 记录的五个时间点：
+ * <ul>
+ *     <li>消费者：开始调用、请求序列化完、IO 线程写出请求、IO 线程收到响应、拿到结果</li>
+ *     <li>提供者：IO 线程收到请求、业务线程开始执行、执行完、响应序列化完、IO 线程写出响应</li>
+ * </ul>
+ * “写出”是 IO 线程从写队列里面取出报文、编码之前的时间，编码和写 socket 的系统调用算在下一个阶段里面。<br>
+ * 通过管理命令 flight 按需导出各阶段的分位数和最慢的调用；配置了 SLO 的时候，超过 SLO 的调用自动导出到临时目录，
+ * 两次导出至少间隔 {@link #DUMP_INTERVAL_NANOS}。开启 JFR 之后每次调用结束再提交一个 {@link FlightEvent}。
+ * 调用结束的时候直接从缓冲区读时间点，只有超过 SLO 导出的时候才读出整条记录。<br>
+ * 序号检查和写入之间记录可能被覆盖，极少数记录会混进别的调用的时间点，诊断数据可以接受
+ *
+ */
+public class FlightRecorder {
+
+    /**
+     * 记录条数的系统属性，向上取整到 2 的幂，0 表示关闭
+     */
+    private static final String SIZE_KEY = "the-rpc.flight.size";
+
+    /**
+     * SLO 毫秒数的系统属性，默认 0 不自动导出
+     */
+    private static final String SLO_KEY = "the-rpc.flight.slo";
+
+    /**
+     * 是否提交 JFR 事件的系统属性，默认 false
+     */
+    private static final String JFR_KEY = "the-rpc.flight.jfr";
+
+    private static final int DEFAULT_SIZE = 65536;
+
+    /**
+     * 自动导出的最小间隔
+     */
+    private static final long DUMP_INTERVAL_NANOS = 10_000_000_000L;
+
+    /**
+     * 导出的最慢调用条数
+     */
+    private static final int SLOWEST = 20;
+
+    public static final byte CONSUMER = 1;
+
+    public static final byte PROVIDER = 2;
+
+    /**
+     * 消费者：开始调用
+     */
+    public static final int CONSUMER_START = 0;
+
+    /**
+     * 消费者：请求序列化完
+     */
+    public static final int CONSUMER_SERIALIZED = 1;
+
+    /**
+     * 消费者：IO 线程写出请求
+     */
+    public static final int CONSUMER_WRITTEN = 2;
+
+    /**
+     * 消费者：IO 线程收到响应
+     */
+    public static final int CONSUMER_RECEIVED = 3;
+
+    /**
+     * 消费者：拿到结果
+     */
+    public static final int CONSUMER_END = 4;
+
+    /**
+     * 提供者：IO 线程收到请求
+     */
+    public static final int PROVIDER_RECEIVED = 0;
+
+    /**
+     * 提供者：业务线程开始执行
+     */
+    public static final int PROVIDER_EXECUTE_START = 1;
+
+    /**
+     * 提供者：执行完
+     */
+    public static final int PROVIDER_EXECUTE_END = 2;
+
+    /**
+     * 提供者：响应序列化完
+     */
+    public static final int PROVIDER_SERIALIZED = 3;
+
+    /**
+     * 提供者：IO 线程写出响应
+     */
+    public static final int PROVIDER_WRITTEN = 4;
+
+    private static final int STAGES = 5;
+
+    /**
+     * 各阶段的名字，第 i 个阶段是第 i 个时间点到第 i+1 个时间点
+     */
+    private static final String[] CONSUMER_STAGES = {"serialize", "enqueue", "network", "decode"};
+
+    private static final String[] PROVIDER_STAGES = {"queue", "execute", "serialize", "response"};
+
+    private static final byte STATUS_RUNNING = 0;
+
+    private static final byte STATUS_OK = 1;
+
+    private static final byte STATUS_FAIL = 2;
+
+    /**
+     * 一条记录：序号、元数据（调用方、状态）、methodId、requestId、五个时间点
+     */
+    private static final int RECORD_SIZE = 72;
+
+    private static final int SEQ_OFFSET = 0;
+
+    private static final int META_OFFSET = 8;
+
+    private static final int METHOD_ID_OFFSET = 16;
+
+    private static final int REQUEST_ID_OFFSET = 24;
+
+    private static final int STAMPS_OFFSET = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int capacity;
+
+    private static final ByteBuffer buffer;
+
+    private static final long sloNanos = Long.getLong(SLO_KEY, 0) * 1_000_000L;
+
+    private static final boolean jfr = Boolean.getBoolean(JFR_KEY);
+
+    private static final DiagnosticEvent SLO_BREACH = Diagnostics.event("flight.sloBreach");
+
+    /**
+     * 下一条记录的序号，从 1 开始，0 表示没有记录
+     */
+    private static final AtomicLong sequence = new AtomicLong(1);
+
+    /**
+     * 方法名缓存 {methodId: 服务 key#方法名}
+     */
+    private static final Map<Long, String> methodNames = new ConcurrentHashMap<>();
+
+    private static final AtomicLong lastDump = new AtomicLong(System.nanoTime() - DUMP_INTERVAL_NANOS);
+
+    static {
+        int size = Integer.getInteger(SIZE_KEY, DEFAULT_SIZE);
+        capacity = size <= 0 ? 0 : size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        buffer = capacity == 0 ? null : ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        Diagnostics.registerCommand("flight", FlightRecorder::dump);
+    }
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * 开始记录一次调用
+     *
+     * @param side      {@link #CONSUMER} 或者 {@link #PROVIDER}
+     * @param methodId  方法 ID
+     * @param requestId 请求 ID，还没有分配的时候传 0，写出的时候补上
+     * @param nanos     第一个时间点
+     * @return 记录序号，关闭的时候返回 0
+     */
+    public static long begin(byte side, long methodId, long requestId, long nanos) {
+        if (capacity == 0) {
+            return 0;
+        }
+        long seq = sequence.getAndIncrement();
+        int base = offset(seq);
+        // 先清掉旧序号，读取方不会把写了一半的记录当成旧记录
+        LONGS.set(buffer, base + SEQ_OFFSET, 0L);
+        VarHandle.storeStoreFence();
+        LONGS.set(buffer, base + META_OFFSET, meta(side, STATUS_RUNNING));
+        LONGS.set(buffer, base + METHOD_ID_OFFSET, methodId);
+        LONGS.set(buffer, base + REQUEST_ID_OFFSET, requestId);
+        LONGS.set(buffer, base + STAMPS_OFFSET, nanos);
+        for (int i = 1; i < STAGES; i++) {
+            LONGS.set(buffer, base + STAMPS_OFFSET + i * 8, 0L);
+        }
+        LONGS.setRelease(buffer, base + SEQ_OFFSET, seq);
+        return seq;
+    }
+
+    /**
+     * 记录一个时间点
+     *
+     * @param seq   记录序号，0 的时候不做任何事
+     * @param stage 时间点，例如 {@link #CONSUMER_SERIALIZED}
+     * @param nanos 时间
+     */
+    public static void stamp(long seq, int stage, long nanos) {
+        if (seq != 0) {
+            int base = offset(seq);
+            if ((long) LONGS.getAcquire(buffer, base + SEQ_OFFSET) == seq) {
+                LONGS.set(buffer, base + STAMPS_OFFSET + stage * 8, nanos);
+            }
+        }
+    }
+
+    /**
+     * IO 线程写出了报文，补上请求 ID 和写出的时间点。提供者的调用到这里结束
+     *
+     * @param msg   报文
+     * @param nanos 写出的时间
+     */
+    public static void written(RpcMessage msg, long nanos) {
+        long seq = msg.getRecord();
+        if (seq == 0) {
+            return;
+        }
+        int base = offset(seq);
+        if ((long) LONGS.getAcquire(buffer, base + SEQ_OFFSET) != seq) {
+            return;
+        }
+        long meta = (long) LONGS.get(buffer, base + META_OFFSET);
+        LONGS.set(buffer, base + REQUEST_ID_OFFSET, msg.getRequestId());
+        if (side(meta) == CONSUMER) {
+            LONGS.set(buffer, base + STAMPS_OFFSET + CONSUMER_WRITTEN * 8, nanos);
+        } else {
+            LONGS.set(buffer, base + STAMPS_OFFSET + PROVIDER_WRITTEN * 8, nanos);
+            finish(seq, base, meta, msg.getStatus() == ProtocolConst.STATUS_OK);
+        }
+    }
+
+    /**
+     * 消费者拿到结果，调用结束
+     *
+     * @param seq     记录序号，0 的时候不做任何事
+     * @param success 是否成功
+     */
+    public static void end(long seq, boolean success) {
+        if (seq == 0) {
+            return;
+        }
+        int base = offset(seq);
+        if ((long) LONGS.getAcquire(buffer, base + SEQ_OFFSET) == seq) {
+            LONGS.set(buffer, base + STAMPS_OFFSET + CONSUMER_END * 8, System.nanoTime());
+            finish(seq, base, (long) LONGS.get(buffer, base + META_OFFSET), success);
+        }
+    }
+
+    private static void finish(long seq, int base, long meta, boolean success) {
+        LONGS.setRelease(buffer, base + META_OFFSET, meta(side(meta), success ? STATUS_OK : STATUS_FAIL));
+        if (sloNanos == 0 && !jfr) {
+            return;
+        }
+        // 直接读缓冲区里面的时间点，调用结束的路径上不分配对象
+        long t0 = stampAt(base, 0);
+        long t1 = stampAt(base, 1);
+        long t2 = stampAt(base, 2);
+        long t3 = stampAt(base, 3);
+        long t4 = stampAt(base, 4);
+        long requestId = (long) LONGS.get(buffer, base + REQUEST_ID_OFFSET);
+        long methodId = (long) LONGS.get(buffer, base + METHOD_ID_OFFSET);
+        VarHandle.acquireFence();
+        if ((long) LONGS.get(buffer, base + SEQ_OFFSET) != seq) {
+            return;
+        }
+        long total = t0 == 0 || t4 == 0 ? -1 : t4 - t0;
+        if (jfr) {
+            FlightEvent.commit(side(meta), methodId, requestId, success, total,
+                    elapsed(t0, t1), elapsed(t1, t2), elapsed(t2, t3), elapsed(t3, t4));
+        }
+        if (sloNanos > 0 && total > sloNanos) {
+            Record record = read(seq);
+            if (record != null) {
+                onSloBreach(record);
+            }
+        }
+    }
+
+    private static long stampAt(int base, int stage) {
+        return (long) LONGS.get(buffer, base + STAMPS_OFFSET + stage * 8);
+    }
+
+    /**
+     * 两个时间点之间的纳秒数，缺少时间点返回 -1
+     */
+    private static long elapsed(long from, long to) {
+        return from == 0 || to == 0 ? -1 : to - from;
+    }
+
+    /**
+     * 超过 SLO 的时候在后台线程导出到临时目录，最多每 {@link #DUMP_INTERVAL_NANOS} 一次
+     */
+    private static void onSloBreach(Record record) {
+        long last = lastDump.get();
+        long now = System.nanoTime();
+        if (now - last < DUMP_INTERVAL_NANOS || !lastDump.compareAndSet(last, now)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            File file = new File(System.getProperty("java.io.tmpdir"), "the-rpc-flight-" + ProcessHandle.current().pid()
+                    + "-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + ".txt");
+            String breach = "breach: " + format(record) + "\n\n";
+            try {
+                Files.write(file.toPath(), (breach + dump()).getBytes(StandardCharsets.UTF_8));
+                SLO_BREACH.record("method", methodName(record.methodId), "totalUs", record.total() / 1000, "file", file);
+            } catch (IOException e) {
+                SLO_BREACH.record("method", methodName(record.methodId), "totalUs", record.total() / 1000, "error", e);
+            }
+        }, "the-rpc-flight-dump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 导出各阶段耗时的分位数和最慢的调用
+     *
+     * @return 文本
+     */
+    public static String dump() {
+        if (capacity == 0) {
+            return "flight recorder disabled\n";
+        }
+        List<Record> consumer = new ArrayList<>();
+        List<Record> provider = new ArrayList<>();
+        long last = sequence.get() - 1;
+        for (long seq = Math.max(1, last - capacity + 1); seq <= last; seq++) {
+            Record record = read(seq);
+            if (record != null && record.status != STATUS_RUNNING) {
+                (record.side == CONSUMER ? consumer : provider).add(record);
+            }
+        }
+        StringBuilder buf = new StringBuilder(8192);
+        buf.append("capacity=").append(capacity).append(" recorded=").append(last)
+                .append(" sloMs=").append(sloNanos / 1_000_000).append("\n");
+        writeSide(buf, "consumer", CONSUMER_STAGES, consumer);
+        writeSide(buf, "provider", PROVIDER_STAGES, provider);
+        return buf.toString();
+    }
+
+    private static void writeSide(StringBuilder buf, String side, String[] stages, List<Record> records) {
+        buf.append('\n').append(side).append(" calls=").append(records.size()).append(" (us)\n");
+        if (records.isEmpty()) {
+            return;
+        }
+        buf.append(String.format("%-10s %10s %10s %10s %10s%n", "stage", "p50", "p99", "p999", "max"));
+        long[] values = new long[records.size()];
+        for (int stage = 0; stage <= stages.length; stage++) {
+            int count = 0;
+            for (Record record : records) {
+                long value = stage == stages.length ? record.total() : record.stage(stage);
+                if (value >= 0) {
+                    values[count++] = value;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            Arrays.sort(values, 0, count);
+            buf.append(String.format("%-10s %10d %10d %10d %10d%n", stage == stages.length ? "total" : stages[stage],
+                    values[(int) (count * 0.5)] / 1000, values[Math.min(count - 1, (int) (count * 0.99))] / 1000,
+                    values[Math.min(count - 1, (int) (count * 0.999))] / 1000, values[count - 1] / 1000));
+        }
+        records.sort(Comparator.comparingLong(Record::total).reversed());
+        buf.append("slowest:\n");
+        for (int i = 0; i < Math.min(SLOWEST, records.size()); i++) {
+            buf.append("  ").append(format(records.get(i))).append('\n');
+        }
+    }
+
+    private static String format(Record record) {
+        String[] stages = record.side == CONSUMER ? CONSUMER_STAGES : PROVIDER_STAGES;
+        StringBuilder buf = new StringBuilder();
+        buf.append(record.side == CONSUMER ? "consumer " : "provider ").append(methodName(record.methodId))
+                .append(" requestId=").append(record.requestId)
+                .append(record.status == STATUS_OK ? " ok" : " fail")
+                .append(" total=").append(record.total() / 1000).append("us");
+        for (int i = 0; i < stages.length; i++) {
+            long value = record.stage(i);
+            buf.append(' ').append(stages[i]).append('=').append(value < 0 ? "-" : value / 1000 + "us");
+        }
+        return buf.toString();
+    }
+
+    static String methodName(long methodId) {
+        String name = methodNames.get(methodId);
+        if (name == null) {
+            MethodDescriptor method = ServiceDescriptor.findMethod(methodId);
+            if (method == null) {
+                return "methodId=" + methodId;
+            }
+            name = method.getService().getServiceKey() + "#" + method.getMethod().getName();
+            methodNames.put(methodId, name);
+        }
+        return name;
+    }
+
+    /**
+     * 读取一条记录，读的过程中被覆盖了返回 null
+     */
+    private static Record read(long seq) {
+        int base = offset(seq);
+        if ((long) LONGS.getAcquire(buffer, base + SEQ_OFFSET) != seq) {
+            return null;
+        }
+        long meta = (long) LONGS.getAcquire(buffer, base + META_OFFSET);
+        long methodId = (long) LONGS.get(buffer, base + METHOD_ID_OFFSET);
+        long requestId = (long) LONGS.get(buffer, base + REQUEST_ID_OFFSET);
+        long[] stamps = new long[STAGES];
+        for (int i = 0; i < STAGES; i++) {
+            stamps[i] = (long) LONGS.get(buffer, base + STAMPS_OFFSET + i * 8);
+        }
+        VarHandle.acquireFence();
+        if ((long) LONGS.get(buffer, base + SEQ_OFFSET) != seq) {
+            return null;
+        }
+        return new Record(side(meta), methodId, (byte) (meta & 0xFF), requestId, stamps);
+    }
+
+    private static int offset(long seq) {
+        return (int) (seq & (capacity - 1)) * RECORD_SIZE;
+    }
+
+    private static long meta(byte side, byte status) {
+        return ((side & 0xFFL) << 8) | (status & 0xFFL);
+    }
+
+    private static byte side(long meta) {
+        return (byte) (meta >>> 8);
+    }
+
+    /**
+     * 读出来的一条记录
+     */
+    private static class Record {
+
+        private final byte side;
+
+        private final long methodId;
+
+        private final byte status;
+
+        private final long requestId;
+
+        private final long[] stamps;
+
+        Record(byte side, long methodId, byte status, long requestId, long[] stamps) {
+            this.side = side;
+            this.methodId = methodId;
+            this.status = status;
+            this.requestId = requestId;
+            this.stamps = stamps;
+        }
+
+        /**
+         * 第 i 个阶段的耗时纳秒数，缺少时间点返回 -1
+         */
+        long stage(int i) {
+            return elapsed(stamps[i], stamps[i + 1]);
+        }
+
+        long total() {
+            return elapsed(stamps[0], stamps[STAGES - 1]);
+        }
+    }
+}
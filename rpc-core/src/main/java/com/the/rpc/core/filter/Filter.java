@@ -0,0 +1,27 @@
+package com.the.rpc.core.filter;
+
+import com.the.rpc.common.extension.Activate;
+import com.the.rpc.common.extension.SPI;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+
+/**
+ * 调用过滤器，包在调用外面，可以在调用前后做处理，也可以不调用 next 直接返回。<br>
+ * 消费者和提供者共用：消费者在引用服务的时候、提供者在导出服务的时候，用 {@link Activate} 激活的过滤器和
+ * URL 上 filter 参数指定的过滤器构建一次调用链。过滤器是单例，会被所有服务共用
+ *
+ * @see FilterChain
+ */
+@SPI
+public interface Filter {
+
+    /**
+     * 过滤调用
+     *
+     * @param next   下一个过滤器，最后一个是真正的调用
+     * @param method 远程方法
+     * @param args   参数
+     * @return 返回值
+     */
+    Object invoke(Invoker next, RemoteMethod method, Object[] args) throws Throwable;
+}
@@ -0,0 +1,64 @@
+package com.the.rpc.core.filter;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.ExtensionLoader;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+
+import java.util.List;
+
+/**
+ * 过滤器链。在引用或者导出服务的时候把过滤器一层层包成调用器，调用的时候直接一层层调用下去，
+ * 不用每次遍历列表，也不用为每次调用创建上下文对象
+ *
+ */
+public class FilterChain {
+
+    private FilterChain() {
+    }
+
+    /**
+     * 用激活的过滤器构建过滤器链
+     *
+     * @param invoker 真正的调用
+     * @param url     引用或者导出服务的 URL，filter 参数可以增减过滤器
+     * @param group   {@link URLKeyConst#CONSUMER} 或者 {@link URLKeyConst#PROVIDER}
+     * @return 包装之后的调用器
+     */
+    public static Invoker build(Invoker invoker, URL url, String group) {
+        return build(invoker, ExtensionLoader.getLoader(Filter.class).getActivateExtensions(url, URLKeyConst.FILTER, group));
+    }
+
+    /**
+     * 构建过滤器链
+     *
+     * @param invoker 真正的调用
+     * @param filters 过滤器，第一个在最外层
+     * @return 包装之后的调用器，没有过滤器返回原调用器
+     */
+    public static Invoker build(Invoker invoker, List<Filter> filters) {
+        Invoker last = invoker;
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            last = new FilterNode(filters.get(i), last);
+        }
+        return last;
+    }
+
+    private static class FilterNode implements Invoker {
+
+        private final Filter filter;
+
+        private final Invoker next;
+
+        FilterNode(Filter filter, Invoker next) {
+            this.filter = filter;
+            this.next = next;
+        }
+
+        @Override
+        public Object invoke(RemoteMethod method, Object[] args) throws Throwable {
+            return filter.invoke(next, method, args);
+        }
+    }
+}
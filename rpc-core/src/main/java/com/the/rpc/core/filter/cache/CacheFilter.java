@@ -0,0 +1,89 @@
+package com.the.rpc.core.filter.cache;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.Activate;
+import com.the.rpc.core.filter.Filter;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.protocol.RpcRequest;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 结果缓存过滤器，只对配置了 cache=true 的幂等方法生效。<br>
+ * key 是方法 ID + 序列化之后的参数，每个引用的每个方法一个 {@link WTinyLfuCache}，大小和过期时间按各自引用的配置。<br>
+ * 没有命中的时候，同一个 key 同时只有一个调用发出去，其他线程等它的结果 (singleflight)。<br>
+ * 缓存的返回值会被多个调用方共享，调用方不要修改它
+ *
+ */
+@Activate(group = URLKeyConst.CONSUMER, order = 100)
+public class CacheFilter implements Filter {
+
+    /**
+     * null 返回值的占位
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * 每个远程方法的缓存 {远程方法: 缓存}。过滤器是单例，同一个方法可能被多个配置不同的引用使用，
+     * 远程方法是每个引用各自创建的，按它区分
+     */
+    private final Map<RemoteMethod, WTinyLfuCache<CacheKey, Object>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 正在进行中的调用 {key: 结果}
+     */
+    private final Map<CacheKey, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(Invoker next, RemoteMethod method, Object[] args) throws Throwable {
+        if (method.getCacheSize() == 0) {
+            return next.invoke(method, args);
+        }
+        WTinyLfuCache<CacheKey, Object> cache = getCache(method);
+        CacheKey key = new CacheKey(method.getMethodId(), method.getSerializer().serialize(new RpcRequest(args)));
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return cached == NULL ? null : cached;
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inflight.putIfAbsent(key, future);
+        if (leader != null) {
+            return await(leader);
+        }
+        try {
+            // 上一个调用可能刚刚结束，结果已经在缓存里面了
+            cached = cache.get(key);
+            Object result = cached != null ? (cached == NULL ? null : cached) : next.invoke(method, args);
+            if (cached == null) {
+                cache.put(key, result == null ? NULL : result);
+            }
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, future);
+        }
+    }
+
+    private WTinyLfuCache<CacheKey, Object> getCache(RemoteMethod method) {
+        WTinyLfuCache<CacheKey, Object> cache = caches.get(method);
+        if (cache != null) {
+            return cache;
+        }
+        return caches.computeIfAbsent(method, k -> new WTinyLfuCache<>(method.getCacheSize(), method.getCacheTtl()));
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.the.rpc.core.filter.cache;
+
+import java.util.Arrays;
+
+/**
+ * 缓存 key：方法 ID + 序列化之后的参数。比较的时候比较整个参数字节，hash 冲突不会拿到别人的结果
+ *
+ */
+class CacheKey {
+
+    private final long methodId;
+
+    private final byte[] args;
+
+    private final int hash;
+
+    CacheKey(long methodId, byte[] args) {
+        this.methodId = methodId;
+        this.args = args;
+        this.hash = 31 * Long.hashCode(methodId) + Arrays.hashCode(args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey that = (CacheKey) o;
+        return methodId == that.methodId && hash == that.hash && Arrays.equals(args, that.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,91 @@
+package com.the.rpc.core.filter.cache;
+
+/**
+ * 访问频率估算，Count-Min Sketch。<br>
+ * 每个计数器 4 位，一个 long 放 16 个；每个 key 对应 4 个计数器，取最小值作为频率，最大 15。<br>
+ * 累计增加的次数达到样本数之后所有计数器减半，让很久以前的热点慢慢冷下来。不是线程安全的，由缓存加锁
+ *
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 减半的时候去掉每个计数器右移之后混进来的高位
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    /**
+     * 多少次增加之后减半
+     */
+    private final int sampleSize;
+
+    private int size;
+
+    FrequencySketch(int maximum) {
+        int length = Integer.highestOneBit(Math.max(16, maximum) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(16, maximum);
+    }
+
+    /**
+     * 估算频率
+     *
+     * @param hash key 的 hash
+     * @return 频率，0 ~ 15
+     */
+    int frequency(int hash) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long x = index(hash, i);
+            int count = (int) ((table[(int) x & tableMask] >>> shift(x)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加一次访问
+     *
+     * @param hash key 的 hash
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long x = index(hash, i);
+            int index = (int) x & tableMask;
+            int shift = shift(x);
+            if (((table[index] >>> shift) & 0xFL) != 0xFL) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private static long index(int hash, int i) {
+        long x = (hash + SEEDS[i]) * SEEDS[i];
+        return x + (x >>> 32);
+    }
+
+    /**
+     * 计数器在 long 里面的位置
+     */
+    private static int shift(long x) {
+        return (int) ((x >>> 40) & 15) << 2;
+    }
+}
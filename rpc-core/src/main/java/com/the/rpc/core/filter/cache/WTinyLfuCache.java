@@ -0,0 +1,210 @@
+package com.the.rpc.core.filter.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 限制大小、带过期时间的 W-TinyLFU 缓存。<br>
+ * 新数据先进入占 1% 的窗口 LRU，挤出来之后和主区 (SLRU) 的淘汰候选比较访问频率，频率高的留下。
+ * 主区分成试用区和保护区，试用区里面的数据再次被访问才进入保护区。
+ * 这样偶尔访问一次的数据不会把热点数据挤出去，突发的新热点也有窗口区容纳。<br>
+ * 所有方法加同一把锁，临界区都是常数时间的链表操作
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class WTinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+
+    private static final int PROBATION = 1;
+
+    private static final int PROTECTED = 2;
+
+    private final int maximum;
+
+    private final int maxWindow;
+
+    private final int maxProtected;
+
+    private final long ttlNanos;
+
+    private final Map<K, Node<K, V>> data;
+
+    /**
+     * 三个区的链表头，头部是最近访问的，尾部是淘汰候选
+     */
+    private final Node<K, V> window = Node.sentinel();
+
+    private final Node<K, V> probation = Node.sentinel();
+
+    private final Node<K, V> protect = Node.sentinel();
+
+    private int windowSize;
+
+    private int protectedSize;
+
+    private final FrequencySketch sketch;
+
+    /**
+     * @param maximum 最大数量
+     * @param ttlMs   写入之后多少毫秒过期
+     */
+    public WTinyLfuCache(int maximum, long ttlMs) {
+        this.maximum = Math.max(1, maximum);
+        this.maxWindow = Math.max(1, this.maximum / 100);
+        this.maxProtected = (int) ((this.maximum - maxWindow) * 0.8);
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.data = new HashMap<>(Math.min(this.maximum, 1024) * 2);
+        this.sketch = new FrequencySketch(this.maximum);
+    }
+
+    /**
+     * 获取
+     *
+     * @param key key
+     * @return value，没有或者已经过期返回 null
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key.hashCode());
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (System.nanoTime() - node.expireAt >= 0) {
+            remove(node);
+            return null;
+        }
+        onHit(node);
+        return node.value;
+    }
+
+    /**
+     * 放入，已经存在则覆盖并且重新计算过期时间
+     *
+     * @param key   key
+     * @param value value
+     */
+    public synchronized void put(K key, V value) {
+        long expireAt = System.nanoTime() + ttlNanos;
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            node.value = value;
+            node.expireAt = expireAt;
+            onHit(node);
+            return;
+        }
+        node = new Node<>(key, value, expireAt);
+        data.put(key, node);
+        node.queue = WINDOW;
+        node.linkAfter(window);
+        windowSize++;
+        if (windowSize > maxWindow) {
+            // 窗口区的淘汰候选进入试用区，和试用区的淘汰候选比较
+            Node<K, V> candidate = window.prev;
+            candidate.unlink();
+            windowSize--;
+            candidate.queue = PROBATION;
+            candidate.linkAfter(probation);
+            if (data.size() > maximum) {
+                evict(candidate);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    private void evict(Node<K, V> candidate) {
+        Node<K, V> victim = probation.prev;
+        if (victim == candidate || victim == probation) {
+            remove(candidate);
+            return;
+        }
+        // 已经过期的直接淘汰，否则留下访问频率高的
+        long now = System.nanoTime();
+        if (now - victim.expireAt >= 0) {
+            remove(victim);
+        } else if (now - candidate.expireAt >= 0) {
+            remove(candidate);
+        } else if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+            remove(victim);
+        } else {
+            remove(candidate);
+        }
+    }
+
+    private void onHit(Node<K, V> node) {
+        node.unlink();
+        if (node.queue == WINDOW) {
+            node.linkAfter(window);
+        } else if (node.queue == PROBATION) {
+            node.queue = PROTECTED;
+            node.linkAfter(protect);
+            protectedSize++;
+            if (protectedSize > maxProtected) {
+                // 保护区满了，最久没访问的降级回试用区
+                Node<K, V> demoted = protect.prev;
+                demoted.unlink();
+                protectedSize--;
+                demoted.queue = PROBATION;
+                demoted.linkAfter(probation);
+            }
+        } else {
+            node.linkAfter(protect);
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        node.unlink();
+        data.remove(node.key);
+        if (node.queue == WINDOW) {
+            windowSize--;
+        } else if (node.queue == PROTECTED) {
+            protectedSize--;
+        }
+    }
+
+    private static class Node<K, V> {
+
+        private final K key;
+
+        private V value;
+
+        private long expireAt;
+
+        private int queue;
+
+        private Node<K, V> prev;
+
+        private Node<K, V> next;
+
+        Node(K key, V value, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> node = new Node<>(null, null, 0);
+            node.prev = node;
+            node.next = node;
+            return node;
+        }
+
+        void linkAfter(Node<K, V> head) {
+            prev = head;
+            next = head.next;
+            head.next.prev = this;
+            head.next = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
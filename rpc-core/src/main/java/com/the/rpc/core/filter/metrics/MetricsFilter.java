@@ -0,0 +1,32 @@
+package com.the.rpc.core.filter.metrics;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.Activate;
+import com.the.rpc.core.filter.Filter;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.metrics.MethodMetrics;
+
+/**
+ * 调用指标过滤器，消费者和提供者都自动激活，把每次调用的次数、耗时和失败记录到远程方法所在一侧的 {@link MethodMetrics}。<br>
+ * 排在缓存过滤器外面，缓存命中也算一次调用。不需要的时候在 URL 上配置 filter=-metrics 去掉。<br>
+ * 请求和响应的字节数、提供者的排队时间只有传输层知道，还是由传输层记录
+ *
+ */
+@Activate(group = {URLKeyConst.CONSUMER, URLKeyConst.PROVIDER})
+public class MetricsFilter implements Filter {
+
+    @Override
+    public Object invoke(Invoker next, RemoteMethod method, Object[] args) throws Throwable {
+        MethodMetrics metrics = method.getMetrics();
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            Object result = next.invoke(method, args);
+            success = true;
+            return result;
+        } finally {
+            metrics.end(start, success);
+        }
+    }
+}
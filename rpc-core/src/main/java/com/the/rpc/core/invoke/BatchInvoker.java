@@ -0,0 +1,19 @@
+package com.the.rpc.core.invoke;
+
+/**
+ * 支持批量调用的调用器，多个调用放到一个报文里面发送
+ *
+ * @see RpcBatch
+ */
+public interface BatchInvoker extends Invoker {
+
+    /**
+     * 批量调用远程方法
+     *
+     * @param methods 远程方法
+     * @param args    每个方法的参数，和 methods 一一对应
+     * @return 每个方法的返回值，和 methods 一一对应
+     * @throws Throwable 任意一个调用失败就抛出异常
+     */
+    Object[] invokeBatch(RemoteMethod[] methods, Object[][] args) throws Throwable;
+}
@@ -0,0 +1,46 @@
+package com.the.rpc.core.invoke;
+
+/**
+ * 调用类型，由方法签名决定
+ *
+ */
+public enum CallType {
+
+    /**
+     * 一个请求一个响应
+     */
+    UNARY,
+
+    /**
+     * 服务端流：一个请求，多个响应。方法返回 void，最后一个参数是 {@link StreamObserver}
+     * <pre>{@code
+     *     void listUsers(Query query, StreamObserver<User> users);
+     * }</pre>
+     */
+    SERVER_STREAM,
+
+    /**
+     * 双向流：两边都可以发送多个消息。方法只有一个 {@link StreamObserver} 参数，返回 {@link StreamObserver}
+     * <pre>{@code
+     *     StreamObserver<Request> chat(StreamObserver<Response> responses);
+     * }</pre>
+     */
+    BIDI_STREAM;
+
+    /**
+     * 根据方法签名判断调用类型
+     *
+     * @param parameterTypes 参数类型
+     * @param returnType     返回值类型
+     * @return 调用类型
+     */
+    static CallType of(Class<?>[] parameterTypes, Class<?> returnType) {
+        if (returnType == StreamObserver.class && parameterTypes.length == 1 && parameterTypes[0] == StreamObserver.class) {
+            return BIDI_STREAM;
+        }
+        if (returnType == void.class && parameterTypes.length > 0 && parameterTypes[parameterTypes.length - 1] == StreamObserver.class) {
+            return SERVER_STREAM;
+        }
+        return UNARY;
+    }
+}
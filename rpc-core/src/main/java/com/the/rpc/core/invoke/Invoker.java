@@ -0,0 +1,18 @@
+package com.the.rpc.core.invoke;
+
+/**
+ * 消费者调用器，负责把一次方法调用发送给提供者
+ *
+ */
+public interface Invoker {
+
+    /**
+     * 调用远程方法
+     *
+     * @param method 远程方法
+     * @param args   方法参数
+     * @return 方法返回值
+     * @throws Throwable 调用失败或者提供者抛出的异常
+     */
+    Object invoke(RemoteMethod method, Object[] args) throws Throwable;
+}
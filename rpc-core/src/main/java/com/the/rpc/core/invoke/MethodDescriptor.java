@@ -0,0 +1,114 @@
+package com.the.rpc.core.invoke;
+
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 方法描述。<br>
+ * 在服务导出/引用的时候生成一次，用紧凑的 long 类型 methodId 代替 "接口名 + 方法名 + 参数类型" 的字符串查找。<br>
+ * methodId 由方法签名计算得出，消费者和提供者各自计算，结果一致，不需要额外协商。
+ * 取签名 SHA-256 摘要的前 8 个字节，一个进程里面的所有方法不会因为碰巧冲突导致服务导出失败，也没法像 String.hashCode 那样随手构造出冲突
+ *
+ */
+@Getter
+public class MethodDescriptor {
+
+    /**
+     * 方法 ID，由 {@link #signature} 计算得出
+     */
+    private final long methodId;
+
+    /**
+     * 方法签名，例如：com.the.rpc.demo.UserService:1.0#getUser(java.lang.Long)
+     */
+    private final String signature;
+
+    /**
+     * 所属的服务
+     */
+    private final ServiceDescriptor service;
+
+    /**
+     * 对应的接口方法
+     */
+    private final Method method;
+
+    /**
+     * 参数类型
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * 返回值类型
+     */
+    private final Class<?> returnType;
+
+    /**
+     * 调用类型
+     */
+    private final CallType callType;
+
+    /**
+     * {@link StreamObserver} 参数的位置，不是流式调用为 -1
+     */
+    private final int streamIndex;
+
+    MethodDescriptor(ServiceDescriptor service, Method method) {
+        this.service = service;
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.returnType = method.getReturnType();
+        this.signature = buildSignature(service.getServiceKey(), method);
+        this.methodId = hash(signature);
+        this.callType = CallType.of(parameterTypes, returnType);
+        this.streamIndex = callType == CallType.UNARY ? -1 : parameterTypes.length - 1;
+    }
+
+    /**
+     * 构建方法签名
+     *
+     * @param serviceKey 服务 key
+     * @param method     方法
+     * @return 签名
+     */
+    static String buildSignature(String serviceKey, Method method) {
+        StringBuilder buf = new StringBuilder(serviceKey).append('#').append(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(types[i].getName());
+        }
+        return buf.append(')').toString();
+    }
+
+    /**
+     * 计算方法 ID
+     *
+     * @param signature 方法签名
+     * @return 签名 SHA-256 摘要的前 8 个字节
+     */
+    static long hash(String signature) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(signature.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+}
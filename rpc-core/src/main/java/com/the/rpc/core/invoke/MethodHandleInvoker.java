@@ -0,0 +1,48 @@
+package com.the.rpc.core.invoke;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 基于 {@link MethodHandle} 的方法调用器。<br>
+ * 导出的时候把服务实现绑定到句柄上，并且把参数适配成 (Object[])Object，调用的时候只需要一次 invokeExact
+ *
+ */
+public class MethodHandleInvoker implements MethodInvoker {
+
+    /**
+     * 统一的调用类型 (Object[])Object
+     */
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final MethodDescriptor descriptor;
+
+    private final MethodHandle handle;
+
+    public MethodHandleInvoker(MethodDescriptor descriptor, Object target) {
+        this.descriptor = descriptor;
+        Method method = descriptor.getMethod();
+        try {
+            // 接口或者实现类不是 public 的时候也可以调用
+            method.setAccessible(true);
+            this.handle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(target)
+                    .asSpreader(Object[].class, descriptor.getParameterTypes().length)
+                    .asType(INVOKE_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalStateException("Create invoker fail. method=" + descriptor + ". " + e.toString());
+        }
+    }
+
+    @Override
+    public MethodDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public Object invoke(Object[] args) throws Throwable {
+        return handle.invokeExact(args);
+    }
+}
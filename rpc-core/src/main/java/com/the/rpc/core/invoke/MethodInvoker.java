@@ -0,0 +1,24 @@
+package com.the.rpc.core.invoke;
+
+/**
+ * 提供者的方法调用器。服务导出的时候为每个远程方法生成一次，之后按 methodId 直接调用，不再走反射
+ *
+ */
+public interface MethodInvoker {
+
+    /**
+     * 获取方法描述
+     *
+     * @return 方法描述
+     */
+    MethodDescriptor getDescriptor();
+
+    /**
+     * 调用服务实现
+     *
+     * @param args 方法参数
+     * @return 方法返回值，void 方法返回 null
+     * @throws Throwable 服务实现抛出的异常，原样抛出
+     */
+    Object invoke(Object[] args) throws Throwable;
+}
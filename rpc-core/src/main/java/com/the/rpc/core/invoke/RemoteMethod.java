@@ -0,0 +1,154 @@
+package com.the.rpc.core.invoke;
+
+import cn.hutool.core.util.StrUtil;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.SPI;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.metrics.MethodMetrics;
+import com.the.rpc.core.serializer.SerializeType;
+import com.the.rpc.core.serializer.Serializer;
+import lombok.Getter;
+
+/**
+ * 消费者引用的远程方法。<br>
+ * 引用服务的时候生成一次，把 methodId、序列化器、超时时间都算好，调用的时候直接使用，不再查找。<br>
+ * 提供者有过滤器的时候，导出服务时也会用提供者的 URL 生成一份，传给过滤器
+ *
+ */
+@Getter
+public class RemoteMethod {
+
+    /**
+     * 默认调用超时毫秒数
+     */
+    public static final int DEFAULT_TIMEOUT_MS = 3_000;
+
+    /**
+     * 默认每个方法缓存的结果数
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    /**
+     * 默认缓存过期毫秒数
+     */
+    public static final int DEFAULT_CACHE_TTL_MS = 60_000;
+
+    /**
+     * 方法描述
+     */
+    private final MethodDescriptor descriptor;
+
+    /**
+     * 方法 ID
+     */
+    private final long methodId;
+
+    /**
+     * 序列化类型，放到报文头里面
+     */
+    private final byte serializeType;
+
+    /**
+     * 序列化器
+     */
+    private final Serializer serializer;
+
+    /**
+     * 调用超时毫秒数
+     */
+    private final int timeout;
+
+    /**
+     * 是否允许对冲请求，只有幂等的方法才能打开
+     */
+    private final boolean hedge;
+
+    /**
+     * 结果缓存的最大数量，0 表示不缓存
+     */
+    private final int cacheSize;
+
+    /**
+     * 结果缓存过期毫秒数
+     */
+    private final int cacheTtl;
+
+    /**
+     * 在哪一侧调用，{@link URLKeyConst#CONSUMER} 或者 {@link URLKeyConst#PROVIDER}
+     */
+    private final String side;
+
+    /**
+     * 所在一侧的指标，第一次调用的时候获取
+     */
+    private volatile MethodMetrics metrics;
+
+    private RemoteMethod(MethodDescriptor descriptor, URL url, String side) {
+        this.descriptor = descriptor;
+        this.side = side;
+        this.methodId = descriptor.getMethodId();
+        String methodName = descriptor.getMethod().getName();
+        String serializerName = url.getParam(methodName + "." + URLKeyConst.SERIALIZER,
+                url.getParam(URLKeyConst.SERIALIZER, null));
+        if (StrUtil.isBlank(serializerName)) {
+            serializerName = Serializer.class.getAnnotation(SPI.class).value();
+        }
+        this.serializeType = SerializeType.fromName(serializerName).getCode();
+        this.serializer = SerializeType.getSerializer(serializeType);
+        this.timeout = url.getIntParam(methodName + "." + URLKeyConst.TIMEOUT,
+                url.getIntParam(URLKeyConst.TIMEOUT, DEFAULT_TIMEOUT_MS));
+        // 流式调用不能重复发送
+        this.hedge = descriptor.getCallType() == CallType.UNARY && url.getBooleanParam(methodName + "." + URLKeyConst.HEDGE,
+                url.getBooleanParam(URLKeyConst.HEDGE, false));
+        boolean cacheable = descriptor.getCallType() == CallType.UNARY && url.getBooleanParam(methodName + "." + URLKeyConst.CACHE,
+                url.getBooleanParam(URLKeyConst.CACHE, false));
+        this.cacheSize = cacheable ? url.getIntParam(methodName + "." + URLKeyConst.CACHE_SIZE,
+                url.getIntParam(URLKeyConst.CACHE_SIZE, DEFAULT_CACHE_SIZE)) : 0;
+        this.cacheTtl = url.getIntParam(methodName + "." + URLKeyConst.CACHE_TTL,
+                url.getIntParam(URLKeyConst.CACHE_TTL, DEFAULT_CACHE_TTL_MS));
+    }
+
+    /**
+     * 获取所在一侧的指标
+     */
+    public MethodMetrics getMetrics() {
+        MethodMetrics m = metrics;
+        if (m == null) {
+            metrics = m = MethodMetrics.of(side, descriptor);
+        }
+        return m;
+    }
+
+    /**
+     * 为服务的所有远程方法生成引用，顺序和 {@link ServiceDescriptor#getMethods()} 一致
+     *
+     * @param service 服务描述
+     * @param url     服务引用的 URL，上面可以配置序列化方式、超时时间、是否对冲和结果缓存
+     * @return 远程方法列表
+     */
+    public static RemoteMethod[] of(ServiceDescriptor service, URL url) {
+        return of(service, url, URLKeyConst.CONSUMER);
+    }
+
+    /**
+     * 为服务的所有远程方法生成引用，顺序和 {@link ServiceDescriptor#getMethods()} 一致
+     *
+     * @param service 服务描述
+     * @param url     服务引用或者导出的 URL
+     * @param side    {@link URLKeyConst#CONSUMER} 或者 {@link URLKeyConst#PROVIDER}，决定指标记在哪一侧
+     * @return 远程方法列表
+     */
+    public static RemoteMethod[] of(ServiceDescriptor service, URL url, String side) {
+        MethodDescriptor[] descriptors = service.getMethods();
+        RemoteMethod[] methods = new RemoteMethod[descriptors.length];
+        for (int i = 0; i < descriptors.length; i++) {
+            methods[i] = new RemoteMethod(descriptors[i], url, side);
+        }
+        return methods;
+    }
+
+    @Override
+    public String toString() {
+        return descriptor.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.the.rpc.core.invoke;
+
+import cn.hutool.core.util.ClassUtil;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.ExtensionLoader;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.proxy.ProxyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量调用。先通过 {@link #stub()} 记录调用，再用 {@link #execute()} 一次发送出去。<br>
+ * 记录的时候方法直接返回默认值，真正的返回值在 execute 的结果里面。不是线程安全的，一个线程用一个
+ * <pre>{@code
+ *     RpcBatch<UserService> batch = new RpcBatch<>(UserService.class, url, invoker);
+ *     batch.stub().getUser(1L);
+ *     batch.stub().getUser(2L);
+ *     Object[] users = batch.execute();
+ * }</pre>
+ *
+ */
+public class RpcBatch<T> {
+
+    private final BatchInvoker invoker;
+
+    /**
+     * 记录调用的代理
+     */
+    private final T stub;
+
+    private final List<RemoteMethod> methods = new ArrayList<>();
+
+    private final List<Object[]> args = new ArrayList<>();
+
+    /**
+     * @param interfaceClass 服务接口
+     * @param url            服务引用的 URL
+     * @param invoker        批量调用器
+     */
+    public RpcBatch(Class<T> interfaceClass, URL url, BatchInvoker invoker) {
+        this.invoker = invoker;
+        this.stub = ExtensionLoader.getLoader(ProxyFactory.class)
+                .getExtension(url.getParam(URLKeyConst.PROXY, null))
+                .getProxy(interfaceClass, url, this::record);
+    }
+
+    /**
+     * 获取记录调用的代理，通过它调用的方法不会马上发送
+     *
+     * @return 代理
+     */
+    public T stub() {
+        return stub;
+    }
+
+    /**
+     * 发送所有记录的调用，发送后清空记录
+     *
+     * @return 每个调用的返回值，顺序和调用顺序一致
+     * @throws Throwable 任意一个调用失败就抛出异常
+     */
+    public Object[] execute() throws Throwable {
+        RemoteMethod[] batchMethods = methods.toArray(new RemoteMethod[0]);
+        Object[][] batchArgs = args.toArray(new Object[0][]);
+        methods.clear();
+        args.clear();
+        return invoker.invokeBatch(batchMethods, batchArgs);
+    }
+
+    private Object record(RemoteMethod method, Object[] methodArgs) {
+        methods.add(method);
+        args.add(methodArgs);
+        // 基本类型不能返回 null，返回默认值
+        return ClassUtil.getDefaultValue(method.getDescriptor().getReturnType());
+    }
+}
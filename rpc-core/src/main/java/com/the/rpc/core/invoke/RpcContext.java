@@ -0,0 +1,62 @@
+package com.the.rpc.core.invoke;
+
+import com.the.rpc.core.trace.TraceContext;
+import com.the.rpc.core.trace.Tracing;
+
+/**
+ * 调用上下文，每个线程一个。<br>
+ * 提供者执行请求的时候会把请求的截止时间放进来，在服务实现里面再发起的调用会继承剩余的时间。
+ * 链路追踪上下文也放在这里，通过 {@link Tracing} 访问
+ *
+ */
+public class RpcContext {
+
+    private static final ThreadLocal<RpcContext> LOCAL = ThreadLocal.withInitial(RpcContext::new);
+
+    /**
+     * 截止时间，绝对时间戳毫秒数，0 表示没有截止时间
+     */
+    private long deadline;
+
+    /**
+     * 链路追踪上下文，不在链路里面为 null
+     */
+    private TraceContext traceContext;
+
+    /**
+     * 获取当前线程的上下文
+     *
+     * @return 上下文
+     */
+    public static RpcContext getContext() {
+        return LOCAL.get();
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public TraceContext getTraceContext() {
+        return traceContext;
+    }
+
+    public void setTraceContext(TraceContext traceContext) {
+        this.traceContext = traceContext;
+    }
+
+    /**
+     * 计算一次调用的截止时间：自己的超时时间和继承的截止时间，取先到的那个
+     *
+     * @param now     当前时间戳毫秒数
+     * @param timeout 调用超时毫秒数
+     * @return 截止时间戳毫秒数
+     */
+    public long computeDeadline(long now, int timeout) {
+        long own = now + timeout;
+        return deadline != 0 && deadline < own ? deadline : own;
+    }
+}
@@ -0,0 +1,132 @@
+package com.the.rpc.core.invoke;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务描述。一个接口 + 版本号对应一个实例，创建后不可变，消费者和提供者共用
+ *
+ */
+@Getter
+public class ServiceDescriptor {
+
+    /**
+     * 服务描述缓存 {serviceKey: 服务描述}
+     */
+    private static final Map<String, ServiceDescriptor> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 接口类型
+     */
+    private final Class<?> interfaceClass;
+
+    /**
+     * 版本号
+     */
+    private final String version;
+
+    /**
+     * 服务 key：接口全名[:版本号]
+     */
+    private final String serviceKey;
+
+    /**
+     * 所有远程方法，按签名排序
+     */
+    private final MethodDescriptor[] methods;
+
+    /**
+     * {接口方法: 方法描述}
+     */
+    private final Map<Method, MethodDescriptor> methodMap;
+
+    private ServiceDescriptor(Class<?> interfaceClass, String version) {
+        if (!interfaceClass.isInterface()) {
+            throw new IllegalStateException(interfaceClass.getName() + " is not interface");
+        }
+        this.interfaceClass = interfaceClass;
+        this.version = version;
+        this.serviceKey = buildServiceKey(interfaceClass.getCanonicalName(), version);
+        // 只有抽象方法才是远程方法，default 和 static 方法在本地执行
+        Method[] remoteMethods = Arrays.stream(interfaceClass.getMethods())
+                .filter(m -> Modifier.isAbstract(m.getModifiers()))
+                .sorted(Comparator.comparing(m -> MethodDescriptor.buildSignature(serviceKey, m)))
+                .toArray(Method[]::new);
+        this.methods = new MethodDescriptor[remoteMethods.length];
+        this.methodMap = new HashMap<>(remoteMethods.length * 2);
+        Map<Long, MethodDescriptor> ids = new HashMap<>(remoteMethods.length * 2);
+        for (int i = 0; i < remoteMethods.length; i++) {
+            MethodDescriptor descriptor = new MethodDescriptor(this, remoteMethods[i]);
+            // methodId 是签名的摘要，几乎不会冲突，但是冲突了一定要在启动的时候发现
+            MethodDescriptor exists = ids.putIfAbsent(descriptor.getMethodId(), descriptor);
+            if (exists != null) {
+                throw new IllegalStateException("Duplicate method id. " + exists + " and " + descriptor);
+            }
+            methods[i] = descriptor;
+            methodMap.put(remoteMethods[i], descriptor);
+        }
+    }
+
+    /**
+     * 获取服务描述，同一个接口 + 版本号只会创建一次
+     *
+     * @param interfaceClass 接口类型
+     * @param version        版本号，可以为空
+     * @return 服务描述
+     */
+    public static ServiceDescriptor of(Class<?> interfaceClass, String version) {
+        String serviceKey = buildServiceKey(interfaceClass.getCanonicalName(), version);
+        return CACHE.computeIfAbsent(serviceKey, k -> new ServiceDescriptor(interfaceClass, version));
+    }
+
+    /**
+     * 在所有已经创建的服务描述里面查找方法，只用于诊断，不在调用路径上使用
+     *
+     * @param methodId 方法 ID
+     * @return 方法描述，找不到返回 null
+     */
+    public static MethodDescriptor findMethod(long methodId) {
+        for (ServiceDescriptor service : CACHE.values()) {
+            for (MethodDescriptor method : service.methods) {
+                if (method.getMethodId() == methodId) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 构建服务 key
+     *
+     * @param interfaceName 接口全名
+     * @param version       版本号
+     * @return 接口全名[:版本号]
+     */
+    public static String buildServiceKey(String interfaceName, String version) {
+        return StrUtil.isEmpty(version) ? interfaceName : interfaceName + ":" + version;
+    }
+
+    /**
+     * 根据接口方法获取方法描述
+     *
+     * @param method 接口方法
+     * @return 方法描述，不是远程方法返回 null
+     */
+    public MethodDescriptor getMethod(Method method) {
+        return methodMap.get(method);
+    }
+
+    @Override
+    public String toString() {
+        return serviceKey;
+    }
+}
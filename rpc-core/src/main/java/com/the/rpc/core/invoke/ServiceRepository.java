@@ -0,0 +1,236 @@
+package com.the.rpc.core.invoke;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.ExtensionLoader;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.filter.Filter;
+import com.the.rpc.core.filter.FilterChain;
+import com.the.rpc.core.limit.GradientLimiter;
+import com.the.rpc.core.metrics.MethodMetrics;
+import com.the.rpc.core.protocol.Attachments;
+import com.the.rpc.core.protocol.RpcRequest;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.trace.Span;
+import com.the.rpc.core.trace.TraceContext;
+import com.the.rpc.core.trace.Tracing;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 提供者已导出服务的仓库。<br>
+ * 导出的时候为每个方法生成 {@link MethodInvoker}、并发限制器和提供者一侧的 {@link MethodMetrics}，请求分发的时候按 methodId 查找。
+ * 有提供者过滤器的时候，调用器外面包一层预先构建好的过滤器链，调用次数和耗时由其中的指标过滤器记录。<br>
+ * 导出和取消导出很少发生，采用写时复制：写的时候加锁复制一份新表，读的时候无锁读取 volatile 快照
+ *
+ */
+@Slf4j
+public class ServiceRepository {
+
+    /**
+     * 方法调用器快照 {methodId: 调用器}，只读，修改的时候整体替换
+     */
+    private static volatile LongObjectMap<MethodInvoker> invokers = new LongObjectHashMap<>();
+
+    /**
+     * 并发限制器快照 {methodId: 限制器}，只读，修改的时候整体替换。没有开启限制的方法不在里面
+     */
+    private static volatile LongObjectMap<GradientLimiter> limiters = new LongObjectHashMap<>();
+
+    /**
+     * 方法指标快照 {methodId: 指标}，只读，修改的时候整体替换
+     */
+    private static volatile LongObjectMap<MethodMetrics> metrics = new LongObjectHashMap<>();
+
+    /**
+     * 默认最大并发数
+     */
+    private static final int DEFAULT_MAX_CONCURRENCY = 1000;
+
+    /**
+     * 关闭并发限制的 limiter 参数值
+     */
+    private static final String LIMITER_NONE = "none";
+
+    /**
+     * 已导出的服务 {serviceKey: 服务实现}
+     */
+    private static final Map<String, Object> services = new ConcurrentHashMap<>();
+
+    private ServiceRepository() {
+    }
+
+    /**
+     * 导出服务，为服务的每个远程方法生成调用器
+     *
+     * @param interfaceClass 接口类型
+     * @param url            提供者的 URL，包含版本号、并发限制等参数
+     * @param ref            服务实现
+     * @return 服务描述
+     */
+    public static synchronized <T> ServiceDescriptor export(Class<T> interfaceClass, URL url, T ref) {
+        ServiceDescriptor service = ServiceDescriptor.of(interfaceClass, url.getParam(URLKeyConst.VERSION, null));
+        if (services.containsKey(service.getServiceKey())) {
+            throw new IllegalStateException(service + " is already exported!");
+        }
+        LongObjectMap<MethodInvoker> newInvokers = new LongObjectHashMap<>(invokers.size() + service.getMethods().length);
+        newInvokers.putAll(invokers);
+        List<Filter> filters = ExtensionLoader.getLoader(Filter.class).getActivateExtensions(url, URLKeyConst.FILTER, URLKeyConst.PROVIDER);
+        RemoteMethod[] remoteMethods = filters.isEmpty() ? null : RemoteMethod.of(service, url, URLKeyConst.PROVIDER);
+        MethodDescriptor[] methods = service.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            MethodDescriptor method = methods[i];
+            MethodInvoker invoker = new MethodHandleInvoker(method, ref);
+            if (remoteMethods != null) {
+                invoker = new FilteredMethodInvoker(invoker, remoteMethods[i], filters);
+            }
+            MethodInvoker exists = newInvokers.put(method.getMethodId(), invoker);
+            if (exists != null) {
+                throw new IllegalStateException("Duplicate method id. " + exists.getDescriptor() + " and " + method);
+            }
+        }
+        // 每个方法一个并发限制器，limiter=none 的时候不限制
+        if (!LIMITER_NONE.equals(url.getParam(URLKeyConst.LIMITER, null))) {
+            int maxConcurrency = url.getIntParam(URLKeyConst.MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY);
+            LongObjectMap<GradientLimiter> newLimiters = new LongObjectHashMap<>(limiters.size() + service.getMethods().length);
+            newLimiters.putAll(limiters);
+            for (MethodDescriptor method : service.getMethods()) {
+                newLimiters.put(method.getMethodId(), new GradientLimiter(maxConcurrency));
+            }
+            limiters = newLimiters;
+        }
+        LongObjectMap<MethodMetrics> newMetrics = new LongObjectHashMap<>(metrics.size() + methods.length);
+        newMetrics.putAll(metrics);
+        for (MethodDescriptor method : methods) {
+            newMetrics.put(method.getMethodId(), MethodMetrics.of(URLKeyConst.PROVIDER, method));
+        }
+        metrics = newMetrics;
+        invokers = newInvokers;
+        services.put(service.getServiceKey(), ref);
+        log.info("export: {}", service);
+        return service;
+    }
+
+    /**
+     * 取消导出服务
+     *
+     * @param service 服务描述
+     */
+    public static synchronized void unexport(ServiceDescriptor service) {
+        if (services.remove(service.getServiceKey()) == null) {
+            return;
+        }
+        LongObjectMap<MethodInvoker> newInvokers = new LongObjectHashMap<>(invokers.size());
+        newInvokers.putAll(invokers);
+        LongObjectMap<GradientLimiter> newLimiters = new LongObjectHashMap<>(limiters.size());
+        newLimiters.putAll(limiters);
+        for (MethodDescriptor method : service.getMethods()) {
+            newInvokers.remove(method.getMethodId());
+            newLimiters.remove(method.getMethodId());
+        }
+        invokers = newInvokers;
+        limiters = newLimiters;
+        // 指标不删除, 取消导出的时候可能还有调用拿着调用器没有执行完, 之后再导出会使用同一份指标
+        log.info("unexport: {}", service);
+    }
+
+    /**
+     * 根据 methodId 获取调用器
+     *
+     * @param methodId 方法 ID
+     * @return 调用器，找不到返回 null
+     */
+    public static MethodInvoker getInvoker(long methodId) {
+        return invokers.get(methodId);
+    }
+
+    /**
+     * 根据 methodId 调用服务实现，各种传输方式收到请求之后都通过这里调用
+     *
+     * @param methodId 方法 ID
+     * @param request  请求
+     * @return 响应，服务实现抛出的异常放在响应里面
+     */
+    public static RpcResponse invoke(long methodId, RpcRequest request) {
+        return invoke(methodId, request, null);
+    }
+
+    /**
+     * 根据 methodId 调用服务实现，执行期间把请求带来的链路上下文设置成当前上下文，开启了链路追踪的时候记录一个 SERVER span
+     *
+     * @param methodId    方法 ID
+     * @param request     请求
+     * @param attachments 请求的附件，没有为 null
+     * @return 响应，服务实现抛出的异常放在响应里面
+     */
+    public static RpcResponse invoke(long methodId, RpcRequest request, Attachments attachments) {
+        MethodInvoker invoker = invokers.get(methodId);
+        if (invoker == null) {
+            return RpcResponse.fail("Method not found. methodId=" + methodId);
+        }
+        TraceContext previous = Tracing.current();
+        Span span = Tracing.startServerSpan(invoker.getDescriptor(), TraceContext.from(attachments));
+        String error = null;
+        try {
+            return RpcResponse.success(invoker.invoke(request.getArgs()));
+        } catch (Throwable e) {
+            log.warn("Invoke fail. method={}", invoker.getDescriptor(), e);
+            error = e.toString();
+            return RpcResponse.fail(error);
+        } finally {
+            Tracing.end(span, error, previous);
+        }
+    }
+
+    /**
+     * 根据 methodId 获取提供者一侧的指标，传输层用来记录请求和响应的字节数
+     *
+     * @param methodId 方法 ID
+     * @return 指标，方法不存在返回 null
+     */
+    public static MethodMetrics getMetrics(long methodId) {
+        return metrics.get(methodId);
+    }
+
+    /**
+     * 根据 methodId 获取并发限制器
+     *
+     * @param methodId 方法 ID
+     * @return 限制器，没有开启限制返回 null
+     */
+    public static GradientLimiter getLimiter(long methodId) {
+        return limiters.get(methodId);
+    }
+
+    /**
+     * 经过提供者过滤器链的调用器
+     */
+    private static class FilteredMethodInvoker implements MethodInvoker {
+
+        private final MethodDescriptor descriptor;
+
+        private final RemoteMethod method;
+
+        private final Invoker chain;
+
+        FilteredMethodInvoker(MethodInvoker invoker, RemoteMethod method, List<Filter> filters) {
+            this.descriptor = invoker.getDescriptor();
+            this.method = method;
+            this.chain = FilterChain.build((m, args) -> invoker.invoke(args), filters);
+        }
+
+        @Override
+        public MethodDescriptor getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public Object invoke(Object[] args) throws Throwable {
+            return chain.invoke(method, args);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.the.rpc.core.invoke;
+
+/**
+ * 流式调用的消息接收者。<br>
+ * 发送方调用 onNext 发送消息，最后调用 onCompleted 或者 onError 结束；接收方以同样的顺序被回调。<br>
+ * 发送的时候对端来不及处理会阻塞在 onNext 上，所以同一个流不要多个线程同时发送；接收的回调不要长时间阻塞，
+ * 处理完才会给对端发送新的授权
+ *
+ * @param <T> 消息类型
+ */
+public interface StreamObserver<T> {
+
+    /**
+     * 一个消息
+     *
+     * @param value 消息
+     */
+    void onNext(T value);
+
+    /**
+     * 流出错结束
+     *
+     * @param t 异常
+     */
+    void onError(Throwable t);
+
+    /**
+     * 流正常结束
+     */
+    void onCompleted();
+}
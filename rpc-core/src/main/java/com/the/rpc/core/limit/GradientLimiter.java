@@ -0,0 +1,199 @@
+package com.the.rpc.core.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于延迟梯度的自适应并发限制器，参考 Netflix concurrency-limits 的 Gradient2。<br>
+ * 用长期平均 RTT 和最近一个窗口的 RTT 的比值作为梯度：RTT 变大说明开始排队，限制值跟着变小；RTT 稳定则慢慢放大。
+ * <pre>
+ *     gradient = clamp(TOLERANCE * longRtt / shortRtt, 0.5, 1.0)
+ *     newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * 获取和释放都是无锁的，限制值按窗口更新，同一时间只有一个线程在更新
+ *
+ */
+public class GradientLimiter {
+
+    /**
+     * 初始限制值
+     */
+    private static final int INITIAL_LIMIT = 100;
+
+    /**
+     * 最小限制值
+     */
+    private static final int MIN_LIMIT = 1;
+
+    /**
+     * 可以容忍的 RTT 增长倍数，在这个范围内不降低限制值
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * 新限制值的平滑系数
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * 长期 RTT 的指数平均系数，相当于最近 20 个窗口
+     */
+    private static final double LONG_RTT_FACTOR = 0.05;
+
+    /**
+     * 窗口时长
+     */
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 一个窗口最少的样本数，样本太少不更新
+     */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    /**
+     * 最大限制值
+     */
+    private final int maxLimit;
+
+    /**
+     * 当前正在执行的请求数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 当前限制值
+     */
+    private volatile int limit;
+
+    /**
+     * 当前窗口的 RTT 总和
+     */
+    private final LongAdder windowRttSum = new LongAdder();
+
+    /**
+     * 当前窗口的样本数
+     */
+    private final LongAdder windowSamples = new LongAdder();
+
+    /**
+     * 当前窗口开始的时间
+     */
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * 当前窗口的最大并发数，用来判断是否真的到了限制值
+     */
+    private volatile int windowMaxInFlight;
+
+    /**
+     * 是否有线程正在更新限制值
+     */
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    /**
+     * 限制值的估计值，保留小数，避免限制值很小的时候每次都被取整抵消。只在更新的时候读写
+     */
+    private double estimatedLimit;
+
+    /**
+     * 长期平均 RTT，只在更新的时候读写
+     */
+    private double longRtt;
+
+    public GradientLimiter(int maxLimit) {
+        this.maxLimit = Math.max(maxLimit, MIN_LIMIT);
+        this.estimatedLimit = Math.min(INITIAL_LIMIT, this.maxLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * 尝试获取执行许可
+     *
+     * @return 获取失败说明已经超过限制值，应该拒绝请求
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (current + 1 > windowMaxInFlight) {
+                    windowMaxInFlight = current + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放执行许可，并记录这次请求的 RTT
+     *
+     * @param rttNanos 从获取许可到执行完成的纳秒数
+     */
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        windowRttSum.add(rttNanos);
+        windowSamples.increment();
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS && updating.compareAndSet(false, true)) {
+            try {
+                update(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * 释放执行许可，不记录 RTT。用于请求还没有执行就结束的情况
+     */
+    public void releaseWithoutSample() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void update(long now) {
+        long samples = windowSamples.sum();
+        if (samples < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        long rttSum = windowRttSum.sumThenReset();
+        windowSamples.add(-samples);
+        int maxInFlight = windowMaxInFlight;
+        windowMaxInFlight = 0;
+        windowStart = now;
+
+        double shortRtt = (double) rttSum / samples;
+        if (shortRtt <= 0) {
+            return;
+        }
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt = longRtt * (1 - LONG_RTT_FACTOR) + shortRtt * LONG_RTT_FACTOR;
+            // 负载下降后长期 RTT 会一直偏大，导致限制值涨得太慢，需要快速收敛
+            if (longRtt / shortRtt > 2) {
+                longRtt *= 0.95;
+            }
+        }
+        // 并发数远没到限制值的时候，RTT 不能说明限制值是否合适，不调整
+        if (maxInFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(MIN_LIMIT, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,51 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.RemoteMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 抽象的负载均衡。先去掉正在退避和被摘除的提供者，再交给具体的算法选择。<br>
+ * 选中的提供者正在等待探测的时候要占用探测名额，被别的调用抢先了就去掉它重新选
+ *
+ * @see ProviderBackoff
+ * @see OutlierDetector
+ */
+public abstract class AbstractLoadBalance implements LoadBalance {
+
+    @Override
+    public URL select(List<URL> candidates, RemoteMethod method) {
+        if (candidates == null || candidates.isEmpty()) {
+            throw new RpcException("No provider available. method=" + method);
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        List<URL> available = OutlierDetector.filter(ProviderBackoff.filter(candidates));
+        URL selected = doSelect(available, method);
+        // 只剩一个的时候不再换，可用的太少的时候 filter 返回的原列表里面本来就有被摘除的提供者
+        while (!OutlierDetector.tryAcquire(selected) && available.size() > 1) {
+            List<URL> others = new ArrayList<>(available.size() - 1);
+            for (URL url : available) {
+                if (url != selected) {
+                    others.add(url);
+                }
+            }
+            available = others;
+            selected = doSelect(available, method);
+        }
+        return selected;
+    }
+
+    /**
+     * 选择提供者
+     *
+     * @param candidates 所有提供者，至少有一个
+     * @param method     要调用的方法
+     * @return 选中的提供者
+     */
+    protected abstract URL doSelect(List<URL> candidates, RemoteMethod method);
+}
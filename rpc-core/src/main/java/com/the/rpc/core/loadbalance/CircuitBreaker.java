@@ -0,0 +1,192 @@
+package com.the.rpc.core.loadbalance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个提供者地址的熔断器。<br>
+ * <pre>
+ *     CLOSED --连续失败或者错误率过高--> OPEN --摘除时间到--> HALF_OPEN --探测成功--> CLOSED
+ *                                         ^                          |
+ *                                         +--------探测失败----------+
+ * </pre>
+ * 摘除时间随摘除次数线性增长，探测成功之后清零
+ *
+ */
+public class CircuitBreaker {
+
+    static final int CLOSED = 0;
+
+    static final int OPEN = 1;
+
+    static final int HALF_OPEN = 2;
+
+    /**
+     * 连续失败多少次摘除
+     */
+    private static final int CONSECUTIVE_FAILURES = 5;
+
+    /**
+     * 窗口内至少多少个请求才按错误率判断
+     */
+    private static final int MIN_REQUESTS = 20;
+
+    /**
+     * 错误率达到多少摘除
+     */
+    private static final double FAILURE_RATE = 0.5;
+
+    /**
+     * 基础摘除时间
+     */
+    private static final long BASE_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * 最长摘除时间
+     */
+    private static final long MAX_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * 半开状态下一次探测最多等待的时间，超过了允许再发一次探测
+     */
+    private static final long PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    private final String address;
+
+    private final SlidingWindow window = new SlidingWindow();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+    /**
+     * 摘除结束的时间
+     */
+    private volatile long openUntil;
+
+    /**
+     * 连续摘除的次数
+     */
+    private volatile int ejections;
+
+    /**
+     * 最近一次放出探测请求的时间，0 表示没有
+     */
+    private final AtomicLong probeAt = new AtomicLong();
+
+    CircuitBreaker(String address) {
+        this.address = address;
+    }
+
+    /**
+     * 调用成功
+     *
+     * @param latencyNanos 耗时纳秒数
+     */
+    void onSuccess(long latencyNanos) {
+        window.record(true, latencyNanos);
+        consecutiveFailures.set(0);
+        if (state.get() == HALF_OPEN && state.compareAndSet(HALF_OPEN, CLOSED)) {
+            ejections = 0;
+            probeAt.set(0);
+            window.reset();
+            OutlierDetector.onRecovered(address);
+        }
+    }
+
+    /**
+     * 调用失败
+     *
+     * @param latencyNanos 耗时纳秒数
+     */
+    void onFailure(long latencyNanos) {
+        window.record(false, latencyNanos);
+        int failures = consecutiveFailures.incrementAndGet();
+        int current = state.get();
+        if (current == HALF_OPEN) {
+            trip(HALF_OPEN);
+        } else if (current == CLOSED && (failures >= CONSECUTIVE_FAILURES || isFailureRateTooHigh())) {
+            trip(CLOSED);
+        }
+    }
+
+    /**
+     * 摘除
+     *
+     * @param expect 摘除前的状态
+     * @return 是否由当前线程摘除
+     */
+    boolean trip(int expect) {
+        if (!state.compareAndSet(expect, OPEN)) {
+            return false;
+        }
+        int times = ++ejections;
+        openUntil = System.nanoTime() + Math.min(MAX_EJECTION_NANOS, BASE_EJECTION_NANOS * times);
+        probeAt.set(0);
+        if (expect == CLOSED) {
+            OutlierDetector.onEjected(address);
+        }
+        return true;
+    }
+
+    /**
+     * 负载均衡能不能选这个提供者，只判断不修改状态，过滤候选列表的时候每个提供者都会检查一次
+     *
+     * @return true 表示关闭状态，或者可以放出探测请求
+     */
+    boolean isAvailable() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (current == OPEN) {
+            return now - openUntil >= 0;
+        }
+        long last = probeAt.get();
+        return last == 0 || now - last >= PROBE_TIMEOUT_NANOS;
+    }
+
+    /**
+     * 负载均衡选中了这个提供者，需要探测的时候占用探测名额。摘除时间到了之后转为半开，每次只放出一个探测请求
+     *
+     * @return true 表示关闭状态，或者抢到了探测名额；false 表示不能发送，应该换一个提供者
+     */
+    boolean tryAcquire() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (current == OPEN) {
+            if (now - openUntil < 0) {
+                return false;
+            }
+            // 失败说明别的线程已经转为半开，接着抢探测名额
+            state.compareAndSet(OPEN, HALF_OPEN);
+        }
+        long last = probeAt.get();
+        return (last == 0 || now - last >= PROBE_TIMEOUT_NANOS) && probeAt.compareAndSet(last, now);
+    }
+
+    boolean isClosed() {
+        return state.get() == CLOSED;
+    }
+
+    /**
+     * 窗口内的平均耗时
+     *
+     * @param minRequests 最少请求数
+     * @return 平均耗时纳秒数，请求数不够返回 -1
+     */
+    long getMeanLatency(int minRequests) {
+        long[] sum = window.sum();
+        return sum[0] < minRequests ? -1 : sum[2] / sum[0];
+    }
+
+    private boolean isFailureRateTooHigh() {
+        long[] sum = window.sum();
+        return sum[0] >= MIN_REQUESTS && sum[1] >= sum[0] * FAILURE_RATE;
+    }
+}
@@ -0,0 +1,24 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.extension.SPI;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.RemoteMethod;
+
+import java.util.List;
+
+/**
+ * 负载均衡，从多个提供者中选择一个
+ *
+ */
+@SPI("random")
+public interface LoadBalance {
+
+    /**
+     * 选择提供者
+     *
+     * @param candidates 所有提供者
+     * @param method     要调用的方法
+     * @return 选中的提供者
+     */
+    URL select(List<URL> candidates, RemoteMethod method);
+}
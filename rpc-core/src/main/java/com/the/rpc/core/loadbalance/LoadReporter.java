@@ -0,0 +1,149 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.protocol.Attachments;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提供者负载上报。<br>
+ * 每秒采样一次 CPU 使用率、业务线程池里面正在执行和排队的请求数，以及启动了多久，编码成 {@link Attachments#LOAD} 附件。
+ * 采样结果变了就换一个版本号，每个连接上版本号变了之后的第一个响应带上附件，一个连接每秒最多多十几个字节。
+ * 消费者用它调整负载均衡的权重，见 {@link ProviderLoad}。<br>
+ * 任意一个提供者配置了 loadReport=true 就对整个 JVM 开启，一个 JVM 里面的多个提供者上报同一份负载
+ *
+ */
+@Slf4j
+public class LoadReporter {
+
+    /**
+     * 采样间隔
+     */
+    private static final long INTERVAL_MS = 1000;
+
+    /**
+     * 默认预热毫秒数
+     */
+    static final int DEFAULT_WARMUP = 60_000;
+
+    /**
+     * 所有提供者的业务线程池
+     */
+    private static final List<ThreadPoolExecutor> executors = new CopyOnWriteArrayList<>();
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * 开始上报的时间戳毫秒数
+     */
+    private static long startTime;
+
+    /**
+     * 预热秒数
+     */
+    private static int warmupSeconds;
+
+    /**
+     * 当前的负载附件，只读，采样的时候整体替换
+     */
+    private static volatile Attachments attachments;
+
+    /**
+     * 当前附件的版本号，0 表示没有开启
+     */
+    private static volatile int version;
+
+    private LoadReporter() {
+    }
+
+    /**
+     * URL 配置了 loadReport=true 的时候开始上报，已经开始的时候只登记线程池
+     *
+     * @param url      提供者的 URL
+     * @param executor 提供者的业务线程池
+     */
+    public static synchronized void start(URL url, ThreadPoolExecutor executor) {
+        if (!url.getBooleanParam(URLKeyConst.LOAD_REPORT, false)) {
+            return;
+        }
+        executors.add(executor);
+        if (scheduler != null) {
+            return;
+        }
+        startTime = System.currentTimeMillis();
+        warmupSeconds = url.getIntParam(URLKeyConst.WARMUP, DEFAULT_WARMUP) / 1000;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("the-rpc-load-reporter", true));
+        sample();
+        scheduler.scheduleWithFixedDelay(LoadReporter::sample, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log.info("load reporter started. warmupSeconds={}", warmupSeconds);
+    }
+
+    /**
+     * 提供者关闭，不再统计它的线程池
+     */
+    public static void remove(ThreadPoolExecutor executor) {
+        executors.remove(executor);
+    }
+
+    /**
+     * 当前附件的版本号
+     *
+     * @return 0 表示没有开启
+     */
+    public static int getVersion() {
+        return version;
+    }
+
+    /**
+     * 当前的负载附件，所有响应共用，调用方不能修改
+     */
+    public static Attachments getAttachments() {
+        return attachments;
+    }
+
+    private static void sample() {
+        int inFlight = 0;
+        int queued = 0;
+        int threads = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            inFlight += executor.getActiveCount();
+            queued += executor.getQueue().size();
+            threads += executor.getMaximumPoolSize();
+        }
+        int uptime = (int) Math.min(Integer.MAX_VALUE, (System.currentTimeMillis() - startTime) / 1000);
+        byte[] value = ProviderLoad.encode(cpuPercent(), inFlight, queued, threads, uptime, warmupSeconds);
+        Attachments current = attachments;
+        if (current == null || !Arrays.equals(current.get(Attachments.LOAD), value)) {
+            attachments = new Attachments().put(Attachments.LOAD, value);
+            version++;
+        }
+    }
+
+    /**
+     * 整机 CPU 使用率
+     *
+     * @return 0 到 100，取不到返回 0
+     */
+    @SuppressWarnings("deprecation")
+    private static int cpuPercent() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+            if (load >= 0) {
+                return (int) Math.round(load * 100);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,179 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.url.URL;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 提供者异常检测。每个提供者地址一个 {@link CircuitBreaker}，连续失败、错误率过高或者耗时明显高于其他提供者的，
+ * 在一段时间内从负载均衡看到的列表里面摘除，到期后放出单个探测请求，成功才恢复。
+ * 过滤列表只判断能不能选，负载均衡真正选中之后才通过 {@link #tryAcquire(URL)} 占用探测名额，没有选中的提供者不会白白用掉探测机会。<br>
+ * 不用等注册中心的会话超时，提供者出问题几秒内就不再分到流量。<br>
+ * 只统计通信异常，服务实现抛出的业务异常和过载响应不算提供者的问题
+ *
+ * @see ProviderBackoff
+ */
+@Slf4j
+public class OutlierDetector {
+
+    /**
+     * 可用的提供者少于这个比例的时候不再摘除，避免所有流量压到剩下的几个提供者上
+     */
+    private static final double PANIC_THRESHOLD = 0.5;
+
+    /**
+     * 平均耗时超过所有提供者中位数的多少倍算异常
+     */
+    private static final int LATENCY_FACTOR = 3;
+
+    /**
+     * 平均耗时低于这个值的不按耗时摘除，避免微秒级别的抖动
+     */
+    private static final long MIN_OUTLIER_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 按耗时判断的时候，窗口内至少多少个请求
+     */
+    private static final int MIN_LATENCY_REQUESTS = 20;
+
+    /**
+     * 按耗时检查的间隔
+     */
+    private static final long LATENCY_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 熔断器 {address: 熔断器}
+     */
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * 不是关闭状态的熔断器数量，为 0 的时候过滤直接返回原列表
+     */
+    private static final AtomicInteger ejected = new AtomicInteger();
+
+    private static final AtomicBoolean checking = new AtomicBoolean();
+
+    private static volatile long lastLatencyCheck = System.nanoTime();
+
+    private OutlierDetector() {
+    }
+
+    /**
+     * 调用成功
+     *
+     * @param address      提供者地址
+     * @param latencyNanos 耗时纳秒数
+     */
+    public static void onSuccess(String address, long latencyNanos) {
+        getBreaker(address).onSuccess(latencyNanos);
+    }
+
+    /**
+     * 调用出现通信异常
+     *
+     * @param address      提供者地址
+     * @param latencyNanos 耗时纳秒数
+     */
+    public static void onFailure(String address, long latencyNanos) {
+        getBreaker(address).onFailure(latencyNanos);
+    }
+
+    /**
+     * 去掉被摘除的提供者
+     *
+     * @param urls 所有提供者
+     * @return 可用的提供者。可用的太少的时候返回原列表
+     */
+    public static List<URL> filter(List<URL> urls) {
+        checkLatency(urls);
+        if (ejected.get() == 0) {
+            return urls;
+        }
+        List<URL> available = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            CircuitBreaker breaker = breakers.get(url.getAddress());
+            if (breaker == null || breaker.isAvailable()) {
+                available.add(url);
+            }
+        }
+        return available.size() < urls.size() * PANIC_THRESHOLD ? urls : available;
+    }
+
+    /**
+     * 负载均衡选中了提供者，需要探测的时候占用探测名额
+     *
+     * @param url 选中的提供者
+     * @return true 表示可以发送；false 表示探测名额已经被别的调用占用，或者还在摘除时间内，应该换一个提供者
+     */
+    public static boolean tryAcquire(URL url) {
+        if (ejected.get() == 0) {
+            return true;
+        }
+        CircuitBreaker breaker = breakers.get(url.getAddress());
+        return breaker == null || breaker.tryAcquire();
+    }
+
+    static void onEjected(String address) {
+        ejected.incrementAndGet();
+        log.warn("Provider ejected. address={}", address);
+    }
+
+    static void onRecovered(String address) {
+        ejected.decrementAndGet();
+        log.info("Provider recovered. address={}", address);
+    }
+
+    private static CircuitBreaker getBreaker(String address) {
+        CircuitBreaker breaker = breakers.get(address);
+        return breaker != null ? breaker : breakers.computeIfAbsent(address, CircuitBreaker::new);
+    }
+
+    /**
+     * 按耗时摘除异常的提供者。至少 3 个提供者才有可比性，每秒最多检查一次
+     */
+    private static void checkLatency(List<URL> urls) {
+        long now = System.nanoTime();
+        if (urls.size() < 3 || now - lastLatencyCheck < LATENCY_CHECK_INTERVAL_NANOS
+                || !checking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastLatencyCheck = now;
+            CircuitBreaker[] candidates = new CircuitBreaker[urls.size()];
+            long[] latencies = new long[urls.size()];
+            int count = 0;
+            for (URL url : urls) {
+                CircuitBreaker breaker = breakers.get(url.getAddress());
+                if (breaker == null || !breaker.isClosed()) {
+                    continue;
+                }
+                long latency = breaker.getMeanLatency(MIN_LATENCY_REQUESTS);
+                if (latency >= 0) {
+                    candidates[count] = breaker;
+                    latencies[count++] = latency;
+                }
+            }
+            if (count < 3) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long threshold = Math.max(MIN_OUTLIER_LATENCY_NANOS, sorted[count / 2] * LATENCY_FACTOR);
+            for (int i = 0; i < count; i++) {
+                if (latencies[i] > threshold) {
+                    candidates[i].trip(CircuitBreaker.CLOSED);
+                }
+            }
+        } finally {
+            checking.set(false);
+        }
+    }
+}
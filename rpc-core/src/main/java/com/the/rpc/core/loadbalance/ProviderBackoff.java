@@ -0,0 +1,109 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.url.URL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提供者退避。提供者返回过载响应之后，在一段时间内负载均衡不再选它，连续过载则退避时间翻倍。<br>
+ * 没有提供者在退避的时候，选择提供者只多一次 isEmpty 判断
+ *
+ */
+public class ProviderBackoff {
+
+    /**
+     * 初始退避毫秒数
+     */
+    private static final long INITIAL_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * 最大退避毫秒数
+     */
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * 退避状态 {address: 状态}
+     */
+    private static final Map<String, State> states = new ConcurrentHashMap<>();
+
+    private ProviderBackoff() {
+    }
+
+    /**
+     * 提供者过载，开始退避或者延长退避
+     *
+     * @param address 提供者地址
+     */
+    public static void onOverloaded(String address) {
+        states.compute(address, (k, state) -> {
+            long backoff = state == null ? INITIAL_BACKOFF_NANOS : Math.min(MAX_BACKOFF_NANOS, state.backoff * 2);
+            // 加上随机抖动，避免所有消费者同时回来
+            long jitter = ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            return new State(backoff, System.nanoTime() + backoff / 2 + jitter);
+        });
+    }
+
+    /**
+     * 提供者调用成功，结束退避
+     *
+     * @param address 提供者地址
+     */
+    public static void onSuccess(String address) {
+        if (!states.isEmpty()) {
+            states.remove(address);
+        }
+    }
+
+    /**
+     * 提供者是否在退避中
+     *
+     * @param address 提供者地址
+     * @return true 表示在退避中
+     */
+    public static boolean isBackingOff(String address) {
+        State state = states.get(address);
+        return state != null && System.nanoTime() - state.until < 0;
+    }
+
+    /**
+     * 去掉正在退避的提供者
+     *
+     * @param urls 所有提供者
+     * @return 没有在退避的提供者。如果全部都在退避，返回原列表，总要选一个
+     */
+    public static List<URL> filter(List<URL> urls) {
+        if (states.isEmpty()) {
+            return urls;
+        }
+        List<URL> available = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            if (!isBackingOff(url.getAddress())) {
+                available.add(url);
+            }
+        }
+        return available.isEmpty() ? urls : available;
+    }
+
+    private static class State {
+
+        /**
+         * 本次退避时长
+         */
+        private final long backoff;
+
+        /**
+         * 退避结束的时间
+         */
+        private final long until;
+
+        State(long backoff, long until) {
+            this.backoff = backoff;
+            this.until = until;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.the.rpc.core.loadbalance;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.Diagnostics;
+import com.the.rpc.core.protocol.Attachments;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消费者看到的提供者负载。<br>
+ * 提供者通过响应附件上报负载（见 {@link LoadReporter}），这里按负载算出提供者的动态权重：
+ * <ul>
+ *     <li>CPU 超过 50% 之后线性降低，100% 的时候剩 10%</li>
+ *     <li>线程池越忙越低，全忙的时候剩一半；有请求在排队再按排队的比例降低</li>
+ *     <li>预热期间按启动时长线性增长，刚启动的时候只有 1%。启动时长在两次上报之间按本地时间往前推，没有流量的时候也会慢慢恢复</li>
+ * </ul>
+ * 超过 {@link #STALE_MS} 没有更新的负载不再使用，只保留预热。
+ * 连接断开和注册信息变化的时候丢掉这个地址的负载（见 {@link #reset(String)}），重启之后的提供者重新试探、重新预热。
+ * 有提供者上报负载之后，还没有响应过的提供者先按 {@link #PROBE_FACTOR} 的权重试探，避免新加入的提供者在第一个响应回来之前承受全部流量；
+ * 响应里面没有负载附件的提供者认为不支持上报，按静态权重。<br>
+ * 从来没有收到过上报的时候 {@link #isActive()} 为 false，负载均衡不需要计算权重
+ *
+ */
+public class ProviderLoad {
+
+    /**
+     * 默认静态权重
+     */
+    private static final int DEFAULT_WEIGHT = 100;
+
+    /**
+     * 静态权重的上限，所有提供者的权重加起来不会溢出
+     */
+    static final int MAX_WEIGHT = 1_000_000;
+
+    /**
+     * 负载过期毫秒数
+     */
+    private static final long STALE_MS = 5000;
+
+    /**
+     * 还没有响应过的提供者的权重比例
+     */
+    private static final double PROBE_FACTOR = 0.1;
+
+    /**
+     * 负载附件的字节数：CPU 1、执行中 2、排队 2、线程数 2、启动秒数 2、预热秒数 2
+     */
+    private static final int LENGTH = 11;
+
+    private static final int MAX_U16 = 0xFFFF;
+
+    /**
+     * 负载 {address: 负载}
+     */
+    private static final Map<String, State> states = new ConcurrentHashMap<>();
+
+    private static volatile boolean active;
+
+    static {
+        Diagnostics.registerCommand("load", ProviderLoad::dump);
+    }
+
+    private ProviderLoad() {
+    }
+
+    /**
+     * 是否收到过负载上报
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 收到提供者的响应
+     *
+     * @param address     提供者地址
+     * @param attachments 响应的附件，可以为 null
+     */
+    public static void onResponse(String address, Attachments attachments) {
+        byte[] value = attachments == null ? null : attachments.get(Attachments.LOAD);
+        if (value == null) {
+            if (active) {
+                State state = states.get(address);
+                if (state != null && !state.responded) {
+                    state.responded = true;
+                }
+            }
+            return;
+        }
+        if (value.length != LENGTH) {
+            return;
+        }
+        State state = states.get(address);
+        if (state == null) {
+            state = states.computeIfAbsent(address, k -> new State());
+        }
+        state.update(ByteBuffer.wrap(value), System.currentTimeMillis());
+        if (!active) {
+            active = true;
+        }
+    }
+
+    /**
+     * 丢掉提供者的负载，连接断开、注册信息变化或者提供者下线的时候调用
+     *
+     * @param address 提供者地址
+     */
+    public static void reset(String address) {
+        states.remove(address);
+    }
+
+    /**
+     * 提供者当前的权重
+     *
+     * @param url 提供者的 URL，weight 参数是静态权重，限制在 1 到 {@link #MAX_WEIGHT} 之间
+     * @param now 当前时间戳毫秒数
+     * @return 权重，1 到 {@link #MAX_WEIGHT}
+     */
+    public static int getWeight(URL url, long now) {
+        State state = states.get(url.getAddress());
+        if (state == null) {
+            state = states.computeIfAbsent(url.getAddress(), k -> new State());
+        }
+        // 注册信息更新之后是新的 URL 对象，重新读取静态权重
+        if (state.url != url) {
+            state.weight = Math.min(MAX_WEIGHT, Math.max(1, url.getIntParam(URLKeyConst.WEIGHT, DEFAULT_WEIGHT)));
+            state.url = url;
+        }
+        return Math.max(1, (int) Math.round(state.weight * state.factor(now)));
+    }
+
+    /**
+     * 编码负载附件，超过两个字节的值按最大值编码
+     */
+    static byte[] encode(int cpu, int inFlight, int queued, int threads, int uptime, int warmup) {
+        return ByteBuffer.allocate(LENGTH)
+                .put((byte) Math.min(100, Math.max(0, cpu)))
+                .putShort((short) Math.min(MAX_U16, inFlight))
+                .putShort((short) Math.min(MAX_U16, queued))
+                .putShort((short) Math.min(MAX_U16, threads))
+                .putShort((short) Math.min(MAX_U16, uptime))
+                .putShort((short) Math.min(MAX_U16, warmup))
+                .array();
+    }
+
+    private static String dump() {
+        long now = System.currentTimeMillis();
+        StringBuilder buf = new StringBuilder();
+        buf.append("active=").append(active).append('\n');
+        for (Map.Entry<String, State> entry : new TreeMap<>(states).entrySet()) {
+            State state = entry.getValue();
+            buf.append(entry.getKey()).append(' ').append(state)
+                    .append(" factor=").append(String.format("%.3f", state.factor(now))).append('\n');
+        }
+        return buf.toString();
+    }
+
+    private static class State {
+
+        /**
+         * 静态权重
+         */
+        private volatile int weight;
+
+        /**
+         * 读取静态权重的 URL
+         */
+        private volatile URL url;
+
+        /**
+         * 是否收到过响应
+         */
+        private volatile boolean responded;
+
+        /**
+         * 按负载算出来的比例，不包括预热
+         */
+        private volatile double loadFactor = 1;
+
+        /**
+         * 收到上报的时间戳毫秒数，0 表示没有收到过
+         */
+        private volatile long reportTime;
+
+        /**
+         * 上报时提供者启动的秒数
+         */
+        private volatile int uptime;
+
+        private volatile int warmup;
+
+        private volatile String report = "";
+
+        void update(ByteBuffer buf, long now) {
+            int cpu = buf.get() & 0xFF;
+            int inFlight = buf.getShort() & MAX_U16;
+            int queued = buf.getShort() & MAX_U16;
+            int threads = Math.max(1, buf.getShort() & MAX_U16);
+            double cpuFactor = cpu <= 50 ? 1 : Math.max(0.1, (100 - cpu) / 50.0);
+            double busyFactor = 1 - 0.5 * Math.min(1, (double) inFlight / threads);
+            double queueFactor = (double) threads / (threads + queued);
+            loadFactor = cpuFactor * busyFactor * queueFactor;
+            uptime = buf.getShort() & MAX_U16;
+            warmup = buf.getShort() & MAX_U16;
+            report = "cpu=" + cpu + " inFlight=" + inFlight + " queued=" + queued + " threads=" + threads
+                    + " uptime=" + uptime + " warmup=" + warmup;
+            reportTime = now;
+            responded = true;
+        }
+
+        double factor(long now) {
+            long time = reportTime;
+            if (time == 0) {
+                return responded || !active ? 1 : PROBE_FACTOR;
+            }
+            double factor = now - time > STALE_MS ? 1 : loadFactor;
+            if (warmup > 0) {
+                double elapsed = uptime + (now - time) / 1000.0;
+                if (elapsed < warmup) {
+                    factor *= Math.max(0.01, elapsed / warmup);
+                }
+            }
+            return factor;
+        }
+
+        @Override
+        public String toString() {
+            return reportTime == 0 ? "responded=" + responded : report + " age=" + (System.currentTimeMillis() - reportTime) + "ms";
+        }
+    }
+}
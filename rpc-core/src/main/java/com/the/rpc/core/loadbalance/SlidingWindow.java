@@ -0,0 +1,83 @@
+package com.the.rpc.core.loadbalance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的滑动窗口，按秒分桶统计请求数、失败数和总耗时。<br>
+ * 每个桶占数组里面连续的 4 个位置：{所属的秒, 请求数, 失败数, 总耗时纳秒}，桶过期了由第一个写入的线程 CAS 重置。<br>
+ * 重置和写入之间有很小的竞争，可能丢掉几个样本，对健康判断没有影响
+ *
+ */
+public class SlidingWindow {
+
+    /**
+     * 桶数量，也就是窗口的秒数
+     */
+    private static final int BUCKETS = 10;
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int EPOCH = 0;
+
+    private static final int TOTAL = 1;
+
+    private static final int FAILURES = 2;
+
+    private static final int LATENCY = 3;
+
+    private static final int FIELDS = 4;
+
+    private final AtomicLongArray data = new AtomicLongArray(BUCKETS * FIELDS);
+
+    /**
+     * 记录一次请求
+     *
+     * @param success      是否成功
+     * @param latencyNanos 耗时纳秒数
+     */
+    public void record(boolean success, long latencyNanos) {
+        long epoch = System.nanoTime() / BUCKET_NANOS;
+        int base = (int) Math.floorMod(epoch, (long) BUCKETS) * FIELDS;
+        long old = data.get(base + EPOCH);
+        if (old != epoch && data.compareAndSet(base + EPOCH, old, epoch)) {
+            data.set(base + TOTAL, 0);
+            data.set(base + FAILURES, 0);
+            data.set(base + LATENCY, 0);
+        }
+        data.incrementAndGet(base + TOTAL);
+        if (!success) {
+            data.incrementAndGet(base + FAILURES);
+        }
+        data.addAndGet(base + LATENCY, latencyNanos);
+    }
+
+    /**
+     * 清空窗口
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            data.set(i * FIELDS + EPOCH, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * 统计窗口内的数据
+     *
+     * @return {请求数, 失败数, 总耗时纳秒}
+     */
+    public long[] sum() {
+        long epoch = System.nanoTime() / BUCKET_NANOS;
+        long[] result = new long[3];
+        for (int i = 0; i < BUCKETS; i++) {
+            int base = i * FIELDS;
+            long bucketEpoch = data.get(base + EPOCH);
+            if (bucketEpoch > epoch - BUCKETS && bucketEpoch <= epoch) {
+                result[0] += data.get(base + TOTAL);
+                result[1] += data.get(base + FAILURES);
+                result[2] += data.get(base + LATENCY);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package com.the.rpc.core.loadbalance.random;
+
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.loadbalance.AbstractLoadBalance;
+import com.the.rpc.core.loadbalance.ProviderLoad;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 加权随机负载均衡。<br>
+ * 权重是静态权重按提供者上报的负载和预热进度调整之后的动态权重，见 {@link ProviderLoad}。
+ * 没有收到过负载上报或者权重都一样的时候等概率随机
+ *
+ */
+public class RandomLoadBalance extends AbstractLoadBalance {
+
+    @Override
+    protected URL doSelect(List<URL> candidates, RemoteMethod method) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = candidates.size();
+        if (!ProviderLoad.isActive() || size == 1) {
+            return candidates.get(random.nextInt(size));
+        }
+        long now = System.currentTimeMillis();
+        int[] weights = new int[size];
+        long total = 0;
+        boolean same = true;
+        for (int i = 0; i < size; i++) {
+            weights[i] = ProviderLoad.getWeight(candidates.get(i), now);
+            total += weights[i];
+            same = same && weights[i] == weights[0];
+        }
+        if (same) {
+            return candidates.get(random.nextInt(size));
+        }
+        long offset = random.nextLong(total);
+        for (int i = 0; i < size; i++) {
+            offset -= weights[i];
+            if (offset < 0) {
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(size - 1);
+    }
+}
@@ -0,0 +1,39 @@
+package com.the.rpc.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只增不减的计数器。<br>
+ * 使用 {@link LongAdder}，竞争的时候按线程分散到不同的槽上累加，记录没有锁也没有 CAS 重试，读取的时候再求和
+ *
+ */
+public class Counter extends Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String labels) {
+        super(name, labels);
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void write(StringBuilder buf) {
+        buf.append(getName()).append(getLabels()).append(' ').append(value.sum()).append('\n');
+    }
+}
@@ -0,0 +1,46 @@
+package com.the.rpc.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 可增可减的当前值，例如正在执行的请求数。<br>
+ * 自己计数的时候和 {@link Counter} 一样使用 {@link LongAdder}；也可以在导出的时候从别的地方读取
+ *
+ */
+public class Gauge extends Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * 导出的时候读取当前值，为 null 表示使用自己的计数
+     */
+    private final LongSupplier supplier;
+
+    Gauge(String name, String labels, LongSupplier supplier) {
+        super(name, labels);
+        this.supplier = supplier;
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void dec() {
+        value.decrement();
+    }
+
+    public long get() {
+        return supplier != null ? supplier.getAsLong() : value.sum();
+    }
+
+    @Override
+    String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void write(StringBuilder buf) {
+        buf.append(getName()).append(getLabels()).append(' ').append(get()).append('\n');
+    }
+}
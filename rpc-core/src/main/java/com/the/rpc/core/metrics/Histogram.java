@@ -0,0 +1,185 @@
+package com.the.rpc.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数线性分桶的直方图，和 HdrHistogram 的思路一样。<br>
+ * 每个 2 的幂区间再等分成 {@link #SUB_COUNT} 个桶，相对误差不超过 1/{@link #SUB_COUNT}。
+ * 桶的位置用最高位的位置和下面几位直接算出来，记录只有一次原子加和一次 {@link LongAdder} 累加，不查找也不加锁。<br>
+ * 计数按线程分成 {@link #STRIPES} 份，多个线程同时记录同一个桶的时候不争用同一个缓存行，读取的时候再加起来。<br>
+ * 导出成 Prometheus 的 histogram 的时候按 2 的幂合并桶，只导出构造时指定的范围，进程内用 {@link #quantile(double)} 可以拿到更精确的分位数
+ *
+ */
+public class Histogram extends Metric {
+
+    /**
+     * 每个 2 的幂区间细分的位数
+     */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * 最大记录到 2 的多少次幂，再大的都算进最后一个桶。纳秒大约是 18 分钟
+     */
+    private static final int MAX_EXP = 40;
+
+    static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) << SUB_BITS;
+
+    /**
+     * 最多分成几份，每份 {@link #BUCKETS} 个 long，份数太多占内存
+     */
+    private static final int MAX_STRIPES = 4;
+
+    /**
+     * 计数分成几份，不少于 CPU 数的 2 的幂，不超过 {@link #MAX_STRIPES}
+     */
+    static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 按份连续存放 [份][桶]
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 导出的时候除以这个数，例如纳秒导出成秒
+     */
+    private final double scale;
+
+    /**
+     * 导出的第一个桶的上限是 2 的多少次幂
+     */
+    private final int minExportExp;
+
+    /**
+     * 导出的最后一个桶的上限是 2 的多少次幂，再往后只有 +Inf
+     */
+    private final int maxExportExp;
+
+    Histogram(String name, String labels, double scale, int minExportExp, int maxExportExp) {
+        super(name, labels);
+        this.scale = scale;
+        this.minExportExp = minExportExp;
+        this.maxExportExp = Math.min(maxExportExp, MAX_EXP + 1);
+    }
+
+    /**
+     * 记录一个值，负数按 0 记录
+     */
+    public void record(long value) {
+        int stripe = STRIPES == 1 ? 0 : (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + index(value));
+        sum.add(Math.max(0, value));
+    }
+
+    /**
+     * 已经记录的总数
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 一个桶所有份加起来的计数
+     */
+    private long count(int index) {
+        long count = 0;
+        for (int i = index; i < counts.length(); i += BUCKETS) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 估算分位数
+     *
+     * @param q 0 到 1 之间，例如 0.999
+     * @return 分位数所在桶的上限，没有记录返回 0
+     */
+    public long quantile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = count(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = Math.max(1, (long) Math.ceil(count * q));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int stripes(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        if (exp > MAX_EXP) {
+            return BUCKETS - 1;
+        }
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * 桶里面最大的值
+     */
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exp = (index >> SUB_BITS) + SUB_BITS - 1;
+        long sub = index & (SUB_COUNT - 1);
+        return ((SUB_COUNT + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void write(StringBuilder buf) {
+        String labels = getLabels();
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long cumulative = 0;
+        int i = 0;
+        // 值小于 2^exp 的桶都算进 le=2^exp
+        for (int exp = minExportExp; exp <= maxExportExp; exp++) {
+            long bound = 1L << exp;
+            while (i < BUCKETS && upperBound(i) < bound) {
+                cumulative += count(i++);
+            }
+            buf.append(getName()).append("_bucket").append(prefix).append("le=\"").append(bound / scale).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        while (i < BUCKETS) {
+            cumulative += count(i++);
+        }
+        buf.append(getName()).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        buf.append(getName()).append("_sum").append(labels).append(' ').append(sum.sum() / scale).append('\n');
+        buf.append(getName()).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,92 @@
+package com.the.rpc.core.metrics;
+
+import com.the.rpc.core.invoke.MethodDescriptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个方法在消费者或者提供者一侧的指标：耗时、失败数、正在执行的请求数、请求和响应的字节数。<br>
+ * 每个方法每一侧只创建一个，引用或者导出服务的时候拿到之后保存下来，调用的时候直接记录。<br>
+ * 为了让每次调用的开销尽量小，完成的调用数直接用耗时直方图的 _count（QPS 用它的 rate），
+ * 正在执行的请求数用开始的调用数减去完成的调用数，导出的时候再算
+ *
+ */
+public class MethodMetrics {
+
+    /**
+     * {side:serviceKey#方法名: 指标}，重载的方法共用一份
+     */
+    private static final Map<String, MethodMetrics> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 开始的调用数
+     */
+    private final LongAdder started = new LongAdder();
+
+    private final Counter errors;
+
+    private final Histogram latency;
+
+    private final Histogram requestBytes;
+
+    private final Histogram responseBytes;
+
+    private MethodMetrics(String side, MethodDescriptor method) {
+        String[] labels = {"side", side, "service", method.getService().getServiceKey(), "method", method.getMethod().getName()};
+        this.errors = Metrics.counter("rpc_errors_total", "Failed calls.", labels);
+        this.latency = Metrics.latency("rpc_latency_seconds", "Call latency, _count is the number of completed calls.", labels);
+        Metrics.gauge("rpc_inflight_requests", "Calls in progress.", () -> started.sum() - latency.getCount(), labels);
+        this.requestBytes = Metrics.size("rpc_request_bytes", "Serialized request body size.", labels);
+        this.responseBytes = Metrics.size("rpc_response_bytes", "Serialized response body size.", labels);
+    }
+
+    /**
+     * 获取方法的指标
+     *
+     * @param side   {@link com.the.rpc.common.consts.URLKeyConst#CONSUMER} 或者 {@link com.the.rpc.common.consts.URLKeyConst#PROVIDER}
+     * @param method 方法
+     * @return 指标，同一侧的同一个方法返回同一个
+     */
+    public static MethodMetrics of(String side, MethodDescriptor method) {
+        String key = side + ":" + method.getService().getServiceKey() + "#" + method.getMethod().getName();
+        MethodMetrics metrics = cache.get(key);
+        return metrics != null ? metrics : cache.computeIfAbsent(key, k -> new MethodMetrics(side, method));
+    }
+
+    /**
+     * 调用开始
+     *
+     * @return 开始的时间，传给 {@link #end(long, boolean)}
+     */
+    public long start() {
+        started.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * 调用结束
+     *
+     * @param start   {@link #start()} 返回的时间
+     * @param success 是否成功
+     */
+    public void end(long start, boolean success) {
+        latency.record(System.nanoTime() - start);
+        if (!success) {
+            errors.inc();
+        }
+    }
+
+    public void recordRequestSize(int bytes) {
+        requestBytes.record(bytes);
+    }
+
+    public void recordResponseSize(int bytes) {
+        responseBytes.record(bytes);
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,36 @@
+package com.the.rpc.core.metrics;
+
+import lombok.Getter;
+
+/**
+ * 指标。同名的指标是一个指标族，按标签区分，导出的时候同一个族写在一起
+ *
+ */
+@Getter
+public abstract class Metric {
+
+    /**
+     * 指标名，例如 rpc_requests_total
+     */
+    private final String name;
+
+    /**
+     * 拼好的标签，例如 {side="consumer",method="getUser"}，没有标签为空字符串
+     */
+    private final String labels;
+
+    protected Metric(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    /**
+     * Prometheus 的指标类型：counter、gauge、histogram
+     */
+    abstract String getType();
+
+    /**
+     * 按 Prometheus 文本格式写出当前值，不包括 HELP 和 TYPE
+     */
+    abstract void write(StringBuilder buf);
+}
@@ -0,0 +1,178 @@
+package com.the.rpc.core.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 指标仓库。<br>
+ * 同名同标签的指标只创建一个，调用方在初始化的时候拿到指标对象保存下来，记录的时候直接使用，不再查找。<br>
+ * 导出的时候按 Prometheus 文本格式写出所有指标
+ *
+ */
+public class Metrics {
+
+    /**
+     * 纳秒导出成秒
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * 指标族 {指标名: 指标族}
+     */
+    private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * 获取计数器
+     *
+     * @param name   指标名，以 _total 结尾
+     * @param help   说明
+     * @param labels 标签，按 key1, value1, key2, value2 的顺序
+     * @return 计数器，同名同标签返回同一个
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return get(name, help, labels, l -> new Counter(name, l));
+    }
+
+    /**
+     * 获取自己计数的仪表
+     *
+     * @param name   指标名
+     * @param help   说明
+     * @param labels 标签，按 key1, value1, key2, value2 的顺序
+     * @return 仪表，同名同标签返回同一个
+     */
+    public static Gauge gauge(String name, String help, String... labels) {
+        return get(name, help, labels, l -> new Gauge(name, l, null));
+    }
+
+    /**
+     * 获取导出时读取当前值的仪表
+     *
+     * @param name     指标名
+     * @param help     说明
+     * @param supplier 当前值，导出的时候调用，不能阻塞
+     * @param labels   标签，按 key1, value1, key2, value2 的顺序
+     * @return 仪表，同名同标签已经存在的时候返回已有的，新的 supplier 不生效
+     */
+    public static Gauge gauge(String name, String help, LongSupplier supplier, String... labels) {
+        return get(name, help, labels, l -> new Gauge(name, l, supplier));
+    }
+
+    /**
+     * 获取记录纳秒耗时的直方图，导出成秒，桶的范围大约是 1 微秒到 34 秒
+     *
+     * @param name   指标名，以 _seconds 结尾
+     * @param help   说明
+     * @param labels 标签，按 key1, value1, key2, value2 的顺序
+     * @return 直方图，同名同标签返回同一个
+     */
+    public static Histogram latency(String name, String help, String... labels) {
+        return get(name, help, labels, l -> new Histogram(name, l, NANOS_PER_SECOND, 10, 35));
+    }
+
+    /**
+     * 获取记录字节数的直方图，桶的范围是 64 字节到 64M
+     *
+     * @param name   指标名，以 _bytes 结尾
+     * @param help   说明
+     * @param labels 标签，按 key1, value1, key2, value2 的顺序
+     * @return 直方图，同名同标签返回同一个
+     */
+    public static Histogram size(String name, String help, String... labels) {
+        return get(name, help, labels, l -> new Histogram(name, l, 1, 6, 26));
+    }
+
+    /**
+     * 按 Prometheus 文本格式写出所有指标
+     *
+     * @return 文本，版本 0.0.4
+     */
+    public static String scrape() {
+        StringBuilder buf = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            buf.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            buf.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Metric metric : family.metrics.values()) {
+                metric.write(buf);
+            }
+        }
+        return buf.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M extends Metric> M get(String name, String help, String[] labels, Function<String, M> factory) {
+        String labelString = formatLabels(labels);
+        Family family = families.get(name);
+        if (family == null) {
+            M metric = factory.apply(labelString);
+            family = families.computeIfAbsent(name, k -> new Family(name, help, metric.getType()));
+            Metric exists = family.metrics.putIfAbsent(labelString, metric);
+            return checkType(family, exists == null ? metric : (M) exists);
+        }
+        return checkType(family, (M) family.metrics.computeIfAbsent(labelString, factory));
+    }
+
+    private static <M extends Metric> M checkType(Family family, M metric) {
+        if (!family.type.equals(metric.getType())) {
+            throw new IllegalStateException("Metric type mismatch. name=" + family.name + ", type=" + family.type);
+        }
+        return metric;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key value pairs.");
+        }
+        StringBuilder buf = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    buf.append('\\').append(c);
+                } else if (c == '\n') {
+                    buf.append("\\n");
+                } else {
+                    buf.append(c);
+                }
+            }
+            buf.append('"');
+        }
+        return buf.append('}').toString();
+    }
+
+    /**
+     * 指标族
+     */
+    private static class Family {
+
+        private final String name;
+
+        private final String help;
+
+        private final String type;
+
+        /**
+         * {拼好的标签: 指标}
+         */
+        private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.the.rpc.core.metrics;
+
+import com.the.rpc.common.extension.Wrapper;
+import com.the.rpc.core.serializer.Serializer;
+
+/**
+ * 统计序列化耗时的包装扩展，{@link com.the.rpc.common.extension.ExtensionLoader} 自动套在每个序列化器外面
+ *
+ */
+@Wrapper
+public class MetricsSerializer implements Serializer {
+
+    private final Serializer serializer;
+
+    private final Histogram serializeTime;
+
+    private final Histogram deserializeTime;
+
+    public MetricsSerializer(Serializer serializer) {
+        this.serializer = serializer;
+        String name = serializer.getClass().getSimpleName();
+        this.serializeTime = Metrics.latency("rpc_serialize_seconds", "Serialization time.", "serializer", name, "op", "serialize");
+        this.deserializeTime = Metrics.latency("rpc_serialize_seconds", "Serialization time.", "serializer", name, "op", "deserialize");
+    }
+
+    @Override
+    public byte[] serialize(Object o) {
+        long start = System.nanoTime();
+        try {
+            return serializer.serialize(o);
+        } finally {
+            serializeTime.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        long start = System.nanoTime();
+        try {
+            return serializer.deserialize(bytes, clazz);
+        } finally {
+            deserializeTime.record(System.nanoTime() - start);
+        }
+    }
+}
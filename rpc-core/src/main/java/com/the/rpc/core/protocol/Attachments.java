@@ -0,0 +1,183 @@
+package com.the.rpc.core.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.Arrays;
+
+/**
+ * 报文附件，跟着报文传递的少量元数据，例如链路追踪的 trace ID、span ID 和 baggage。<br>
+ * key 是预先分配好的 1 个字节的 ID，不传字符串；值是字节数组，最长 {@link #MAX_VALUE_LENGTH} 个字节。
+ * 编码格式：[个数 1B] ([key 1B][值长度 1B][值])...<br>
+ * 一个链路追踪上下文编码之后是 31 个字节，再加上报文里面 2 个字节的附件长度
+ *
+ * @see ProtocolConst#FLAG_ATTACHMENTS
+ */
+public class Attachments {
+
+    /**
+     * trace ID，16 个字节
+     */
+    public static final byte TRACE_ID = 1;
+
+    /**
+     * 调用方的 span ID，8 个字节
+     */
+    public static final byte SPAN_ID = 2;
+
+    /**
+     * 链路追踪标志，1 个字节，最低位表示是否采样
+     */
+    public static final byte TRACE_FLAGS = 3;
+
+    /**
+     * baggage 的一项，UTF-8 编码的 key=value，可以有多个
+     */
+    public static final byte BAGGAGE = 4;
+
+    /**
+     * 提供者的负载，放在响应里面，格式见 {@link com.the.rpc.core.loadbalance.ProviderLoad}
+     */
+    public static final byte LOAD = 5;
+
+    /**
+     * 值的最大字节数
+     */
+    public static final int MAX_VALUE_LENGTH = 255;
+
+    /**
+     * 最多的项数
+     */
+    private static final int MAX_SIZE = 255;
+
+    private byte[] keys = new byte[4];
+
+    private byte[][] values = new byte[4][];
+
+    private int size;
+
+    /**
+     * 设置一项，已经有这个 key 的时候替换
+     *
+     * @param key   key ID
+     * @param value 值
+     * @return this
+     */
+    public Attachments put(byte key, byte[] value) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                values[i] = checkValue(value);
+                return this;
+            }
+        }
+        return add(key, value);
+    }
+
+    /**
+     * 添加一项，同一个 key 可以有多个，例如 {@link #BAGGAGE}
+     *
+     * @param key   key ID
+     * @param value 值
+     * @return this
+     */
+    public Attachments add(byte key, byte[] value) {
+        checkValue(value);
+        if (size == MAX_SIZE) {
+            throw new IllegalArgumentException("Too many attachments. max=" + MAX_SIZE);
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size++] = value;
+        return this;
+    }
+
+    /**
+     * 获取 key 的第一个值
+     *
+     * @param key key ID
+     * @return 值，没有返回 null
+     */
+    public byte[] get(byte key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getKey(int index) {
+        return keys[index];
+    }
+
+    public byte[] getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * 编码之后的字节数
+     */
+    public int encodedLength() {
+        int length = 1;
+        for (int i = 0; i < size; i++) {
+            length += 2 + values[i].length;
+        }
+        return length;
+    }
+
+    /**
+     * 编码到缓冲区
+     */
+    public void write(ByteBuf out) {
+        out.writeByte(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(keys[i]);
+            out.writeByte(values[i].length);
+            out.writeBytes(values[i]);
+        }
+    }
+
+    /**
+     * 从缓冲区解码
+     *
+     * @param in     缓冲区
+     * @param length 附件的字节数，读完之后正好读完这么多
+     * @return 附件
+     */
+    public static Attachments read(ByteBuf in, int length) throws CorruptedFrameException {
+        int end = in.readerIndex() + length;
+        Attachments attachments = new Attachments();
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            if (end - in.readerIndex() < 2) {
+                throw new CorruptedFrameException("Invalid attachments length: " + length);
+            }
+            byte key = in.readByte();
+            int valueLength = in.readUnsignedByte();
+            if (end - in.readerIndex() < valueLength) {
+                throw new CorruptedFrameException("Invalid attachments length: " + length);
+            }
+            byte[] value = new byte[valueLength];
+            in.readBytes(value);
+            attachments.add(key, value);
+        }
+        if (in.readerIndex() != end) {
+            throw new CorruptedFrameException("Invalid attachments length: " + length);
+        }
+        return attachments;
+    }
+
+    private static byte[] checkValue(byte[] value) {
+        if (value == null || value.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("Attachment value must be non-null and at most " + MAX_VALUE_LENGTH + " bytes.");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.the.rpc.core.protocol;
+
+/**
+ * 协议常量。报文格式如下，报文头固定 34 个字节：
+ * <pre>
+ *   0     2       3      4           5        6             14           22           30            34
+ *   +-----+-------+------+-----------+--------+-------------+------------+------------+-------------+
+ *   |magic|version| type |serializer | status |  requestId  |  methodId  |  deadline  | body length |  body ...
+ *   +-----+-------+------+-----------+--------+-------------+------------+------------+-------------+
+ * </pre>
+ * type 带有 {@link #FLAG_ATTACHMENTS} 的时候，报文体前面先是 2 个字节的附件长度和 {@link Attachments}，body length 包括它们：
+ * <pre>
+ *   34                  36
+ *   +-------------------+-------------+------
+ *   | attachments length| attachments | body ...
+ *   +-------------------+-------------+------
+ * </pre>
+ *
+ */
+public interface ProtocolConst {
+
+    /**
+     * 魔数
+     */
+    short MAGIC = (short) 0xDADA;
+
+    /**
+     * 协议版本，报文头格式变化的时候加一，版本不同的对端直接断开连接，不会按错误的格式解析
+     * <ul>
+     *     <li>1：22 个字节的报文头</li>
+     *     <li>2：报文头增加 deadline，30 个字节</li>
+     *     <li>3：methodId 改成 8 个字节，34 个字节</li>
+     * </ul>
+     */
+    byte VERSION = 3;
+
+    /**
+     * 版本号字段的偏移量
+     */
+    int VERSION_OFFSET = 2;
+
+    /**
+     * 报文头长度
+     */
+    int HEADER_LENGTH = 34;
+
+    /**
+     * 报文体长度字段的偏移量
+     */
+    int LENGTH_FIELD_OFFSET = 30;
+
+    /**
+     * 默认最大报文长度 8M
+     */
+    int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    // ====================== 报文类型
+
+    /**
+     * 请求
+     */
+    byte REQUEST = 1;
+
+    /**
+     * 响应
+     */
+    byte RESPONSE = 2;
+
+    /**
+     * 批量请求，一个报文里面有多个调用
+     */
+    byte BATCH_REQUEST = 3;
+
+    /**
+     * 批量响应
+     */
+    byte BATCH_RESPONSE = 4;
+
+    /**
+     * 流式调用的请求，报文体和普通请求一样，{@link com.the.rpc.core.invoke.StreamObserver} 参数为空
+     */
+    byte STREAM_REQUEST = 5;
+
+    /**
+     * 流里面的一个消息，两个方向都用。报文体是一个 {@link RpcResponse}，每个消息单独序列化
+     */
+    byte STREAM_DATA = 6;
+
+    /**
+     * 一个方向的流结束。状态为失败的时候报文体是错误信息
+     */
+    byte STREAM_END = 7;
+
+    /**
+     * 流控授权，允许对端再发送多少个消息。报文体是 4 个字节的 int
+     */
+    byte STREAM_CREDIT = 8;
+
+    /**
+     * 提供者即将关闭，消费者不要在这个连接上发起新的调用，已经发出的调用照常等待响应。报文体为空
+     */
+    byte GOAWAY = 9;
+
+    /**
+     * 报文类型的标志位，表示报文体前面有附件。没有附件的报文和原来完全一样
+     */
+    byte FLAG_ATTACHMENTS = (byte) 0x80;
+
+    // ====================== 响应状态
+
+    /**
+     * 成功
+     */
+    byte STATUS_OK = 0;
+
+    /**
+     * 失败，报文体里面是错误信息
+     */
+    byte STATUS_ERROR = 1;
+
+    /**
+     * 提供者过载，请求没有执行，可以换一个提供者重试。报文体为空
+     */
+    byte STATUS_OVERLOADED = 2;
+
+    /**
+     * 流被接收方取消，发送方应该停止发送。报文体为空
+     */
+    byte STATUS_CANCELLED = 3;
+}
@@ -0,0 +1,82 @@
+package com.the.rpc.core.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 批量请求报文体，一个报文里面放多个调用，提供者按顺序执行。<br>
+ * 报文体的格式是 [调用个数 int][每个调用的方法 ID long...][序列化之后的本对象]，
+ * 方法 ID 放在不序列化的前缀里面，提供者在 IO 线程直接读出来获取许可，反序列化放到业务线程
+ *
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RpcBatchRequest {
+
+    /**
+     * 每个调用的参数，和前缀里面的方法 ID 一一对应
+     */
+    private RpcRequest[] requests;
+
+    /**
+     * 拼接报文体
+     *
+     * @param methodIds 每个调用的方法 ID
+     * @param requests  序列化之后的本对象
+     * @return 报文体
+     */
+    public static byte[] encode(long[] methodIds, byte[] requests) {
+        ByteBuffer buffer = ByteBuffer.allocate(prefixLength(methodIds.length) + requests.length);
+        buffer.putInt(methodIds.length);
+        for (long methodId : methodIds) {
+            buffer.putLong(methodId);
+        }
+        buffer.put(requests);
+        return buffer.array();
+    }
+
+    /**
+     * 读出报文体前缀里面的方法 ID
+     *
+     * @param body 报文体
+     * @return 每个调用的方法 ID，前缀不完整则抛出异常
+     */
+    public static long[] readMethodIds(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        long[] methodIds = new long[count(body)];
+        for (int i = 0; i < methodIds.length; i++) {
+            methodIds[i] = buffer.getLong(Integer.BYTES + i * Long.BYTES);
+        }
+        return methodIds;
+    }
+
+    /**
+     * 去掉前缀，剩下的是序列化之后的本对象
+     *
+     * @param body 报文体
+     * @return 需要反序列化的部分
+     */
+    public static byte[] readRequests(byte[] body) {
+        return Arrays.copyOfRange(body, prefixLength(count(body)), body.length);
+    }
+
+    private static int count(byte[] body) {
+        if (body == null || body.length < Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid batch request body.");
+        }
+        int count = ByteBuffer.wrap(body).getInt(0);
+        if (count < 0 || count > (body.length - Integer.BYTES) / Long.BYTES) {
+            throw new IllegalArgumentException("Invalid batch request count. count=" + count);
+        }
+        return count;
+    }
+
+    private static int prefixLength(int count) {
+        return Integer.BYTES + count * Long.BYTES;
+    }
+}
@@ -0,0 +1,17 @@
+package com.the.rpc.core.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量响应报文体，和批量请求里面的调用一一对应
+ *
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RpcBatchResponse {
+
+    private RpcResponse[] responses;
+}
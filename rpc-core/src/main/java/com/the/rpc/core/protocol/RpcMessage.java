@@ -0,0 +1,81 @@
+package com.the.rpc.core.protocol;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 协议报文。<br>
+ * 报文体只保存序列化后的字节，解码的时候不做反序列化，等到真正要处理的时候再反序列化
+ *
+ * @see ProtocolConst
+ */
+@Data
+@NoArgsConstructor
+public class RpcMessage {
+
+    /**
+     * 报文类型
+     */
+    private byte type;
+
+    /**
+     * 序列化类型
+     */
+    private byte serializeType;
+
+    /**
+     * 响应状态，请求报文固定为 {@link ProtocolConst#STATUS_OK}
+     */
+    private byte status;
+
+    /**
+     * 请求 ID，响应和请求的一样
+     */
+    private long requestId;
+
+    /**
+     * 方法 ID，批量报文为 0
+     */
+    private long methodId;
+
+    /**
+     * 请求的截止时间，绝对时间戳毫秒数，0 表示没有截止时间。响应报文为 0
+     */
+    private long deadline;
+
+    /**
+     * 序列化后的报文体
+     */
+    private byte[] body;
+
+    /**
+     * 附件，没有为 null
+     */
+    private Attachments attachments;
+
+    /**
+     * 收到报文解码完的 {@link System#nanoTime()}，只在本地使用，不编码
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long receivedNanos;
+
+    /**
+     * 这次调用在 {@link com.the.rpc.core.diagnostics.FlightRecorder} 里面的记录序号，0 表示没有，只在本地使用，不编码
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long record;
+
+    public RpcMessage(byte type, byte serializeType, byte status, long requestId, long methodId, long deadline, byte[] body) {
+        this.type = type;
+        this.serializeType = serializeType;
+        this.status = status;
+        this.requestId = requestId;
+        this.methodId = methodId;
+        this.deadline = deadline;
+        this.body = body;
+    }
+}
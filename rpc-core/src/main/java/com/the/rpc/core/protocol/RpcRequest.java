@@ -0,0 +1,60 @@
+package com.the.rpc.core.protocol;
+
+import com.the.rpc.common.consts.RpcException;
+import lombok.NoArgsConstructor;
+
+/**
+ * 请求报文体。方法由报文头里面的 methodId 确定，这里只有参数。<br>
+ * protostuff 序列化 Object[] 的时候会把 null 元素挪到最后，所以用 nullMask 记录 null 参数的下标，反序列化后还原
+ *
+ */
+@NoArgsConstructor
+public class RpcRequest {
+
+    /**
+     * 最多支持的参数个数
+     */
+    private static final int MAX_ARGS = Long.SIZE;
+
+    /**
+     * 方法参数
+     */
+    private Object[] args;
+
+    /**
+     * 值为 null 的参数下标，第 i 位为 1 表示第 i 个参数为 null
+     */
+    private long nullMask;
+
+    public RpcRequest(Object[] args) {
+        if (args.length > MAX_ARGS) {
+            throw new RpcException("Too many arguments. max=" + MAX_ARGS + ", actual=" + args.length);
+        }
+        this.args = args;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null) {
+                nullMask |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * 获取方法参数
+     *
+     * @return 方法参数，null 参数已还原到原来的位置
+     */
+    public Object[] getArgs() {
+        if (args == null) {
+            return new Object[0];
+        }
+        if (nullMask != 0) {
+            // 非 null 的参数按顺序排在前面，从后往前挪回原来的位置
+            int src = args.length - Long.bitCount(nullMask) - 1;
+            for (int i = args.length - 1; i >= 0; i--) {
+                args[i] = (nullMask & (1L << i)) != 0 ? null : args[src--];
+            }
+            nullMask = 0;
+        }
+        return args;
+    }
+}
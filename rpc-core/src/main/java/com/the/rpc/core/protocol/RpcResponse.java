@@ -0,0 +1,33 @@
+package com.the.rpc.core.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 响应报文体
+ *
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RpcResponse {
+
+    /**
+     * 返回值
+     */
+    private Object data;
+
+    /**
+     * 错误信息，为 null 表示成功
+     */
+    private String error;
+
+    public static RpcResponse success(Object data) {
+        return new RpcResponse(data, null);
+    }
+
+    public static RpcResponse fail(String error) {
+        return new RpcResponse(null, error);
+    }
+}
@@ -0,0 +1,23 @@
+package com.the.rpc.core.proxy;
+
+import com.the.rpc.common.extension.SPI;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.Invoker;
+
+/**
+ * 消费者代理工厂，为服务接口生成代理，代理把方法调用转给 {@link Invoker}
+ *
+ */
+@SPI("stub")
+public interface ProxyFactory {
+
+    /**
+     * 获取代理
+     *
+     * @param interfaceClass 服务接口
+     * @param url            服务引用的 URL，包含版本号、序列化方式、超时时间等
+     * @param invoker        调用器
+     * @return 服务接口的代理
+     */
+    <T> T getProxy(Class<T> interfaceClass, URL url, Invoker invoker);
+}
@@ -0,0 +1,72 @@
+package com.the.rpc.core.proxy.jdk;
+
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.ServiceDescriptor;
+import com.the.rpc.core.proxy.ProxyFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JDK 动态代理工厂
+ *
+ */
+public class JdkProxyFactory implements ProxyFactory {
+
+    @Override
+    public <T> T getProxy(Class<T> interfaceClass, URL url, Invoker invoker) {
+        ServiceDescriptor service = ServiceDescriptor.of(interfaceClass, url.getParam(URLKeyConst.VERSION, null));
+        InvocationHandler handler = new RemoteInvocationHandler(service, RemoteMethod.of(service, url), invoker);
+        //noinspection unchecked
+        return (T) Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass}, handler);
+    }
+
+    /**
+     * 把代理的方法调用转给调用器，{接口方法: 远程方法} 在创建的时候就算好
+     */
+    private static class RemoteInvocationHandler implements InvocationHandler {
+
+        private final ServiceDescriptor service;
+
+        private final Map<Method, RemoteMethod> methods;
+
+        private final Invoker invoker;
+
+        RemoteInvocationHandler(ServiceDescriptor service, RemoteMethod[] remoteMethods, Invoker invoker) {
+            this.service = service;
+            this.methods = new HashMap<>(remoteMethods.length * 2);
+            for (RemoteMethod remoteMethod : remoteMethods) {
+                MethodDescriptor descriptor = remoteMethod.getDescriptor();
+                methods.put(descriptor.getMethod(), remoteMethod);
+            }
+            this.invoker = invoker;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            RemoteMethod remoteMethod = methods.get(method);
+            if (remoteMethod != null) {
+                return invoker.invoke(remoteMethod, args == null ? new Object[0] : args);
+            }
+            // Object 的方法在本地处理
+            switch (method.getName()) {
+                case "toString":
+                    return "JdkProxy(" + service + ")";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new RpcException("Not a remote method. method=" + method);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.the.rpc.core.proxy.stub;
+
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+
+/**
+ * 生成的存根类的父类。<br>
+ * 存根类的每个方法都直接用自己的下标调用 {@link #invoke(int, Object[])}，不需要查找 Method
+ *
+ * @see StubGenerator
+ */
+public abstract class AbstractStub {
+
+    /**
+     * 无参方法共用的参数数组
+     */
+    public static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final Invoker invoker;
+
+    private final RemoteMethod[] methods;
+
+    protected AbstractStub(Invoker invoker, RemoteMethod[] methods) {
+        this.invoker = invoker;
+        this.methods = methods;
+    }
+
+    /**
+     * 调用远程方法
+     *
+     * @param index 方法下标，和 {@link com.the.rpc.core.invoke.ServiceDescriptor#getMethods()} 一致
+     * @param args  方法参数
+     * @return 方法返回值
+     * @throws Throwable 原样抛出，不包装
+     */
+    protected final Object invoke(int index, Object[] args) throws Throwable {
+        return invoker.invoke(methods[index], args);
+    }
+}
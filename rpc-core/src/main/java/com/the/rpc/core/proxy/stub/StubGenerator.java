@@ -0,0 +1,197 @@
+package com.the.rpc.core.proxy.stub;
+
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.ServiceDescriptor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.reflect.Method;
+
+/**
+ * 存根类生成器。<br>
+ * 为服务接口生成一个继承 {@link AbstractStub} 的具体类，每个方法的字节码等价于：
+ * <pre>{@code
+ *     public User getUser(Long id) {
+ *         return (User) invoke(0, new Object[]{id});
+ *     }
+ * }</pre>
+ * 这样调用的时候没有 Proxy 分发，也没有 Method 查找
+ *
+ */
+class StubGenerator implements Opcodes {
+
+    /**
+     * 生成的类名后缀
+     */
+    private static final String STUB_SUFFIX = "$$TheRpcStub";
+
+    private static final String STUB_SUPER = Type.getInternalName(AbstractStub.class);
+
+    private static final String CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+            Type.getType(Invoker.class), Type.getType(RemoteMethod[].class));
+
+    private static final String INVOKE_DESC = "(I[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private StubGenerator() {
+    }
+
+    /**
+     * 生成并加载存根类
+     *
+     * @param service 服务描述
+     * @return 存根类，构造函数为 (Invoker, RemoteMethod[])
+     */
+    static Class<?> generate(ServiceDescriptor service) {
+        Class<?> interfaceClass = service.getInterfaceClass();
+        String className = interfaceClass.getName() + STUB_SUFFIX;
+        byte[] bytes = generateBytes(className.replace('.', '/'), service);
+        return new StubClassLoader(interfaceClass.getClassLoader()).define(className, bytes);
+    }
+
+    private static byte[] generateBytes(String internalName, ServiceDescriptor service) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, STUB_SUPER,
+                new String[]{Type.getInternalName(service.getInterfaceClass())});
+
+        // 构造函数，直接调用父类
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKESPECIAL, STUB_SUPER, "<init>", CONSTRUCTOR_DESC, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        MethodDescriptor[] methods = service.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            generateMethod(cw, i, methods[i].getMethod());
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateMethod(ClassWriter cw, int index, Method method) {
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_FINAL, method.getName(),
+                Type.getMethodDescriptor(method), null, exceptions);
+        mv.visitCode();
+        // this.invoke(index, args)
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(index);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            mv.visitFieldInsn(GETSTATIC, STUB_SUPER, "EMPTY_ARGS", "[Ljava/lang/Object;");
+        } else {
+            mv.visitLdcInsn(parameterTypes.length);
+            mv.visitTypeInsn(ANEWARRAY, OBJECT);
+            int slot = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Type type = Type.getType(parameterTypes[i]);
+                mv.visitInsn(DUP);
+                mv.visitLdcInsn(i);
+                mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+                box(mv, type);
+                mv.visitInsn(AASTORE);
+                slot += type.getSize();
+            }
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, STUB_SUPER, "invoke", INVOKE_DESC, false);
+        // 处理返回值
+        Type returnType = Type.getReturnType(method);
+        if (returnType.getSort() == Type.VOID) {
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+        } else {
+            unbox(mv, returnType);
+            mv.visitInsn(returnType.getOpcode(IRETURN));
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * 基本类型装箱，例如 int -> Integer.valueOf(int)
+     */
+    private static void box(MethodVisitor mv, Type type) {
+        String wrapper = wrapperOf(type);
+        if (wrapper == null) {
+            return;
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf",
+                "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    /**
+     * 返回值拆箱或者强转，例如 Integer.intValue()
+     */
+    private static void unbox(MethodVisitor mv, Type type) {
+        String wrapper = wrapperOf(type);
+        if (wrapper == null) {
+            mv.visitTypeInsn(CHECKCAST, type.getSort() == Type.ARRAY ? type.getDescriptor() : type.getInternalName());
+            return;
+        }
+        mv.visitTypeInsn(CHECKCAST, wrapper);
+        mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getClassName() + "Value",
+                "()" + type.getDescriptor(), false);
+    }
+
+    /**
+     * 获取基本类型的包装类
+     *
+     * @return 包装类的内部名，不是基本类型返回 null
+     */
+    private static String wrapperOf(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return "java/lang/Boolean";
+            case Type.CHAR:
+                return "java/lang/Character";
+            case Type.BYTE:
+                return "java/lang/Byte";
+            case Type.SHORT:
+                return "java/lang/Short";
+            case Type.INT:
+                return "java/lang/Integer";
+            case Type.FLOAT:
+                return "java/lang/Float";
+            case Type.LONG:
+                return "java/lang/Long";
+            case Type.DOUBLE:
+                return "java/lang/Double";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 加载存根类的类加载器。<br>
+     * 父加载器是接口的类加载器，接口的类加载器找不到 rpc-core 的类时，再用 rpc-core 自己的类加载器
+     */
+    private static class StubClassLoader extends ClassLoader {
+
+        StubClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return AbstractStub.class.getClassLoader().loadClass(name);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.the.rpc.core.proxy.stub;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.ServiceDescriptor;
+import com.the.rpc.core.proxy.ProxyFactory;
+import com.the.rpc.core.proxy.jdk.JdkProxyFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 存根代理工厂，启动的时候为每个服务接口生成一个具体的存根类。<br>
+ * 接口不是 public 的时候，生成的类访问不到接口，退回到 JDK 动态代理
+ *
+ */
+@Slf4j
+public class StubProxyFactory implements ProxyFactory {
+
+    /**
+     * 存根类构造函数缓存 {服务描述: 构造函数}
+     */
+    private static final Map<ServiceDescriptor, Constructor<?>> cache = new ConcurrentHashMap<>();
+
+    private final JdkProxyFactory fallback = new JdkProxyFactory();
+
+    @Override
+    public <T> T getProxy(Class<T> interfaceClass, URL url, Invoker invoker) {
+        if (!Modifier.isPublic(interfaceClass.getModifiers())) {
+            log.warn("{} is not public, use jdk proxy instead.", interfaceClass.getName());
+            return fallback.getProxy(interfaceClass, url, invoker);
+        }
+        ServiceDescriptor service = ServiceDescriptor.of(interfaceClass, url.getParam(URLKeyConst.VERSION, null));
+        Constructor<?> constructor = cache.computeIfAbsent(service, StubProxyFactory::createConstructor);
+        try {
+            return interfaceClass.cast(constructor.newInstance(invoker, RemoteMethod.of(service, url)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Create stub fail. service=" + service + ". " + e.toString());
+        }
+    }
+
+    private static Constructor<?> createConstructor(ServiceDescriptor service) {
+        try {
+            return StubGenerator.generate(service).getConstructor(Invoker.class, RemoteMethod[].class);
+        } catch (NoSuchMethodException | LinkageError e) {
+            throw new IllegalStateException("Generate stub fail. service=" + service + ". " + e.toString());
+        }
+    }
+}
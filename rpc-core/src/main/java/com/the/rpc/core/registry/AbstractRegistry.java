@@ -4,32 +4,82 @@ import cn.hutool.core.collection.ConcurrentHashSet;
 import cn.hutool.core.lang.Assert;
 import com.the.rpc.common.consts.URLKeyConst;
 import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.DiagnosticEvent;
+import com.the.rpc.core.diagnostics.Diagnostics;
+import com.the.rpc.core.loadbalance.ProviderLoad;
+import com.the.rpc.core.metrics.Counter;
+import com.the.rpc.core.metrics.Metrics;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import static com.the.rpc.core.registry.RegistryEvent.Type.*;
 
 /**
- * 抽象的注册中心
+ * 抽象的注册中心。<br>
+ * 注册、查找、重置和节点事件只记录限流的诊断事件，带服务名和提供者数量，不打印完整的 URL 列表；
+ * 完整的本地缓存通过管理命令 registry 导出
  */
 @Slf4j
 public abstract class AbstractRegistry implements Registry {
 
+    private static final Counter LOOKUPS = Metrics.counter("rpc_registry_lookups_total", "Provider lookups.");
+
+    private static final Counter LOOKUP_MISSES = Metrics.counter("rpc_registry_lookup_misses_total", "Provider lookups not found in the local cache.");
+
+    private static final Counter RESETS = Metrics.counter("rpc_registry_resets_total", "Reloads of a service's providers from the registry.");
+
+    private static final Counter REGISTERS = Metrics.counter("rpc_registry_registers_total", "Services registered.");
+
+    private static final Counter UNREGISTERS = Metrics.counter("rpc_registry_unregisters_total", "Services unregistered.");
+
+    private static final DiagnosticEvent REGISTER_EVENT = Diagnostics.event("registry.register");
+
+    private static final DiagnosticEvent UNREGISTER_EVENT = Diagnostics.event("registry.unregister");
+
+    private static final DiagnosticEvent UNREGISTER_ALL_EVENT = Diagnostics.event("registry.unregisterAll");
+
+    private static final DiagnosticEvent LOOKUP_MISS_EVENT = Diagnostics.event("registry.lookupMiss");
+
+    private static final DiagnosticEvent RESET_EVENT = Diagnostics.event("registry.reset");
+
+    private static final DiagnosticEvent NODE_EVENT = Diagnostics.event("registry.nodeEvent");
+
+    /**
+     * 所有注册中心实例，导出状态用。注册中心没有销毁的入口，弱引用持有，不再使用的实例可以被回收
+     */
+    private static final Set<AbstractRegistry> registries = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        Diagnostics.registerCommand("registry", AbstractRegistry::dump);
+    }
+
     /**
      * 已注册的服务的本地缓存。{serviceName: [URL]}
      */
-    private final Map<String, Set<String>> registered = new ConcurrentHashMap<>();
+    private final Map<String, Set<URL>> registered = new ConcurrentHashMap<>();
 
     /**
      * 记录本机已经注册的服务
      */
     private static final Set<URL> myServiceURLs = new ConcurrentHashSet<>();
 
+    /**
+     * 本机已经注册的服务，用来判断提供者是不是在同一个 JVM 里面。{address/serviceName}
+     */
+    private static final Set<String> myServiceKeys = new ConcurrentHashSet<>();
+
+    protected AbstractRegistry() {
+        registries.add(this);
+    }
+
     /**
      * 向注册中心注册服务
      *
@@ -62,11 +112,13 @@ public abstract class AbstractRegistry implements Registry {
         Assert.notNull(url, "register url == null");
         //注册
         doRegister(url);
+        REGISTERS.inc();
         //注册完添加到本地缓存中
         addToLocalCache(url);
         //添加服务
         myServiceURLs.add(url);
-        log.info("register: {}", url);
+        myServiceKeys.add(getMyServiceKey(url));
+        REGISTER_EVENT.record("url", url.toRedactedString());
     }
 
     /**
@@ -78,9 +130,11 @@ public abstract class AbstractRegistry implements Registry {
     public void unregister(URL url) {
         Assert.notNull(url, "register url == null");
         doUnregister(url);
+        UNREGISTERS.inc();
         removeFromLocalCache(url);
         myServiceURLs.remove(url);
-        log.info("unregister: {}", url);
+        myServiceKeys.remove(getMyServiceKey(url));
+        UNREGISTER_EVENT.record("url", url.toRedactedString());
     }
 
     /**
@@ -91,26 +145,42 @@ public abstract class AbstractRegistry implements Registry {
      */
     @Override
     public List<URL> lookup(URL condition) {
+        LOOKUPS.inc();
         String serviceName = getServiceNameFromUrl(condition);
         if (registered.containsKey(serviceName)) {
-            return registered.get(serviceName).stream().map(URL::valueOf).collect(Collectors.toList());
+            return new ArrayList<>(registered.get(serviceName));
         }
+        LOOKUP_MISSES.inc();
         List<URL> urls = reset(condition);
-        log.info("lookup: {}", urls);
+        LOOKUP_MISS_EVENT.record("service", serviceName, "providers", urls.size());
         return urls;
     }
 
     /**
-     * 取消所有本机的服务，用于关机的时候
+     * 取消所有本机的服务，用于关机的时候。一个服务取消失败不影响其他服务
      */
     @Override
     public void unregisterAllMyService() {
-        log.info("unregisterAllMyService. myServiceURLs:{}", myServiceURLs);
+        UNREGISTER_ALL_EVENT.record("services", myServiceURLs.size());
         for (URL url : myServiceURLs) {
-            unregister(url);
+            try {
+                unregister(url);
+            } catch (Exception e) {
+                log.warn("unregister fail. url={}", url.toRedactedString(), e);
+            }
         }
     }
 
+    /**
+     * 提供者是不是本机注册的服务
+     *
+     * @param url 提供者的 URL
+     * @return true 表示提供者和当前代码在同一个 JVM 里面
+     */
+    public static boolean isMyService(URL url) {
+        return !myServiceKeys.isEmpty() && myServiceKeys.contains(getMyServiceKey(url));
+    }
+
     /**
      * 重置。重新拿出注册信息，然后加到缓存中。
      *
@@ -118,6 +188,7 @@ public abstract class AbstractRegistry implements Registry {
      * @return
      */
     public List<URL> reset(URL condition) {
+        RESETS.inc();
         // 获取服务名
         String serviceName = getServiceNameFromUrl(condition);
         // 将原来注册信息本地缓存删掉
@@ -128,7 +199,7 @@ public abstract class AbstractRegistry implements Registry {
             // 将所有 Provider 添加到本地缓存
             addToLocalCache(url);
         }
-        log.info("reset: {}", urls);
+        RESET_EVENT.record("service", serviceName, "providers", urls.size());
         return urls;
     }
 
@@ -141,7 +212,8 @@ public abstract class AbstractRegistry implements Registry {
         RegistryEvent.Type type = event.getType();
         String data = event.getData();
         String oldData = event.getOldData();
-        log.info("triggerEvent. event={}", event);
+        String nodeData = data != null ? data : oldData;
+        NODE_EVENT.record("type", type, "url", nodeData == null ? null : URL.valueOf(nodeData).toRedactedString());
         if (type == CREATED) {
             // 新增节点
             if (data != null) {
@@ -163,6 +235,33 @@ public abstract class AbstractRegistry implements Registry {
         }
     }
 
+    /**
+     * 导出所有注册中心的本地缓存和本机注册的服务，管理命令 registry 的输出，URL 去掉了用户名和密码
+     */
+    static String dump() {
+        List<AbstractRegistry> snapshot;
+        synchronized (registries) {
+            snapshot = new ArrayList<>(registries);
+        }
+        StringBuilder buf = new StringBuilder();
+        for (AbstractRegistry registry : snapshot) {
+            buf.append("# ").append(registry.getClass().getSimpleName()).append('@')
+                    .append(Integer.toHexString(System.identityHashCode(registry))).append('\n');
+            for (Map.Entry<String, Set<URL>> entry : new TreeMap<>(registry.registered).entrySet()) {
+                Set<URL> urls = entry.getValue();
+                buf.append(entry.getKey()).append(" providers=").append(urls.size()).append('\n');
+                for (URL url : urls) {
+                    buf.append("  ").append(url.toRedactedString()).append('\n');
+                }
+            }
+        }
+        buf.append("# my services=").append(myServiceURLs.size()).append('\n');
+        for (URL url : myServiceURLs) {
+            buf.append("  ").append(url.toRedactedString()).append('\n');
+        }
+        return buf.toString();
+    }
+
     /**
      * 从 URL 中获取服务名
      */
@@ -170,6 +269,10 @@ public abstract class AbstractRegistry implements Registry {
         return url.getParam(URLKeyConst.INTERFACE, url.getPath());
     }
 
+    private static String getMyServiceKey(URL url) {
+        return url.getAddress() + "/" + url.getParam(URLKeyConst.INTERFACE, url.getPath());
+    }
+
     /**
      * 添加到本地缓存
      */
@@ -178,7 +281,7 @@ public abstract class AbstractRegistry implements Registry {
         if (!registered.containsKey(serviceName)) {
             registered.put(serviceName, new ConcurrentHashSet<>());
         }
-        registered.get(serviceName).add(url.toFullString());
+        registered.get(serviceName).add(url);
     }
 
     /**
@@ -187,7 +290,9 @@ public abstract class AbstractRegistry implements Registry {
     private void removeFromLocalCache(URL url) {
         String serviceName = getServiceNameFromUrl(url);
         if (registered.containsKey(serviceName)) {
-            registered.get(serviceName).remove(url.toFullString());
+            registered.get(serviceName).remove(url);
         }
+        // 注册信息变了或者提供者下线，丢掉这个地址的负载，下线之后不再保留
+        ProviderLoad.reset(url.getAddress());
     }
 }
@@ -5,11 +5,17 @@ import cn.hutool.core.net.URLEncoder;
 import com.the.rpc.common.consts.RegistryConst;
 import com.the.rpc.common.url.URL;
 import com.the.rpc.common.url.URLParser;
+import com.the.rpc.core.diagnostics.DiagnosticEvent;
+import com.the.rpc.core.diagnostics.Diagnostics;
+import com.the.rpc.core.metrics.Counter;
+import com.the.rpc.core.metrics.Metrics;
 import com.the.rpc.core.registry.AbstractRegistry;
-import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 
 import java.nio.charset.Charset;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -17,7 +23,6 @@ import java.util.stream.Collectors;
  * 这里面会引入 curator，最好是新建个 Module 的，不过现在代码还太简单，不需要
  *
  */
-@Slf4j
 public class ZkRegistry extends AbstractRegistry {
 
     //zookeeper客户端
@@ -28,6 +33,19 @@ public class ZkRegistry extends AbstractRegistry {
     //获取当前系统的默认字符集编码
     private static final Charset charset = Charset.defaultCharset();
 
+    /**
+     * 收到的监听事件数 {事件类型: 计数器}
+     */
+    private static final Map<CuratorCacheListener.Type, Counter> watchEvents = new EnumMap<>(CuratorCacheListener.Type.class);
+
+    private static final DiagnosticEvent WATCH_EVENT = Diagnostics.event("zk.watch");
+
+    static {
+        for (CuratorCacheListener.Type type : CuratorCacheListener.Type.values()) {
+            watchEvents.put(type, Metrics.counter("rpc_zk_watch_events_total", "ZooKeeper watch events.", "type", type.name()));
+        }
+    }
+
     //通过构造方法创建zookeeper客户端对
     public ZkRegistry(URL url) {
         zkClient = new CuratorZkClient(url);
@@ -84,7 +102,8 @@ public class ZkRegistry extends AbstractRegistry {
         String path = toServicePath(url);
         //添加监听器
         zkClient.addListener(path, (type, oldData, data) -> {
-            log.info("watch event. type={}, oldData={}, data={}", type, oldData, data);
+            watchEvents.get(type).inc();
+            WATCH_EVENT.record("type", type, "path", path);
             //将本地缓存信息更新, 保持最新
             reset(url);
         });
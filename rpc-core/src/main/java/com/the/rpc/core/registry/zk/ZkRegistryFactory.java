@@ -17,12 +17,7 @@ public class ZkRegistryFactory implements RegistryFactory {
 
     @Override
     public Registry getRegistry(URL url) {
-        if (cache.containsKey(url)) {
-            return cache.get(url);
-        }
-        ZkRegistry zkRegistry = new ZkRegistry(url);
-        cache.putIfAbsent(url, zkRegistry);
-        return cache.get(url);
+        return cache.computeIfAbsent(url, ZkRegistry::new);
     }
 
 }
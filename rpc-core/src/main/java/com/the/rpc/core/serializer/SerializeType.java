@@ -0,0 +1,71 @@
+package com.the.rpc.core.serializer;
+
+import com.the.rpc.common.extension.ExtensionLoader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 序列化类型。报文头里面只放一个字节的 code，收到之后再根据 code 找到序列化器
+ *
+ */
+@Getter
+@AllArgsConstructor
+public enum SerializeType {
+
+    PROTOSTUFF((byte) 1, "protostuff");
+
+    /**
+     * 序列化器缓存，下标是 code
+     */
+    private static final Serializer[] SERIALIZERS = new Serializer[Byte.MAX_VALUE + 1];
+
+    /**
+     * 报文头里面的 code
+     */
+    private final byte code;
+
+    /**
+     * 扩展名，对应 META-INF/the-rpc 里面配置的名字
+     */
+    private final String name;
+
+    /**
+     * 根据扩展名获取序列化类型
+     *
+     * @param name 扩展名
+     * @return 序列化类型，找不到则抛出异常
+     */
+    public static SerializeType fromName(String name) {
+        for (SerializeType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown serializer. name=" + name);
+    }
+
+    /**
+     * 根据 code 获取序列化器
+     *
+     * @param code 报文头里面的 code
+     * @return 序列化器，找不到则抛出异常
+     */
+    public static Serializer getSerializer(byte code) {
+        if (code < 0) {
+            throw new IllegalArgumentException("Unknown serializer. code=" + code);
+        }
+        Serializer serializer = SERIALIZERS[code];
+        if (serializer != null) {
+            return serializer;
+        }
+        for (SerializeType type : values()) {
+            if (type.code == code) {
+                // 扩展类是单例，并发的时候重复赋值也没关系
+                serializer = ExtensionLoader.getLoader(Serializer.class).getExtension(type.name);
+                SERIALIZERS[code] = serializer;
+                return serializer;
+            }
+        }
+        throw new IllegalArgumentException("Unknown serializer. code=" + code);
+    }
+}
@@ -11,7 +11,8 @@ import io.protostuff.runtime.RuntimeSchema;
  */
 public class ProtoStuffSerializer implements Serializer {
     //创建一个链表缓冲区并开初始大小512字节大小的空间LinkedBuffer,LinkedBuffer可以提高序列化性能的一个临时缓冲区。它可以避免频繁的内存分配
-    private static final LinkedBuffer BUFFER = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+    //缓冲区不是线程安全的, 多个线程同时序列化会互相覆盖, 所以每个线程一个
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
     /**
      * 序列化需要传输的数据对象
      * @param object 要序列化的对象
@@ -21,12 +22,13 @@ public class ProtoStuffSerializer implements Serializer {
     public byte[] serialize(Object object) {
         // Protostuff 库使用 Schema 来描述类的结构，包括类的字段以及字段的序列化规则。这一过程是需要对象的类反射获取,用于将信息转到缓冲区生成字节流
         Schema  schema = RuntimeSchema.getSchema(object.getClass());
+        LinkedBuffer buffer = BUFFER.get();
         try{
             //序列化对象转换为字节流二进制
-            return ProtostuffIOUtil.toByteArray(object, schema , BUFFER);
+            return ProtostuffIOUtil.toByteArray(object, schema , buffer);
         }finally {
             //关闭缓冲区
-            BUFFER.clear();
+            buffer.clear();
         }
     }
 
@@ -0,0 +1,167 @@
+package com.the.rpc.core.trace;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.metrics.Counter;
+import com.the.rpc.core.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 把 span 按 OTLP/JSON 格式追加写到本地文件，每行一个 ExportTraceServiceRequest，
+ * 可以直接交给 OpenTelemetry Collector 的 otlpjsonfile 接收器读取。<br>
+ * 调用线程只把 span 放进有界队列，队列满了丢弃并计数，后台线程批量写文件；进程退出的时候写完队列里面剩下的
+ *
+ */
+@Slf4j
+public class FileSpanExporter implements SpanExporter {
+
+    private static final int QUEUE_SIZE = 8192;
+
+    /**
+     * 每行最多写的 span 数
+     */
+    private static final int BATCH_SIZE = 512;
+
+    private static final String SCOPE_NAME = "the-rpc";
+
+    private static final String DEFAULT_SERVICE_NAME = "the-rpc";
+
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+    private final Counter dropped = Metrics.counter("rpc_trace_spans_dropped_total", "Spans dropped because the export queue is full.");
+
+    private Writer writer;
+
+    private String resource;
+
+    @Override
+    public void start(URL url) {
+        String path = url.getParam(URLKeyConst.TRACE_FILE, null);
+        File file = new File(path != null ? path
+                : System.getProperty("java.io.tmpdir") + File.separator + "the-rpc-spans-" + ProcessHandle.current().pid() + ".jsonl");
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Open trace file fail. file=" + file, e);
+        }
+        StringBuilder buf = new StringBuilder("{\"resource\":{\"attributes\":[");
+        attribute(buf, "service.name", url.getParam(URLKeyConst.APPLICATION, DEFAULT_SERVICE_NAME));
+        resource = buf.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"").append(SCOPE_NAME).append("\"},\"spans\":[").toString();
+        Thread thread = new Thread(this::run, "the-rpc-trace-exporter");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "the-rpc-trace-flush"));
+        log.info("span exporter started. file={}", file);
+    }
+
+    @Override
+    public void export(Span span) {
+        if (!queue.offer(span)) {
+            dropped.inc();
+        }
+    }
+
+    private void run() {
+        List<Span> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 写完队列里面剩下的
+     */
+    private void flush() {
+        List<Span> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private synchronized void write(List<Span> spans) {
+        StringBuilder buf = new StringBuilder(256 * spans.size() + 256);
+        buf.append("{\"resourceSpans\":[").append(resource);
+        for (int i = 0; i < spans.size(); i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            writeSpan(buf, spans.get(i));
+        }
+        buf.append("]}]}]}\n");
+        try {
+            writer.write(buf.toString());
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Write spans fail. count={}", spans.size(), e);
+        }
+    }
+
+    private static void writeSpan(StringBuilder buf, Span span) {
+        TraceContext context = span.getContext();
+        buf.append("{\"traceId\":\"").append(context.getTraceId())
+                .append("\",\"spanId\":\"").append(context.getSpanId()).append('"');
+        if (span.getParentSpanId() != 0) {
+            buf.append(",\"parentSpanId\":\"").append(TraceContext.hex(span.getParentSpanId())).append('"');
+        }
+        buf.append(",\"name\":");
+        string(buf, span.getName());
+        // OTLP 的 SPAN_KIND_SERVER 是 2，SPAN_KIND_CLIENT 是 3
+        buf.append(",\"kind\":").append(span.getKind() == Span.Kind.SERVER ? 2 : 3)
+                .append(",\"startTimeUnixNano\":\"").append(span.getStartEpochNanos())
+                .append("\",\"endTimeUnixNano\":\"").append(span.getStartEpochNanos() + span.getDurationNanos())
+                .append("\",\"attributes\":[");
+        attribute(buf, "rpc.system", "the-rpc");
+        buf.append(',');
+        attribute(buf, "rpc.service", span.getService());
+        buf.append(',');
+        attribute(buf, "rpc.method", span.getMethod());
+        buf.append("],\"status\":{");
+        if (span.getError() != null) {
+            // STATUS_CODE_ERROR
+            buf.append("\"code\":2,\"message\":");
+            string(buf, span.getError());
+        }
+        buf.append("}}");
+    }
+
+    private static void attribute(StringBuilder buf, String key, String value) {
+        buf.append("{\"key\":\"").append(key).append("\",\"value\":{\"stringValue\":");
+        string(buf, value);
+        buf.append("}}");
+    }
+
+    private static void string(StringBuilder buf, String value) {
+        buf.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf.append('\\').append(c);
+            } else if (c < 0x20) {
+                buf.append(String.format("\\u%04x", (int) c));
+            } else {
+                buf.append(c);
+            }
+        }
+        buf.append('"');
+    }
+}
@@ -0,0 +1,69 @@
+package com.the.rpc.core.trace;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * 一次调用在一侧的记录。<br>
+ * 消费者一侧从发起调用到拿到结果，提供者一侧从开始执行到执行结束，两者相减就是网络和排队的耗时。
+ * 开始时间用墙上时钟，耗时用 {@link System#nanoTime()}，不受时钟调整影响
+ *
+ */
+@Getter
+public class Span {
+
+    public enum Kind {
+        CLIENT, SERVER
+    }
+
+    private final TraceContext context;
+
+    /**
+     * 父 span ID，0 表示根 span
+     */
+    private final long parentSpanId;
+
+    private final Kind kind;
+
+    private final String service;
+
+    private final String method;
+
+    /**
+     * 开始时间，纳秒时间戳
+     */
+    private final long startEpochNanos;
+
+    private final long startNanos;
+
+    private long durationNanos;
+
+    /**
+     * 错误信息，成功为 null
+     */
+    private String error;
+
+    Span(TraceContext context, long parentSpanId, Kind kind, String service, String method) {
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.kind = kind;
+        this.service = service;
+        this.method = method;
+        Instant now = Instant.now();
+        this.startEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.startNanos = System.nanoTime();
+    }
+
+    void end(String error) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.error = error;
+    }
+
+    /**
+     * span 名，service/method
+     */
+    public String getName() {
+        return service + "/" + method;
+    }
+}
@@ -0,0 +1,26 @@
+package com.the.rpc.core.trace;
+
+import com.the.rpc.common.extension.SPI;
+import com.the.rpc.common.url.URL;
+
+/**
+ * span 导出器，只导出采样的 span
+ *
+ */
+@SPI("file")
+public interface SpanExporter {
+
+    /**
+     * 启动，一个 JVM 只调用一次
+     *
+     * @param url 第一个开启链路追踪的服务引用或者提供者的 URL
+     */
+    void start(URL url);
+
+    /**
+     * 导出 span，在调用线程里面执行，不能阻塞
+     *
+     * @param span 已经结束的 span
+     */
+    void export(Span span);
+}
@@ -0,0 +1,196 @@
+package com.the.rpc.core.trace;
+
+import com.the.rpc.core.protocol.Attachments;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 链路追踪上下文，不可变。<br>
+ * 包含 trace ID、当前 span ID、是否采样和 baggage，跟着请求通过 {@link Attachments} 传给下游，
+ * 编码成附件的结果缓存下来，同一个上下文发起多次调用只编码一次
+ *
+ */
+public final class TraceContext {
+
+    private static final byte FLAG_SAMPLED = 1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long traceIdHigh;
+
+    private final long traceIdLow;
+
+    /**
+     * 当前 span ID，0 表示还没有 span，只带了 baggage
+     */
+    private final long spanId;
+
+    private final boolean sampled;
+
+    private final Map<String, String> baggage;
+
+    private volatile Attachments attachments;
+
+    private TraceContext(long traceIdHigh, long traceIdLow, long spanId, boolean sampled, Map<String, String> baggage) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.sampled = sampled;
+        this.baggage = baggage;
+    }
+
+    /**
+     * 新建一个 trace，还没有 span
+     *
+     * @param sampled 是否采样
+     * @return 上下文
+     */
+    static TraceContext newTrace(boolean sampled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long low;
+        do {
+            low = random.nextLong();
+        } while (low == 0);
+        return new TraceContext(random.nextLong(), low, 0, sampled, Collections.emptyMap());
+    }
+
+    /**
+     * 同一个 trace 里面的下一个 span
+     *
+     * @return 新的上下文，span ID 随机生成
+     */
+    TraceContext newSpan() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return new TraceContext(traceIdHigh, traceIdLow, id, sampled, baggage);
+    }
+
+    /**
+     * 换一个 baggage 值
+     *
+     * @param key   key
+     * @param value 值，null 表示删除
+     * @return 新的上下文
+     */
+    TraceContext withBaggage(String key, String value) {
+        Map<String, String> newBaggage = new LinkedHashMap<>(baggage);
+        if (value == null) {
+            newBaggage.remove(key);
+        } else {
+            newBaggage.put(key, value);
+        }
+        return new TraceContext(traceIdHigh, traceIdLow, spanId, sampled, Collections.unmodifiableMap(newBaggage));
+    }
+
+    /**
+     * 从请求的附件里面解析上下文
+     *
+     * @param attachments 附件，可以为 null
+     * @return 上下文，没有链路追踪信息返回 null
+     */
+    public static TraceContext from(Attachments attachments) {
+        if (attachments == null) {
+            return null;
+        }
+        byte[] traceId = attachments.get(Attachments.TRACE_ID);
+        if (traceId == null || traceId.length != 16) {
+            return null;
+        }
+        byte[] spanId = attachments.get(Attachments.SPAN_ID);
+        byte[] flags = attachments.get(Attachments.TRACE_FLAGS);
+        Map<String, String> baggage = Collections.emptyMap();
+        for (int i = 0; i < attachments.size(); i++) {
+            if (attachments.getKey(i) == Attachments.BAGGAGE) {
+                String entry = new String(attachments.getValue(i), StandardCharsets.UTF_8);
+                int index = entry.indexOf('=');
+                if (index > 0) {
+                    if (baggage.isEmpty()) {
+                        baggage = new LinkedHashMap<>();
+                    }
+                    baggage.put(entry.substring(0, index), entry.substring(index + 1));
+                }
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(traceId);
+        return new TraceContext(buf.getLong(), buf.getLong(),
+                spanId != null && spanId.length == 8 ? ByteBuffer.wrap(spanId).getLong() : 0,
+                flags != null && flags.length == 1 && (flags[0] & FLAG_SAMPLED) != 0,
+                baggage.isEmpty() ? baggage : Collections.unmodifiableMap(baggage));
+    }
+
+    /**
+     * 编码成附件，结果缓存下来，调用方不能修改
+     *
+     * @return 附件
+     */
+    public Attachments toAttachments() {
+        Attachments result = attachments;
+        if (result == null) {
+            result = new Attachments();
+            result.put(Attachments.TRACE_ID, ByteBuffer.allocate(16).putLong(traceIdHigh).putLong(traceIdLow).array());
+            if (spanId != 0) {
+                result.put(Attachments.SPAN_ID, ByteBuffer.allocate(8).putLong(spanId).array());
+            }
+            result.put(Attachments.TRACE_FLAGS, new byte[]{sampled ? FLAG_SAMPLED : 0});
+            for (Map.Entry<String, String> entry : baggage.entrySet()) {
+                result.add(Attachments.BAGGAGE, (entry.getKey() + "=" + entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            }
+            attachments = result;
+        }
+        return result;
+    }
+
+    /**
+     * trace ID
+     *
+     * @return 32 位十六进制
+     */
+    public String getTraceId() {
+        return hex(traceIdHigh) + hex(traceIdLow);
+    }
+
+    /**
+     * 当前 span ID
+     *
+     * @return 16 位十六进制，还没有 span 返回 null
+     */
+    public String getSpanId() {
+        return spanId == 0 ? null : hex(spanId);
+    }
+
+    long getSpanIdValue() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * baggage，只读
+     */
+    public Map<String, String> getBaggage() {
+        return baggage;
+    }
+
+    static String hex(long value) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return getTraceId() + "-" + (spanId == 0 ? "0" : hex(spanId)) + (sampled ? "-1" : "-0");
+    }
+}
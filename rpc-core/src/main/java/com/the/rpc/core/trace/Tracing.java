@@ -0,0 +1,206 @@
+package com.the.rpc.core.trace;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.extension.ExtensionLoader;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.protocol.Attachments;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 链路追踪入口。<br>
+ * 当前线程的 {@link TraceContext} 放在 {@link RpcContext} 里面：消费者发起调用的时候开始一个 CLIENT span，
+ * 请求带着它的上下文发给提供者；提供者执行的时候开始一个 SERVER span，执行期间发起的调用都是它的子 span。<br>
+ * 任意一个服务引用或者提供者配置了 trace=true 就对整个 JVM 开启。<br>
+ * 发起调用的时候只有开启了传递才把上下文和 baggage 作为附件带给下游：trace=true 自动开启，
+ * 只想把上下游的链路串起来、本身不产生 span 的服务配置 tracePropagate=true。都没有配置的时候请求不带附件
+ *
+ */
+public class Tracing {
+
+    private static volatile SpanExporter exporter;
+
+    /**
+     * 新建 trace 的采样率，下游跟随上游的采样结果
+     */
+    private static volatile double sampleRate;
+
+    /**
+     * 是否向下游传递链路上下文
+     */
+    private static volatile boolean propagating;
+
+    private Tracing() {
+    }
+
+    /**
+     * URL 配置了 trace=true 的时候开启链路追踪和上下文传递，配置了 tracePropagate=true 的时候只开启上下文传递，
+     * 已经开启的时候不做任何事
+     *
+     * @param url 服务引用或者提供者的 URL
+     */
+    public static synchronized void start(URL url) {
+        boolean trace = url.getBooleanParam(URLKeyConst.TRACE, false);
+        if (trace || url.getBooleanParam(URLKeyConst.TRACE_PROPAGATE, false)) {
+            propagating = true;
+        }
+        if (exporter != null || !trace) {
+            return;
+        }
+        String rate = url.getParam(URLKeyConst.TRACE_SAMPLE, null);
+        sampleRate = rate == null ? 1 : Double.parseDouble(rate);
+        SpanExporter spanExporter = ExtensionLoader.getLoader(SpanExporter.class).getExtension(url.getParam(URLKeyConst.TRACE_EXPORTER, null));
+        spanExporter.start(url);
+        exporter = spanExporter;
+    }
+
+    public static boolean isEnabled() {
+        return exporter != null;
+    }
+
+    /**
+     * 发起调用的时候是否把链路上下文带给下游
+     */
+    public static boolean isPropagating() {
+        return propagating;
+    }
+
+    /**
+     * 当前线程的链路追踪上下文
+     *
+     * @return 上下文，不在链路里面返回 null
+     */
+    public static TraceContext current() {
+        return RpcContext.getContext().getTraceContext();
+    }
+
+    /**
+     * 当前的 trace ID，用来打日志、关联业务数据
+     *
+     * @return 32 位十六进制，不在链路里面返回 null
+     */
+    public static String currentTraceId() {
+        TraceContext context = current();
+        return context == null ? null : context.getTraceId();
+    }
+
+    /**
+     * 获取 baggage
+     *
+     * @param key key
+     * @return 值，没有返回 null
+     */
+    public static String getBaggage(String key) {
+        TraceContext context = current();
+        return context == null ? null : context.getBaggage().get(key);
+    }
+
+    /**
+     * 所有 baggage，只读
+     */
+    public static Map<String, String> getBaggage() {
+        TraceContext context = current();
+        return context == null ? Map.of() : context.getBaggage();
+    }
+
+    /**
+     * 设置 baggage，开启了传递的时候之后在当前线程发起的调用都会带上，并且继续往下游传递。<br>
+     * 不在链路里面的时候新建一个 trace。key 和 value 编码成 UTF-8 的 key=value，一项不能超过 {@link Attachments#MAX_VALUE_LENGTH} 个字节，
+     * 超过的在这里直接拒绝，不会等到发起调用的时候才失败
+     *
+     * @param key   key，不能包含 =
+     * @param value 值，null 表示删除
+     * @throws IllegalArgumentException key 包含 = 或者编码之后太长
+     */
+    public static void setBaggage(String key, String value) {
+        if (key.indexOf('=') >= 0) {
+            throw new IllegalArgumentException("Baggage key can not contain '='. key=" + key);
+        }
+        if (value != null) {
+            int length = (key + "=" + value).getBytes(StandardCharsets.UTF_8).length;
+            if (length > Attachments.MAX_VALUE_LENGTH) {
+                throw new IllegalArgumentException("Baggage is too long. key=" + key + ", length=" + length + ", max=" + Attachments.MAX_VALUE_LENGTH);
+            }
+        }
+        TraceContext context = current();
+        if (context == null) {
+            context = TraceContext.newTrace(sample());
+        }
+        setCurrent(context.withBaggage(key, value));
+    }
+
+    /**
+     * 设置当前线程的上下文
+     *
+     * @param context 上下文，null 表示清除
+     */
+    public static void setCurrent(TraceContext context) {
+        RpcContext.getContext().setTraceContext(context);
+    }
+
+    /**
+     * 开始一个 CLIENT span，把当前上下文换成它的上下文
+     *
+     * @param method 调用的方法
+     * @return span，没有开启链路追踪返回 null
+     */
+    public static Span startClientSpan(MethodDescriptor method) {
+        if (exporter == null) {
+            return null;
+        }
+        TraceContext parent = current();
+        if (parent == null) {
+            parent = TraceContext.newTrace(sample());
+        }
+        return start(parent, Span.Kind.CLIENT, method);
+    }
+
+    /**
+     * 开始一个 SERVER span，把当前上下文换成它的上下文。没有开启链路追踪的时候只把上游的上下文设置成当前上下文
+     *
+     * @param method 执行的方法
+     * @param parent 请求带来的上下文，没有为 null
+     * @return span，没有开启链路追踪返回 null
+     */
+    public static Span startServerSpan(MethodDescriptor method, TraceContext parent) {
+        if (exporter == null) {
+            if (parent != null) {
+                setCurrent(parent);
+            }
+            return null;
+        }
+        return start(parent != null ? parent : TraceContext.newTrace(sample()), Span.Kind.SERVER, method);
+    }
+
+    /**
+     * 结束 span，采样的交给导出器，然后恢复原来的上下文
+     *
+     * @param span     span，可以为 null
+     * @param error    错误信息，成功为 null
+     * @param previous 开始 span 之前的上下文
+     */
+    public static void end(Span span, String error, TraceContext previous) {
+        if (span != null) {
+            span.end(error);
+            if (span.getContext().isSampled()) {
+                exporter.export(span);
+            }
+        }
+        setCurrent(previous);
+    }
+
+    private static Span start(TraceContext parent, Span.Kind kind, MethodDescriptor method) {
+        TraceContext context = parent.newSpan();
+        setCurrent(context);
+        return new Span(context, parent.getSpanIdValue(), kind, method.getService().getServiceKey(), method.getMethod().getName());
+    }
+
+    private static boolean sample() {
+        double rate = sampleRate;
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
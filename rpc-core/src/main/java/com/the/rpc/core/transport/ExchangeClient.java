@@ -0,0 +1,34 @@
+package com.the.rpc.core.transport;
+
+import com.the.rpc.core.protocol.RpcMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 请求响应式的客户端，和一个提供者地址通信。不同的传输方式各有一个实现
+ *
+ */
+public interface ExchangeClient {
+
+    /**
+     * 发送请求，会自动分配请求 ID
+     *
+     * @param msg 请求报文
+     * @return 响应报文
+     */
+    CompletableFuture<RpcMessage> send(RpcMessage msg);
+
+    /**
+     * 不再等待请求的响应
+     *
+     * @param requestId 请求 ID
+     */
+    void cancel(long requestId);
+
+    /**
+     * 连接是否可用
+     *
+     * @return true 表示可用
+     */
+    boolean isActive();
+}
@@ -0,0 +1,93 @@
+package com.the.rpc.core.transport;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.registry.Registry;
+import com.the.rpc.core.transport.netty.NettyServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 提供者优雅关闭，按下面的顺序进行，避免滚动发布的时候消费者报错和重试：
+ * <ol>
+ *     <li>从注册中心取消注册本机所有服务</li>
+ *     <li>等待一段时间让消费者感知到提供者下线，这段时间里面照常处理请求</li>
+ *     <li>停止监听，通知已有的连接不要发起新的调用</li>
+ *     <li>等待正在执行的请求结束，超过等待时间直接关闭</li>
+ * </ol>
+ * 框架里面没有提供者的启动入口，不会自动创建本类，由启动提供者的代码在服务端启动、服务注册之后安装：
+ * <pre>{@code
+ * ServiceRepository.export(DemoService.class, url, new DemoServiceImpl());
+ * NettyServer server = new NettyServer(url);
+ * server.start();
+ * registry.register(url);
+ * new GracefulShutdown(url, registry, server).install();
+ * }</pre>
+ * 不安装的时候进程退出直接断开连接，正在执行的请求和还没感知到下线的消费者会报错。
+ * 也可以不注册关闭钩子，由容器的停止回调直接调用 {@link #run()}
+ *
+ */
+@Slf4j
+public class GracefulShutdown implements Runnable {
+
+    /**
+     * 默认等待消费者感知的毫秒数
+     */
+    private static final long DEFAULT_WAIT_MS = 2_000;
+
+    /**
+     * 默认等待请求结束的毫秒数
+     */
+    private static final long DEFAULT_TIMEOUT_MS = 10_000;
+
+    private final Registry registry;
+
+    private final NettyServer server;
+
+    private final long waitMs;
+
+    private final long timeoutMs;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * @param url      提供者 URL，使用其中的关闭参数
+     * @param registry 注册中心
+     * @param server   服务端
+     */
+    public GracefulShutdown(URL url, Registry registry, NettyServer server) {
+        this.registry = registry;
+        this.server = server;
+        this.waitMs = url.getLongParam(URLKeyConst.SHUTDOWN_WAIT, DEFAULT_WAIT_MS);
+        this.timeoutMs = url.getLongParam(URLKeyConst.SHUTDOWN_TIMEOUT, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * 注册成 JVM 关闭钩子
+     */
+    public void install() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this, "the-rpc-shutdown"));
+    }
+
+    /**
+     * 执行关闭，只执行一次
+     */
+    @Override
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        log.info("graceful shutdown started. wait={}ms, timeout={}ms", waitMs, timeoutMs);
+        registry.unregisterAllMyService();
+        // 注册中心通知到消费者需要时间，在这之前消费者还会发来请求
+        try {
+            Thread.sleep(waitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.shutdown(timeoutMs);
+        log.info("graceful shutdown finished. cost={}ms", System.currentTimeMillis() - start);
+    }
+}
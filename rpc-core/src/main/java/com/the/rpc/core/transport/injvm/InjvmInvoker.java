@@ -0,0 +1,154 @@
+package com.the.rpc.core.transport.injvm;
+
+import com.the.rpc.common.consts.OverloadedException;
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.BatchInvoker;
+import com.the.rpc.core.invoke.CallType;
+import com.the.rpc.core.invoke.MethodInvoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.invoke.ServiceRepository;
+import com.the.rpc.core.limit.GradientLimiter;
+import com.the.rpc.core.protocol.RpcRequest;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.registry.AbstractRegistry;
+import com.the.rpc.core.serializer.Serializer;
+import com.the.rpc.core.trace.Span;
+import com.the.rpc.core.trace.TraceContext;
+import com.the.rpc.core.trace.Tracing;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 同一个 JVM 里面的调用器。提供者就在本机的时候，直接在调用线程里面执行 {@link ServiceRepository} 里面的调用器，
+ * 不经过编解码、序列化和网络。<br>
+ * 和远程调用保持一致的地方：提供者的过滤器和并发限制照常生效，截止时间照常传递，服务实现抛出的异常包装成 {@link RpcException}，
+ * 开启了链路追踪的时候在 CLIENT span 下面记录一个 SERVER span。<br>
+ * 不一样的地方：默认参数和返回值是同一个对象，调用双方修改了会互相影响，这种情况配置 injvmCopy=true 通过序列化复制一份；
+ * 调用在当前线程执行，超时时间只传给服务实现里面再发起的调用，不会中断正在执行的服务实现
+ *
+ */
+public class InjvmInvoker implements BatchInvoker {
+
+    /**
+     * 在异常里面代替提供者地址
+     */
+    private static final String ADDRESS = "injvm";
+
+    /**
+     * 不可变的返回值类型，复制的时候直接返回
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Boolean.class,
+            Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class));
+
+    /**
+     * 是否复制参数和返回值
+     */
+    private final boolean copy;
+
+    /**
+     * @param url 消费者 URL
+     */
+    public InjvmInvoker(URL url) {
+        this.copy = url.getBooleanParam(URLKeyConst.INJVM_COPY, false);
+    }
+
+    /**
+     * 找出本机的提供者。流式方法需要异步回调，还是走网络
+     *
+     * @param providers 所有提供者
+     * @param method    要调用的方法
+     * @return 本机的提供者，没有返回 null
+     */
+    public URL selectLocal(List<URL> providers, RemoteMethod method) {
+        if (method.getDescriptor().getCallType() != CallType.UNARY || ServiceRepository.getInvoker(method.getMethodId()) == null) {
+            return null;
+        }
+        for (URL provider : providers) {
+            if (AbstractRegistry.isMyService(provider)) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 直接调用本机的服务实现
+     *
+     * @throws OverloadedException 提供者过载，请求没有执行
+     */
+    @Override
+    public Object invoke(RemoteMethod method, Object[] args) {
+        MethodInvoker invoker = ServiceRepository.getInvoker(method.getMethodId());
+        if (invoker == null) {
+            throw new RpcException("Method not found. method=" + method + ", address=" + ADDRESS);
+        }
+        GradientLimiter limiter = ServiceRepository.getLimiter(method.getMethodId());
+        if (limiter != null && !limiter.tryAcquire()) {
+            throw new OverloadedException(ADDRESS);
+        }
+        RpcContext context = RpcContext.getContext();
+        long parent = context.getDeadline();
+        long now = System.currentTimeMillis();
+        long deadline = context.computeDeadline(now, method.getTimeout());
+        if (deadline <= now) {
+            if (limiter != null) {
+                limiter.releaseWithoutSample();
+            }
+            throw new RpcException("Deadline exceeded before sending. address=" + ADDRESS);
+        }
+        long start = System.nanoTime();
+        TraceContext previous = Tracing.current();
+        Span span = Tracing.startServerSpan(invoker.getDescriptor(), previous);
+        String error = null;
+        try {
+            context.setDeadline(deadline);
+            Object result = invoker.invoke(copy ? copyArgs(method.getSerializer(), args) : args);
+            return copy ? copyResult(method.getSerializer(), result) : result;
+        } catch (Throwable e) {
+            error = e.toString();
+            // 服务实现里面再发起的调用抛出的 RpcException 也要包装，避免被当成本机提供者过载去重试
+            throw new RpcException("Invoke fail. method=" + method + ", address=" + ADDRESS + ". " + e, e);
+        } finally {
+            Tracing.end(span, error, previous);
+            context.setDeadline(parent);
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 按顺序逐个调用，有一个失败就抛出异常，和远程的批量调用一致
+     */
+    @Override
+    public Object[] invokeBatch(RemoteMethod[] methods, Object[][] args) {
+        Object[] results = new Object[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            results[i] = invoke(methods[i], args[i]);
+        }
+        return results;
+    }
+
+    private static Object[] copyArgs(Serializer serializer, Object[] args) {
+        if (args == null || args.length == 0) {
+            return args;
+        }
+        return serializer.deserialize(serializer.serialize(new RpcRequest(args.clone())), RpcRequest.class).getArgs();
+    }
+
+    private static Object copyResult(Serializer serializer, Object result) {
+        if (result == null || result instanceof Enum || IMMUTABLE_TYPES.contains(result.getClass())) {
+            return result;
+        }
+        return serializer.deserialize(serializer.serialize(RpcResponse.success(result)), RpcResponse.class).getData();
+    }
+}
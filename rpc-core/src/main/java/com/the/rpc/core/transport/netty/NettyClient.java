@@ -0,0 +1,320 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.common.consts.RemotingException;
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.StreamObserver;
+import com.the.rpc.core.loadbalance.ProviderLoad;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.transport.ExchangeClient;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Netty 客户端，消费者和每个提供者地址保持一个连接。<br>
+ * 请求通过 {@link WriteQueue} 合并写，多个线程同时调用的时候一个事件循环周期只 flush 一次。<br>
+ * 收到提供者的 {@link ProtocolConst#GOAWAY} 之后连接不再可用，已经发出的调用照常等待响应，新的调用会重新建立连接
+ *
+ */
+@Slf4j
+public class NettyClient implements ExchangeClient {
+
+    /**
+     * 连接超时毫秒数
+     */
+    private static final int CONNECT_TIMEOUT_MS = 3_000;
+
+    /**
+     * 所有客户端共用的 IO 线程，第一次建立连接的时候按消费者 URL 创建
+     */
+    private static volatile EventLoopGroup group;
+
+    /**
+     * IO 线程是否使用 epoll，在 group 之前写入
+     */
+    private static boolean epoll;
+
+    /**
+     * 流式调用回调业务代码的线程池
+     */
+    private static final ExecutorService streamExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("the-rpc-client-stream", true));
+
+    /**
+     * 客户端缓存 {address: 客户端}
+     */
+    private static final Map<String, NettyClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 正在建立的连接 {address: 建立好的客户端}，同一个地址只有一个线程去连接，其他线程等它的结果
+     */
+    private static final Map<String, CompletableFuture<NettyClient>> connecting = new ConcurrentHashMap<>();
+
+    private final String address;
+
+    private final Channel channel;
+
+    private final WriteQueue writeQueue;
+
+    /**
+     * 还没有收到响应的请求 {requestId: 响应}
+     */
+    private final Map<Long, CompletableFuture<RpcMessage>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 还没有结束的流式调用 {requestId: 流}
+     */
+    private final Map<Long, RpcStream> streams = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+
+    /**
+     * 提供者是否正在关闭
+     */
+    private volatile boolean goingAway;
+
+    /**
+     * 提供者在同一台机器上并且注册了 Unix 域套接字的时候优先通过套接字连接，连接失败再用 TCP
+     *
+     * @param url      提供者 URL，使用其中的地址
+     * @param consumer 消费者 URL，使用其中的连接参数
+     */
+    private NettyClient(URL url, URL consumer) {
+        this.address = url.getAddress();
+        EventLoopGroup group = getGroup(consumer);
+        Channel connected = null;
+        String path = epoll ? NettyTransport.getUnixSocketPath(url, consumer) : null;
+        if (path != null) {
+            Bootstrap bootstrap = newBootstrap(group).channel(NettyTransport.domainChannelClass());
+            NettyTransport.applyDomainClientOptions(bootstrap, consumer);
+            ChannelFuture future = bootstrap.connect(new DomainSocketAddress(path)).awaitUninterruptibly();
+            if (future.isSuccess()) {
+                connected = future.channel();
+            } else {
+                log.warn("Connect unix socket fail, use tcp. address={}, path={}", address, path, future.cause());
+            }
+        }
+        if (connected == null) {
+            Bootstrap bootstrap = newBootstrap(group).channel(NettyTransport.socketChannelClass(epoll));
+            NettyTransport.applyClientOptions(bootstrap, consumer);
+            ChannelFuture future = bootstrap.connect(url.getHost(), url.getPort()).awaitUninterruptibly();
+            if (!future.isSuccess()) {
+                throw new RemotingException(address, "Connect fail. address=" + address, future.cause());
+            }
+            connected = future.channel();
+        }
+        this.channel = connected;
+        this.writeQueue = new WriteQueue(channel);
+        log.info("connected. address={}, channel={}", address, channel);
+    }
+
+    private Bootstrap newBootstrap(EventLoopGroup group) {
+        return new Bootstrap()
+                .group(group)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline()
+                                .addLast(new RpcMessageDecoder())
+                                .addLast(new RpcMessageEncoder())
+                                .addLast(new NettyClientHandler(NettyClient.this));
+                    }
+                });
+    }
+
+    /**
+     * 获取提供者地址对应的客户端，没有则创建。同一个地址的连接被多个引用共用，连接参数以第一个建立连接的引用为准。<br>
+     * 建立连接最长要等两个连接超时，不能在全局锁里面做，否则一个连不上的地址会卡住所有地址的调用。
+     * 同一个地址只有一个线程去连接，其他线程等它的结果
+     *
+     * @param url      提供者 URL
+     * @param consumer 消费者 URL
+     * @return 客户端
+     */
+    public static NettyClient getClient(URL url, URL consumer) {
+        String address = url.getAddress();
+        NettyClient client = clients.get(address);
+        if (client != null && client.isActive()) {
+            return client;
+        }
+        CompletableFuture<NettyClient> created = new CompletableFuture<>();
+        CompletableFuture<NettyClient> existing = connecting.putIfAbsent(address, created);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RemotingException(address, "Connect fail. address=" + address, cause);
+            }
+        }
+        try {
+            // 上一个连接的线程可能刚建好连接
+            client = clients.get(address);
+            if (client == null || !client.isActive()) {
+                client = new NettyClient(url, consumer);
+                clients.put(address, client);
+            }
+            created.complete(client);
+            return client;
+        } catch (Throwable e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            connecting.remove(address, created);
+        }
+    }
+
+    private static EventLoopGroup getGroup(URL consumer) {
+        EventLoopGroup current = group;
+        if (current != null) {
+            return current;
+        }
+        synchronized (NettyClient.class) {
+            if (group == null) {
+                epoll = NettyTransport.useEpoll(consumer);
+                group = NettyTransport.newEventLoopGroup(epoll, consumer.getIntParam(URLKeyConst.IO_THREADS, 0), "the-rpc-client");
+                log.info("client event loop created. epoll={}", epoll);
+            }
+            return group;
+        }
+    }
+
+    /**
+     * 发送请求，会自动分配请求 ID
+     *
+     * @param msg 请求报文
+     * @return 响应报文
+     */
+    @Override
+    public CompletableFuture<RpcMessage> send(RpcMessage msg) {
+        if (!isActive()) {
+            throw new RemotingException(address, "Channel is inactive. address=" + address);
+        }
+        long requestId = requestIdGenerator.incrementAndGet();
+        msg.setRequestId(requestId);
+        CompletableFuture<RpcMessage> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        writeQueue.enqueue(msg);
+        return future;
+    }
+
+    /**
+     * 发起流式调用，会自动分配请求 ID
+     *
+     * @param msg      流式调用的请求报文
+     * @param inbound  接收提供者消息的接收者
+     * @param outbound 是否还要向提供者发送消息，双向流为 true
+     * @return 流，双向流用它向提供者发送消息
+     */
+    public RpcStream openStream(RpcMessage msg, StreamObserver<Object> inbound, boolean outbound) {
+        if (!isActive()) {
+            throw new RemotingException(address, "Channel is inactive. address=" + address);
+        }
+        long requestId = requestIdGenerator.incrementAndGet();
+        msg.setRequestId(requestId);
+        RpcStream stream = new RpcStream(requestId, msg.getMethodId(), msg.getSerializeType(), channel, writeQueue,
+                streamExecutor, () -> streams.remove(requestId), outbound, true);
+        streams.put(requestId, stream);
+        writeQueue.enqueue(msg);
+        stream.setInbound(inbound);
+        return stream;
+    }
+
+    /**
+     * 请求超时等原因不再等待响应
+     *
+     * @param requestId 请求 ID
+     */
+    @Override
+    public void cancel(long requestId) {
+        pending.remove(requestId);
+    }
+
+    @Override
+    public boolean isActive() {
+        return !goingAway && channel.isActive();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * 关闭连接
+     */
+    public void close() {
+        clients.remove(address, this);
+        channel.close();
+    }
+
+    /**
+     * 收到响应
+     */
+    void received(RpcMessage msg) {
+        byte type = msg.getType();
+        if (type == ProtocolConst.GOAWAY) {
+            goingAway = true;
+            clients.remove(address, this);
+            log.info("provider is going away. address={}, pending={}, streams={}", address, pending.size(), streams.size());
+            return;
+        }
+        if (type == ProtocolConst.STREAM_DATA || type == ProtocolConst.STREAM_END || type == ProtocolConst.STREAM_CREDIT) {
+            RpcStream stream = streams.get(msg.getRequestId());
+            if (stream != null) {
+                stream.received(msg);
+            }
+            return;
+        }
+        CompletableFuture<RpcMessage> future = pending.remove(msg.getRequestId());
+        if (future != null) {
+            future.complete(msg);
+        }
+    }
+
+    /**
+     * 连接的可写状态变了
+     */
+    void writabilityChanged() {
+        if (channel.isWritable()) {
+            streams.values().forEach(RpcStream::writable);
+        }
+    }
+
+    /**
+     * 连接断开，所有等待中的请求和流都失败
+     */
+    void disconnected() {
+        clients.remove(address, this);
+        RemotingException e = new RemotingException(address, "Channel closed. address=" + address);
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<RpcMessage> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(e);
+            }
+        }
+        streams.values().forEach(RpcStream::channelClosed);
+        // 重连上的可能是重启过的提供者，之前的负载和预热进度不能再用
+        ProviderLoad.reset(address);
+        log.info("disconnected. address={}", address);
+    }
+}
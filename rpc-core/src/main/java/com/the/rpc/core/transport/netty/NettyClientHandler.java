@@ -0,0 +1,43 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 客户端处理器，收到响应后交给 {@link NettyClient} 唤醒等待的调用或者交给对应的流
+ *
+ */
+@Slf4j
+public class NettyClientHandler extends SimpleChannelInboundHandler<RpcMessage> {
+
+    private final NettyClient client;
+
+    public NettyClientHandler(NettyClient client) {
+        this.client = client;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, RpcMessage msg) {
+        client.received(msg);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        client.writabilityChanged();
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        client.disconnected();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("Channel exception, close it. channel={}", ctx.channel(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,275 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.common.consts.OverloadedException;
+import com.the.rpc.common.consts.RemotingException;
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.FlightRecorder;
+import com.the.rpc.core.invoke.BatchInvoker;
+import com.the.rpc.core.invoke.CallType;
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.invoke.StreamObserver;
+import com.the.rpc.core.loadbalance.ProviderLoad;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcBatchRequest;
+import com.the.rpc.core.protocol.RpcBatchResponse;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.protocol.RpcRequest;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.serializer.Serializer;
+import com.the.rpc.core.trace.TraceContext;
+import com.the.rpc.core.trace.Tracing;
+import com.the.rpc.core.transport.ExchangeClient;
+import com.the.rpc.core.transport.shm.ShmClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 基于 Netty 的调用器，把调用发送给一个提供者。<br>
+ * 提供者过载的时候抛出 {@link OverloadedException}，由上层换提供者重试
+ *
+ */
+public class NettyInvoker implements BatchInvoker {
+
+    /**
+     * 提供者 URL
+     */
+    private final URL url;
+
+    /**
+     * 消费者 URL，建立连接的时候使用其中的连接参数
+     */
+    private final URL consumer;
+
+    public NettyInvoker(URL url, URL consumer) {
+        this.url = url;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public Object invoke(RemoteMethod method, Object[] args) {
+        if (method.getDescriptor().getCallType() != CallType.UNARY) {
+            return invokeStream(method, args);
+        }
+        RpcMessage request = newRequest(method, args);
+        boolean success = false;
+        try {
+            Object result = getResult(method, send(request, method.getTimeout()));
+            success = true;
+            return result;
+        } finally {
+            FlightRecorder.end(request.getRecord(), success);
+        }
+    }
+
+    /**
+     * 异步调用，发送之后马上返回。<br>
+     * 返回的 future 被取消之后不再等待这个请求的响应，提供者那边靠报文头里面的截止时间结束。
+     * 调用记录在返回的 future 结束的时候结束，成功、失败、超时和取消都一样
+     *
+     * @param method   远程方法
+     * @param args     参数
+     * @param deadline 截止时间戳毫秒数
+     * @return 调用结果，提供者过载的时候以 {@link OverloadedException} 结束
+     */
+    public CompletableFuture<Object> invokeAsync(RemoteMethod method, Object[] args, long deadline) {
+        RpcMessage request = newRequest(method, args);
+        request.setDeadline(deadline);
+        ExchangeClient client;
+        CompletableFuture<RpcMessage> future;
+        try {
+            client = getExchangeClient(request);
+            future = client.send(request);
+        } catch (RuntimeException e) {
+            FlightRecorder.end(request.getRecord(), false);
+            throw e;
+        }
+        long requestId = request.getRequestId();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+            if (e != null) {
+                result.completeExceptionally(new RemotingException(url.getAddress(), "Invoke fail. address=" + url.getAddress(), e));
+                return;
+            }
+            FlightRecorder.stamp(request.getRecord(), FlightRecorder.CONSUMER_RECEIVED, response.getReceivedNanos());
+            ProviderLoad.onResponse(url.getAddress(), response.getAttachments());
+            try {
+                if (response.getStatus() == ProtocolConst.STATUS_OVERLOADED) {
+                    throw new OverloadedException(url.getAddress());
+                }
+                result.complete(getResult(method, response));
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            FlightRecorder.end(request.getRecord(), e == null);
+            if (result.isCancelled()) {
+                client.cancel(requestId);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 流式调用。{@link StreamObserver} 参数不发送，留在本地接收提供者的消息。<br>
+     * 流式调用持续的时间不确定，不使用调用超时，只传递上下文里面继承的截止时间
+     *
+     * @return 双向流返回向提供者发送消息的流，服务端流返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private Object invokeStream(RemoteMethod method, Object[] args) {
+        MethodDescriptor descriptor = method.getDescriptor();
+        Object[] sendArgs = args.clone();
+        StreamObserver<Object> inbound = (StreamObserver<Object>) sendArgs[descriptor.getStreamIndex()];
+        if (inbound == null) {
+            throw new IllegalArgumentException("StreamObserver can not be null. method=" + method);
+        }
+        sendArgs[descriptor.getStreamIndex()] = null;
+        byte[] body = method.getSerializer().serialize(new RpcRequest(sendArgs));
+        RpcMessage request = new RpcMessage(ProtocolConst.STREAM_REQUEST, method.getSerializeType(),
+                ProtocolConst.STATUS_OK, 0, method.getMethodId(), RpcContext.getContext().getDeadline(), body);
+        attachTraceContext(request);
+        boolean bidi = descriptor.getCallType() == CallType.BIDI_STREAM;
+        RpcStream stream = NettyClient.getClient(url, consumer).openStream(request, inbound, bidi);
+        return bidi ? stream : null;
+    }
+
+    /**
+     * 批量调用，所有调用放到一个报文里面，统一使用第一个方法的序列化方式，超时时间取最大的
+     */
+    @Override
+    public Object[] invokeBatch(RemoteMethod[] methods, Object[][] args) {
+        if (methods.length == 0) {
+            return new Object[0];
+        }
+        long[] methodIds = new long[methods.length];
+        RpcRequest[] requests = new RpcRequest[methods.length];
+        int timeout = 0;
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].getDescriptor().getCallType() != CallType.UNARY) {
+                throw new RpcException("Streaming method can not be batched. method=" + methods[i]);
+            }
+            methodIds[i] = methods[i].getMethodId();
+            requests[i] = new RpcRequest(args[i]);
+            timeout = Math.max(timeout, methods[i].getTimeout());
+        }
+        Serializer serializer = methods[0].getSerializer();
+        byte[] body = RpcBatchRequest.encode(methodIds, serializer.serialize(new RpcBatchRequest(requests)));
+        RpcMessage request = new RpcMessage(ProtocolConst.BATCH_REQUEST, methods[0].getSerializeType(),
+                ProtocolConst.STATUS_OK, 0, 0, 0, body);
+        attachTraceContext(request);
+        RpcMessage response = send(request, timeout);
+        if (response.getStatus() != ProtocolConst.STATUS_OK) {
+            throw new RpcException("Batch invoke fail. address=" + url.getAddress() + ". "
+                    + deserializeResponse(serializer, response).getError());
+        }
+        RpcResponse[] responses = serializer.deserialize(response.getBody(), RpcBatchResponse.class).getResponses();
+        Object[] results = new Object[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            if (responses[i].getError() != null) {
+                throw new RpcException("Invoke fail. method=" + methods[i] + ", address=" + url.getAddress() + ". " + responses[i].getError());
+            }
+            results[i] = responses[i].getData();
+        }
+        return results;
+    }
+
+    /**
+     * 发送请求并等待响应。<br>
+     * 截止时间取调用超时和上下文里面继承的截止时间中先到的那个，放到报文头里面传给提供者
+     *
+     * @throws OverloadedException 提供者过载，请求没有执行
+     */
+    private RpcMessage send(RpcMessage request, int timeout) {
+        long now = System.currentTimeMillis();
+        long deadline = RpcContext.getContext().computeDeadline(now, timeout);
+        long remaining = deadline - now;
+        if (remaining <= 0) {
+            throw new RpcException("Deadline exceeded before sending. address=" + url.getAddress());
+        }
+        request.setDeadline(deadline);
+        ExchangeClient client = getExchangeClient(request);
+        CompletableFuture<RpcMessage> future = client.send(request);
+        RpcMessage response;
+        try {
+            response = future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            client.cancel(request.getRequestId());
+            throw new RemotingException(url.getAddress(), "Invoke timeout. address=" + url.getAddress() + ", timeout=" + remaining + "ms");
+        } catch (ExecutionException e) {
+            throw new RemotingException(url.getAddress(), "Invoke fail. address=" + url.getAddress(), e.getCause());
+        } catch (InterruptedException e) {
+            client.cancel(request.getRequestId());
+            Thread.currentThread().interrupt();
+            throw new RpcException("Invoke interrupted. address=" + url.getAddress(), e);
+        }
+        FlightRecorder.stamp(request.getRecord(), FlightRecorder.CONSUMER_RECEIVED, response.getReceivedNanos());
+        ProviderLoad.onResponse(url.getAddress(), response.getAttachments());
+        if (response.getStatus() == ProtocolConst.STATUS_OVERLOADED) {
+            throw new OverloadedException(url.getAddress());
+        }
+        return response;
+    }
+
+    /**
+     * 普通请求优先通过共享内存发送，提供者没有开启或者连接不上的时候走 Netty
+     */
+    private ExchangeClient getExchangeClient(RpcMessage request) {
+        if (request.getType() == ProtocolConst.REQUEST) {
+            ShmClient shm = ShmClient.getClient(url, consumer);
+            if (shm != null) {
+                return shm;
+            }
+        }
+        return NettyClient.getClient(url, consumer);
+    }
+
+    private static RpcMessage newRequest(RemoteMethod method, Object[] args) {
+        long record = FlightRecorder.begin(FlightRecorder.CONSUMER, method.getMethodId(), 0, System.nanoTime());
+        byte[] body = method.getSerializer().serialize(new RpcRequest(args));
+        FlightRecorder.stamp(record, FlightRecorder.CONSUMER_SERIALIZED, System.nanoTime());
+        method.getMetrics().recordRequestSize(body.length);
+        RpcMessage request = new RpcMessage(ProtocolConst.REQUEST, method.getSerializeType(),
+                ProtocolConst.STATUS_OK, 0, method.getMethodId(), 0, body);
+        request.setRecord(record);
+        attachTraceContext(request);
+        return request;
+    }
+
+    /**
+     * 开启了上下文传递并且当前线程在链路里面的时候，把链路上下文作为附件带给提供者
+     */
+    private static void attachTraceContext(RpcMessage request) {
+        if (!Tracing.isPropagating()) {
+            return;
+        }
+        TraceContext context = Tracing.current();
+        if (context != null) {
+            request.setAttachments(context.toAttachments());
+        }
+    }
+
+    private Object getResult(RemoteMethod method, RpcMessage response) {
+        method.getMetrics().recordResponseSize(response.getBody() == null ? 0 : response.getBody().length);
+        RpcResponse result = deserializeResponse(method.getSerializer(), response);
+        if (result.getError() != null) {
+            throw new RpcException("Invoke fail. method=" + method + ", address=" + url.getAddress() + ". " + result.getError());
+        }
+        return result.getData();
+    }
+
+    private RpcResponse deserializeResponse(Serializer serializer, RpcMessage response) {
+        byte[] body = response.getBody();
+        if (body == null || body.length == 0) {
+            return response.getStatus() == ProtocolConst.STATUS_OK
+                    ? RpcResponse.success(null) : RpcResponse.fail("Provider returns an empty error response.");
+        }
+        return serializer.deserialize(body, RpcResponse.class);
+    }
+}
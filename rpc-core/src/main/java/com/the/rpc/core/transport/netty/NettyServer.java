@@ -0,0 +1,265 @@
+package com.the.rpc.core.transport.netty;
+
+import cn.hutool.core.io.FileUtil;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.AdminServer;
+import com.the.rpc.core.loadbalance.LoadReporter;
+import com.the.rpc.core.trace.Tracing;
+import com.the.rpc.core.transport.shm.ShmServer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Netty 服务端，提供者用来接收请求
+ *
+ */
+@Slf4j
+public class NettyServer {
+
+    /**
+     * 默认业务线程数
+     */
+    private static final int DEFAULT_THREADS = 200;
+
+    /**
+     * 默认流式调用的最大线程数
+     */
+    private static final int DEFAULT_STREAM_THREADS = 200;
+
+    /**
+     * 流式调用空闲线程的存活时间
+     */
+    private static final long STREAM_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * 优雅关闭时检查请求是否执行完的间隔
+     */
+    private static final long DRAIN_INTERVAL_MS = 10;
+
+    /**
+     * 检查 Unix 域套接字有没有被占用的连接超时毫秒数
+     */
+    private static final int SOCKET_PROBE_TIMEOUT_MS = 1_000;
+
+    private final URL url;
+
+    /**
+     * 是否使用 epoll
+     */
+    private final boolean epoll;
+
+    private final EventLoopGroup bossGroup;
+
+    private final EventLoopGroup workerGroup;
+
+    /**
+     * 业务线程池
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 流式调用的线程池。流式调用会一直占着线程直到流结束，和普通调用分开，线程用完之后新的流直接失败，不排队
+     */
+    private final ThreadPoolExecutor streamExecutor;
+
+    /**
+     * 消费者的连接，关闭的时候通知它们
+     */
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    private Channel channel;
+
+    /**
+     * Unix 域套接字的监听连接，没有配置为 null
+     */
+    private Channel domainChannel;
+
+    /**
+     * 共享内存服务端，没有配置为 null
+     */
+    private ShmServer shmServer;
+
+    /**
+     * @param url 提供者的 URL，使用其中的端口、线程数和连接参数
+     */
+    public NettyServer(URL url) {
+        this.url = url;
+        AdminServer.start(url);
+        Tracing.start(url);
+        this.epoll = NettyTransport.useEpoll(url);
+        this.bossGroup = NettyTransport.newEventLoopGroup(epoll, 1, "the-rpc-server-boss");
+        this.workerGroup = NettyTransport.newEventLoopGroup(epoll, url.getIntParam(URLKeyConst.IO_THREADS, 0), "the-rpc-server-worker");
+        int threads = url.getIntParam(URLKeyConst.THREADS, DEFAULT_THREADS);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new DefaultThreadFactory("the-rpc-server-handler"));
+        streamExecutor = new ThreadPoolExecutor(0, url.getIntParam(URLKeyConst.STREAM_THREADS, DEFAULT_STREAM_THREADS),
+                STREAM_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), new DefaultThreadFactory("the-rpc-server-stream"));
+        LoadReporter.start(url, executor);
+    }
+
+    /**
+     * 启动服务端，绑定端口。配置了共享内存目录的时候同时接受共享内存连接，配置了 Unix 域套接字并且 epoll 可用的时候，同时监听套接字路径。<br>
+     * 套接字路径已经有别的进程在监听的时候启动失败，不会抢走它的套接字，否则按路径连接的消费者会连到错误的提供者上
+     */
+    public void start() {
+        String path = url.getParam(URLKeyConst.UNIX_SOCKET, null);
+        if (path != null && epoll && FileUtil.exist(path) && isListening(path)) {
+            throw new IllegalStateException("Unix socket is in use by another process. path=" + path);
+        }
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NettyTransport.serverChannelClass(epoll))
+                .childHandler(newChannelInitializer());
+        NettyTransport.applyServerOptions(bootstrap, url);
+        channel = bootstrap.bind(url.getPort()).syncUninterruptibly().channel();
+        log.info("server started. port={}, epoll={}", url.getPort(), epoll);
+        if (url.getParam(URLKeyConst.SHM, null) != null) {
+            shmServer = new ShmServer(url, executor);
+            shmServer.start();
+        }
+        if (path == null) {
+            return;
+        }
+        if (!epoll) {
+            log.warn("Unix socket requires epoll, ignore it. path={}", path);
+            return;
+        }
+        // 上次没有正常关闭留下的套接字文件会导致绑定失败
+        FileUtil.del(path);
+        ServerBootstrap domainBootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NettyTransport.serverDomainChannelClass())
+                .childHandler(newChannelInitializer());
+        NettyTransport.applyDomainServerOptions(domainBootstrap, url);
+        domainChannel = domainBootstrap.bind(new DomainSocketAddress(path)).syncUninterruptibly().channel();
+        log.info("server listening on unix socket. path={}", path);
+    }
+
+    /**
+     * 套接字路径上是否有进程在监听。连接被拒绝说明是上次没有正常关闭留下的文件
+     */
+    private boolean isListening(String path) {
+        ChannelFuture future = new Bootstrap()
+                .group(workerGroup)
+                .channel(NettyTransport.domainChannelClass())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, SOCKET_PROBE_TIMEOUT_MS)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(new DomainSocketAddress(path))
+                .awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            return false;
+        }
+        future.channel().close().awaitUninterruptibly();
+        return true;
+    }
+
+    private ChannelInitializer<Channel> newChannelInitializer() {
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                channels.add(ch);
+                ch.pipeline()
+                        .addLast(new RpcMessageDecoder())
+                        .addLast(new RpcMessageEncoder())
+                        .addLast(new NettyServerHandler(executor, streamExecutor));
+            }
+        };
+    }
+
+    /**
+     * 优雅关闭。先停止监听，不再接受新的连接，再通知已有的连接不要发起新的调用，
+     * 等正在执行的请求和流式调用都结束之后关闭。超过等待时间还没有结束的直接关闭连接
+     *
+     * @param timeoutMs 最多等待的毫秒数
+     */
+    public void shutdown(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        closeListeners();
+        for (Channel ch : channels) {
+            NettyServerHandler handler = ch.pipeline().get(NettyServerHandler.class);
+            if (handler != null) {
+                handler.goAway();
+            }
+        }
+        if (shmServer != null) {
+            shmServer.goAway();
+        }
+        log.info("server draining. port={}, connections={}", url.getPort(), channels.size());
+        while (!isDrained()) {
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("Drain timeout, close with requests in flight. port={}, active={}, queued={}",
+                        url.getPort(), executor.getActiveCount(), executor.getQueue().size());
+                break;
+            }
+            try {
+                Thread.sleep(DRAIN_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        close();
+    }
+
+    /**
+     * 业务线程池里面没有请求，也没有还在进行的流式调用
+     */
+    private boolean isDrained() {
+        if (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()) {
+            return false;
+        }
+        for (Channel ch : channels) {
+            NettyServerHandler handler = ch.pipeline().get(NettyServerHandler.class);
+            if (handler != null && handler.hasStreams()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 关闭服务端。正在执行的请求不再等待，连接直接关闭
+     */
+    public void close() {
+        closeListeners();
+        if (shmServer != null) {
+            shmServer.close();
+        }
+        // 之前写入的响应在 IO 线程里面排在关闭前面，会先发出去
+        channels.close().awaitUninterruptibly();
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+        executor.shutdown();
+        streamExecutor.shutdown();
+        LoadReporter.remove(executor);
+        log.info("server closed. port={}", url.getPort());
+    }
+
+    private void closeListeners() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+        }
+        if (domainChannel != null) {
+            domainChannel.close().syncUninterruptibly();
+            FileUtil.del(url.getParam(URLKeyConst.UNIX_SOCKET, null));
+        }
+    }
+}
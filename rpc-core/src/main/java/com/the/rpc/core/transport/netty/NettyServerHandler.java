@@ -0,0 +1,479 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.core.invoke.CallType;
+import com.the.rpc.core.invoke.MethodDescriptor;
+import com.the.rpc.core.invoke.MethodInvoker;
+import com.the.rpc.core.diagnostics.FlightRecorder;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.invoke.ServiceRepository;
+import com.the.rpc.core.invoke.StreamObserver;
+import com.the.rpc.core.limit.GradientLimiter;
+import com.the.rpc.core.loadbalance.LoadReporter;
+import com.the.rpc.core.metrics.Histogram;
+import com.the.rpc.core.metrics.MethodMetrics;
+import com.the.rpc.core.metrics.Metrics;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcBatchRequest;
+import com.the.rpc.core.protocol.RpcBatchResponse;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.protocol.RpcRequest;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.serializer.SerializeType;
+import com.the.rpc.core.serializer.Serializer;
+import com.the.rpc.core.trace.TraceContext;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 服务端处理器，每个连接一个实例。<br>
+ * IO 线程只做解码和并发限制，反序列化和调用都放到业务线程池里面，响应通过 {@link WriteQueue} 合并写回。<br>
+ * 超过并发限制的请求在 IO 线程直接返回过载响应，不反序列化报文体，也不进线程池排队。
+ * 批量请求在 IO 线程从报文体的前缀读出每个调用的 methodId，逐个获取许可，有一个获取不到就整个批量返回过载。<br>
+ * 报文头里面的序列化方式在获取许可之前检查，不认识的直接回复错误，不占用许可。<br>
+ * 已经过了截止时间的请求消费者不会再等，收到时和执行前各检查一次，过期直接丢弃。<br>
+ * 流式调用不经过并发限制，它的执行时间不能反映提供者的负载，在单独的线程池里面执行，慢的流不会占满普通调用的线程；
+ * 流里面的后续报文在 IO 线程直接交给对应的 {@link RpcStream}<br>
+ * 提供者关闭的时候先发送 {@link ProtocolConst#GOAWAY}，之后收到的新调用返回过载，让消费者换提供者重试，已经开始的调用照常执行<br>
+ * 普通请求从收到到写出响应的各阶段时间点记录到 {@link FlightRecorder}，开启了负载上报的时候响应（包括过载和批量响应）带上 {@link LoadReporter} 的负载
+ *
+ */
+@Slf4j
+public class NettyServerHandler extends SimpleChannelInboundHandler<RpcMessage> {
+
+    /**
+     * 普通请求从 IO 线程收到到业务线程开始处理的等待时间
+     */
+    private static final Histogram QUEUE_WAIT = Metrics.latency("rpc_provider_queue_wait_seconds",
+            "Time a request waits for a business thread.");
+
+    /**
+     * 业务线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 流式调用的线程池，执行服务实现和回调接收者
+     */
+    private final Executor streamExecutor;
+
+    private Channel channel;
+
+    private WriteQueue writeQueue;
+
+    /**
+     * 还没有结束的流式调用 {requestId: 流}
+     */
+    private final Map<Long, RpcStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 提供者是否正在关闭
+     */
+    private volatile boolean closing;
+
+    /**
+     * 这个连接上最近一次带上的负载版本号，见 {@link LoadReporter}
+     */
+    private volatile int loadVersion;
+
+    public NettyServerHandler(Executor executor, Executor streamExecutor) {
+        this.executor = executor;
+        this.streamExecutor = streamExecutor;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        channel = ctx.channel();
+        writeQueue = new WriteQueue(channel);
+        if (closing) {
+            sendGoAway();
+        }
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (channel.isWritable()) {
+            streams.values().forEach(RpcStream::writable);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        streams.values().forEach(RpcStream::channelClosed);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, RpcMessage msg) {
+        if (isExpired(msg.getDeadline())) {
+            log.debug("Drop expired request. requestId={}, methodId={}", msg.getRequestId(), msg.getMethodId());
+            return;
+        }
+        Serializer serializer = null;
+        if (msg.getType() == ProtocolConst.REQUEST || msg.getType() == ProtocolConst.BATCH_REQUEST
+                || msg.getType() == ProtocolConst.STREAM_REQUEST) {
+            serializer = getSerializer(msg);
+            if (serializer == null) {
+                return;
+            }
+        }
+        if (closing && rejectClosing(msg, serializer)) {
+            return;
+        }
+        Runnable task;
+        GradientLimiter limiter = null;
+        GradientLimiter[] batchLimiters = null;
+        if (msg.getType() == ProtocolConst.REQUEST) {
+            limiter = ServiceRepository.getLimiter(msg.getMethodId());
+            if (limiter != null && !limiter.tryAcquire()) {
+                reply(msg, ProtocolConst.STATUS_OVERLOADED, null);
+                return;
+            }
+            GradientLimiter acquired = limiter;
+            Serializer requestSerializer = serializer;
+            long start = System.nanoTime();
+            task = () -> handleRequest(msg, requestSerializer, acquired, start);
+        } else if (msg.getType() == ProtocolConst.BATCH_REQUEST) {
+            long[] methodIds;
+            try {
+                methodIds = RpcBatchRequest.readMethodIds(msg.getBody());
+            } catch (IllegalArgumentException e) {
+                reply(msg, ProtocolConst.STATUS_ERROR, serializer.serialize(RpcResponse.fail(e.toString())));
+                return;
+            }
+            batchLimiters = acquireAll(methodIds);
+            if (batchLimiters == null) {
+                reply(msg, ProtocolConst.STATUS_OVERLOADED, null);
+                return;
+            }
+            GradientLimiter[] acquired = batchLimiters;
+            Serializer batchSerializer = serializer;
+            long start = System.nanoTime();
+            task = () -> handleBatchRequest(msg, batchSerializer, methodIds, acquired, start);
+        } else if (msg.getType() == ProtocolConst.STREAM_REQUEST) {
+            // 在 IO 线程登记流，保证消费者紧接着发送的消息能找到它
+            RpcStream stream = openStream(msg, serializer);
+            if (stream == null) {
+                return;
+            }
+            Serializer streamSerializer = serializer;
+            task = () -> handleStreamRequest(msg, streamSerializer, stream);
+        } else if (msg.getType() == ProtocolConst.STREAM_DATA || msg.getType() == ProtocolConst.STREAM_END
+                || msg.getType() == ProtocolConst.STREAM_CREDIT) {
+            RpcStream stream = streams.get(msg.getRequestId());
+            if (stream != null) {
+                stream.received(msg);
+            }
+            return;
+        } else {
+            log.warn("Unknown message type. type={}, channel={}", msg.getType(), ctx.channel());
+            return;
+        }
+        try {
+            (msg.getType() == ProtocolConst.STREAM_REQUEST ? streamExecutor : executor).execute(task);
+        } catch (RejectedExecutionException e) {
+            if (limiter != null) {
+                limiter.releaseWithoutSample();
+            }
+            if (batchLimiters != null) {
+                releaseAll(batchLimiters, 0);
+            }
+            RpcStream stream = msg.getType() == ProtocolConst.STREAM_REQUEST ? streams.get(msg.getRequestId()) : null;
+            if (stream != null) {
+                stream.abort(new RpcException("Provider stream threads are exhausted. methodId=" + msg.getMethodId()));
+            } else {
+                reply(msg, ProtocolConst.STATUS_ERROR, null);
+            }
+        }
+    }
+
+    /**
+     * 提供者开始关闭，通知消费者不要在这个连接上发起新的调用
+     */
+    void goAway() {
+        closing = true;
+        if (writeQueue != null) {
+            sendGoAway();
+        }
+    }
+
+    /**
+     * 是否还有没有结束的流式调用
+     */
+    boolean hasStreams() {
+        return !streams.isEmpty();
+    }
+
+    private void sendGoAway() {
+        writeQueue.enqueue(new RpcMessage(ProtocolConst.GOAWAY, (byte) 0, ProtocolConst.STATUS_OK, 0, 0, 0, null));
+    }
+
+    /**
+     * 提供者关闭过程中拒绝新的调用。消费者可能还没有收到 {@link ProtocolConst#GOAWAY} 就发出了请求，
+     * 普通请求和批量请求返回过载，消费者会换提供者重试；流式调用直接失败
+     *
+     * @return true 表示是新的调用，已经拒绝
+     */
+    private boolean rejectClosing(RpcMessage msg, Serializer serializer) {
+        if (msg.getType() == ProtocolConst.REQUEST || msg.getType() == ProtocolConst.BATCH_REQUEST) {
+            reply(msg, ProtocolConst.STATUS_OVERLOADED, null);
+            return true;
+        }
+        if (msg.getType() == ProtocolConst.STREAM_REQUEST) {
+            writeQueue.enqueue(new RpcMessage(ProtocolConst.STREAM_END, msg.getSerializeType(), ProtocolConst.STATUS_ERROR,
+                    msg.getRequestId(), msg.getMethodId(), 0, serializer.serialize(RpcResponse.fail("Provider is shutting down"))));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("Channel exception, close it. channel={}", ctx.channel(), cause);
+        ctx.close();
+    }
+
+    /**
+     * 找到报文头里面的序列化方式对应的序列化器。找不到的时候用默认的序列化器回复错误，调用方不会一直等到超时
+     *
+     * @return 序列化器，找不到的时候已经回复了错误，返回 null
+     */
+    private Serializer getSerializer(RpcMessage msg) {
+        try {
+            return SerializeType.getSerializer(msg.getSerializeType());
+        } catch (IllegalArgumentException e) {
+            log.warn("Reject request. requestId={}, methodId={}, {}", msg.getRequestId(), msg.getMethodId(), e.getMessage());
+            byte fallback = SerializeType.PROTOSTUFF.getCode();
+            byte[] body = SerializeType.getSerializer(fallback).serialize(RpcResponse.fail(e.getMessage()));
+            RpcMessage response;
+            if (msg.getType() == ProtocolConst.STREAM_REQUEST) {
+                response = new RpcMessage(ProtocolConst.STREAM_END, fallback, ProtocolConst.STATUS_ERROR,
+                        msg.getRequestId(), msg.getMethodId(), 0, body);
+            } else {
+                response = newReply(msg, ProtocolConst.STATUS_ERROR, body);
+                response.setSerializeType(fallback);
+                attachLoad(response);
+            }
+            writeQueue.enqueue(response);
+            return null;
+        }
+    }
+
+    /**
+     * 处理单个请求
+     *
+     * @param serializer 报文头里面的序列化方式对应的序列化器
+     * @param limiter    已经获取许可的并发限制器，没有开启限制为 null
+     * @param start      获取许可的时间
+     */
+    private void handleRequest(RpcMessage msg, Serializer serializer, GradientLimiter limiter, long start) {
+        // 在线程池里面排队的时候过期了
+        if (isExpired(msg.getDeadline())) {
+            if (limiter != null) {
+                limiter.releaseWithoutSample();
+            }
+            log.debug("Drop expired request. requestId={}, methodId={}", msg.getRequestId(), msg.getMethodId());
+            return;
+        }
+        long executeStart = System.nanoTime();
+        QUEUE_WAIT.record(executeStart - start);
+        long record = FlightRecorder.begin(FlightRecorder.PROVIDER, msg.getMethodId(), msg.getRequestId(), msg.getReceivedNanos());
+        FlightRecorder.stamp(record, FlightRecorder.PROVIDER_EXECUTE_START, executeStart);
+        MethodMetrics metrics = ServiceRepository.getMetrics(msg.getMethodId());
+        RpcContext context = RpcContext.getContext();
+        context.setDeadline(msg.getDeadline());
+        RpcResponse response;
+        try {
+            RpcRequest request = serializer.deserialize(msg.getBody(), RpcRequest.class);
+            response = ServiceRepository.invoke(msg.getMethodId(), request, msg.getAttachments());
+        } catch (Exception e) {
+            response = RpcResponse.fail(e.toString());
+        } finally {
+            context.setDeadline(0);
+            long executeEnd = System.nanoTime();
+            FlightRecorder.stamp(record, FlightRecorder.PROVIDER_EXECUTE_END, executeEnd);
+            if (limiter != null) {
+                limiter.release(executeEnd - start);
+            }
+        }
+        byte status = response.getError() == null ? ProtocolConst.STATUS_OK : ProtocolConst.STATUS_ERROR;
+        byte[] body = serializer.serialize(response);
+        FlightRecorder.stamp(record, FlightRecorder.PROVIDER_SERIALIZED, System.nanoTime());
+        if (metrics != null) {
+            metrics.recordRequestSize(msg.getBody() == null ? 0 : msg.getBody().length);
+            metrics.recordResponseSize(body.length);
+        }
+        RpcMessage responseMessage = newReply(msg, status, body);
+        responseMessage.setRecord(record);
+        attachLoad(responseMessage);
+        writeQueue.enqueue(responseMessage);
+    }
+
+    /**
+     * 处理批量请求，按顺序执行，单个调用失败不影响其他调用。执行中途过期则丢弃整个批量。<br>
+     * 每个调用执行完就释放自己的许可，耗时按排队时间加上自己的执行时间计算，不算前面调用的执行时间
+     *
+     * @param serializer 报文头里面的序列化方式对应的序列化器
+     * @param methodIds  报文体前缀里面每个调用的方法 ID
+     * @param limiters   每个调用已经获取许可的并发限制器，没有开启限制的为 null
+     * @param start      获取许可的时间
+     */
+    private void handleBatchRequest(RpcMessage msg, Serializer serializer, long[] methodIds, GradientLimiter[] limiters, long start) {
+        RpcContext context = RpcContext.getContext();
+        context.setDeadline(msg.getDeadline());
+        int next = 0;
+        byte[] body;
+        try {
+            long queueWait = System.nanoTime() - start;
+            RpcRequest[] requests = serializer.deserialize(RpcBatchRequest.readRequests(msg.getBody()), RpcBatchRequest.class).getRequests();
+            if (requests == null || requests.length != methodIds.length) {
+                throw new IllegalArgumentException("Batch request count mismatch. methodIds=" + methodIds.length);
+            }
+            RpcResponse[] responses = new RpcResponse[methodIds.length];
+            for (; next < methodIds.length; next++) {
+                if (isExpired(msg.getDeadline())) {
+                    log.debug("Drop expired batch request. requestId={}", msg.getRequestId());
+                    return;
+                }
+                long executeStart = System.nanoTime();
+                responses[next] = ServiceRepository.invoke(methodIds[next], requests[next], msg.getAttachments());
+                if (limiters[next] != null) {
+                    limiters[next].release(queueWait + System.nanoTime() - executeStart);
+                }
+            }
+            body = serializer.serialize(new RpcBatchResponse(responses));
+        } catch (Exception e) {
+            reply(msg, ProtocolConst.STATUS_ERROR, serializer.serialize(RpcResponse.fail(e.toString())));
+            return;
+        } finally {
+            context.setDeadline(0);
+            releaseAll(limiters, next);
+        }
+        reply(msg, ProtocolConst.STATUS_OK, body);
+    }
+
+    /**
+     * 登记流式调用
+     *
+     * @return 流，方法不存在或者不是流式方法的时候返回 null，已经回复了错误
+     */
+    private RpcStream openStream(RpcMessage msg, Serializer serializer) {
+        MethodInvoker invoker = ServiceRepository.getInvoker(msg.getMethodId());
+        if (invoker == null || invoker.getDescriptor().getCallType() == CallType.UNARY) {
+            writeQueue.enqueue(new RpcMessage(ProtocolConst.STREAM_END, msg.getSerializeType(), ProtocolConst.STATUS_ERROR,
+                    msg.getRequestId(), msg.getMethodId(), 0,
+                    serializer.serialize(RpcResponse.fail("Streaming method not found. methodId=" + msg.getMethodId()))));
+            return null;
+        }
+        boolean bidi = invoker.getDescriptor().getCallType() == CallType.BIDI_STREAM;
+        long requestId = msg.getRequestId();
+        RpcStream stream = new RpcStream(requestId, msg.getMethodId(), msg.getSerializeType(), channel, writeQueue,
+                streamExecutor, () -> streams.remove(requestId), true, bidi);
+        streams.put(requestId, stream);
+        return stream;
+    }
+
+    /**
+     * 处理流式调用。把 {@link StreamObserver} 参数换成流，服务实现通过它发送消息；
+     * 双向流再把服务实现返回的接收者挂到流上，接收消费者发送的消息
+     */
+    @SuppressWarnings("unchecked")
+    private void handleStreamRequest(RpcMessage msg, Serializer serializer, RpcStream stream) {
+        MethodInvoker invoker = ServiceRepository.getInvoker(msg.getMethodId());
+        MethodDescriptor descriptor = invoker.getDescriptor();
+        RpcContext context = RpcContext.getContext();
+        context.setDeadline(msg.getDeadline());
+        context.setTraceContext(TraceContext.from(msg.getAttachments()));
+        try {
+            Object[] args = serializer.deserialize(msg.getBody(), RpcRequest.class).getArgs();
+            args[descriptor.getStreamIndex()] = stream;
+            Object result = invoker.invoke(args);
+            if (descriptor.getCallType() == CallType.BIDI_STREAM) {
+                if (result == null) {
+                    throw new IllegalStateException("Bidi streaming method returns null. method=" + descriptor);
+                }
+                stream.setInbound((StreamObserver<Object>) result);
+            }
+        } catch (Throwable e) {
+            log.warn("Invoke fail. method={}", descriptor, e);
+            stream.abort(e);
+        } finally {
+            context.setDeadline(0);
+            context.setTraceContext(null);
+        }
+    }
+
+    /**
+     * 为批量里面的每个调用获取许可
+     *
+     * @param methodIds 每个调用的方法 ID
+     * @return 每个调用的并发限制器，没有开启限制的为 null；有一个获取不到的时候已经释放了前面获取的，返回 null
+     */
+    private static GradientLimiter[] acquireAll(long[] methodIds) {
+        GradientLimiter[] limiters = new GradientLimiter[methodIds.length];
+        for (int i = 0; i < methodIds.length; i++) {
+            GradientLimiter limiter = ServiceRepository.getLimiter(methodIds[i]);
+            if (limiter != null && !limiter.tryAcquire()) {
+                releaseAll(limiters, 0);
+                return null;
+            }
+            limiters[i] = limiter;
+        }
+        return limiters;
+    }
+
+    /**
+     * 不记录耗时，释放从 from 开始还没有释放的许可
+     */
+    private static void releaseAll(GradientLimiter[] limiters, int from) {
+        for (int i = from; i < limiters.length; i++) {
+            if (limiters[i] != null) {
+                limiters[i].releaseWithoutSample();
+                limiters[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 回复过载、错误和批量响应，同样带上负载，消费者在过载的时候最需要知道负载
+     */
+    private void reply(RpcMessage request, byte status, byte[] body) {
+        RpcMessage response = newReply(request, status, body);
+        attachLoad(response);
+        writeQueue.enqueue(response);
+    }
+
+    /**
+     * 负载上报更新之后，这个连接上的第一个响应带上负载，不管响应是什么状态
+     */
+    private void attachLoad(RpcMessage response) {
+        int version = LoadReporter.getVersion();
+        if (version != loadVersion) {
+            loadVersion = version;
+            response.setAttachments(LoadReporter.getAttachments());
+        }
+    }
+
+    private static RpcMessage newReply(RpcMessage request, byte status, byte[] body) {
+        byte type = request.getType() == ProtocolConst.BATCH_REQUEST ? ProtocolConst.BATCH_RESPONSE : ProtocolConst.RESPONSE;
+        return new RpcMessage(type, request.getSerializeType(), status, request.getRequestId(), request.getMethodId(), 0, body);
+    }
+
+    /**
+     * 是否已经过了截止时间
+     *
+     * @param deadline 截止时间戳毫秒数，0 表示没有截止时间
+     */
+    private static boolean isExpired(long deadline) {
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+}
@@ -0,0 +1,283 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 根据 URL 参数选择 Netty 的传输实现和连接参数。<br>
+ * Linux 上本地库可用的时候使用 epoll，边缘触发并且少一层 JDK Selector 的封装，否则使用 NIO。
+ * 服务端和客户端的连接参数都从这里读取，两边的配置方式一样
+ *
+ */
+@Slf4j
+public class NettyTransport {
+
+    /**
+     * 分配器: 池化
+     */
+    private static final String ALLOCATOR_POOLED = "pooled";
+
+    /**
+     * 分配器: 不池化
+     */
+    private static final String ALLOCATOR_UNPOOLED = "unpooled";
+
+    /**
+     * 优先使用堆内存的池化分配器，只有配置了 directBuffer=false 才会用到
+     */
+    private static volatile PooledByteBufAllocator pooledHeapAllocator;
+
+    /**
+     * epoll 是否可用，类加载的时候检查一次
+     */
+    private static final boolean EPOLL_AVAILABLE = checkEpoll();
+
+    /**
+     * 本机所有网卡的地址，用来判断提供者是不是在同一台机器上
+     */
+    private static volatile Set<String> localHosts;
+
+    private NettyTransport() {
+    }
+
+    /**
+     * 是否使用 epoll
+     *
+     * @param url 提供者或者消费者的 URL
+     * @return 本地库可用并且没有关闭的时候返回 true
+     */
+    public static boolean useEpoll(URL url) {
+        return EPOLL_AVAILABLE && url.getBooleanParam(URLKeyConst.EPOLL, true);
+    }
+
+    /**
+     * 创建事件循环线程组
+     *
+     * @param epoll   是否使用 epoll
+     * @param threads 线程数，0 表示使用 Netty 的默认值
+     * @param name    线程名前缀
+     * @return 线程组
+     */
+    public static EventLoopGroup newEventLoopGroup(boolean epoll, int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+        return epoll ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends ServerSocketChannel> serverChannelClass(boolean epoll) {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends SocketChannel> socketChannelClass(boolean epoll) {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<EpollServerDomainSocketChannel> serverDomainChannelClass() {
+        return EpollServerDomainSocketChannel.class;
+    }
+
+    public static Class<EpollDomainSocketChannel> domainChannelClass() {
+        return EpollDomainSocketChannel.class;
+    }
+
+    /**
+     * 获取连接提供者可以使用的 Unix 域套接字路径。<br>
+     * 提供者注册了路径、消费者没有关闭、提供者的 IP 是本机的地址并且套接字文件存在的时候才使用
+     *
+     * @param url      提供者 URL
+     * @param consumer 消费者 URL
+     * @return 套接字路径，不能使用返回 null
+     */
+    public static String getUnixSocketPath(URL url, URL consumer) {
+        String path = url.getParam(URLKeyConst.UNIX_SOCKET, null);
+        if (path == null || !consumer.getBooleanParam(URLKeyConst.PREFER_UNIX_SOCKET, true)) {
+            return null;
+        }
+        return isLocalHost(url.getHost()) && new File(path).exists() ? path : null;
+    }
+
+    /**
+     * 设置服务端的连接参数，监听的连接只需要分配器，其他参数设置到接收的连接上
+     *
+     * @param bootstrap 服务端启动器
+     * @param url       提供者 URL
+     */
+    public static void applyServerOptions(ServerBootstrap bootstrap, URL url) {
+        ByteBufAllocator allocator = allocator(url);
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, url.getBooleanParam(URLKeyConst.TCP_NODELAY, true))
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(url));
+        int sendBuffer = url.getIntParam(URLKeyConst.SEND_BUFFER, 0);
+        if (sendBuffer > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBuffer);
+        }
+        int receiveBuffer = url.getIntParam(URLKeyConst.RECEIVE_BUFFER, 0);
+        if (receiveBuffer > 0) {
+            // 接收缓冲区大于 64K 需要在监听的连接上设置，握手的时候才能协商窗口扩大因子
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBuffer);
+        }
+    }
+
+    /**
+     * 设置 Unix 域套接字服务端的连接参数，没有 TCP 相关的参数
+     *
+     * @param bootstrap 服务端启动器
+     * @param url       提供者 URL
+     */
+    public static void applyDomainServerOptions(ServerBootstrap bootstrap, URL url) {
+        ByteBufAllocator allocator = allocator(url);
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(url));
+    }
+
+    /**
+     * 设置 Unix 域套接字客户端的连接参数，没有 TCP 相关的参数
+     *
+     * @param bootstrap 客户端启动器
+     * @param url       消费者 URL
+     */
+    public static void applyDomainClientOptions(AbstractBootstrap<?, ?> bootstrap, URL url) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator(url))
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(url));
+    }
+
+    /**
+     * 设置客户端的连接参数
+     *
+     * @param bootstrap 客户端启动器
+     * @param url       消费者 URL
+     */
+    public static void applyClientOptions(AbstractBootstrap<?, ?> bootstrap, URL url) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator(url))
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, url.getBooleanParam(URLKeyConst.TCP_NODELAY, true))
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(url));
+        int sendBuffer = url.getIntParam(URLKeyConst.SEND_BUFFER, 0);
+        if (sendBuffer > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBuffer);
+        }
+        int receiveBuffer = url.getIntParam(URLKeyConst.RECEIVE_BUFFER, 0);
+        if (receiveBuffer > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBuffer);
+        }
+    }
+
+    /**
+     * 内存分配器。池化分配器共用全局实例，避免每个服务端、客户端各有一套内存池
+     */
+    static ByteBufAllocator allocator(URL url) {
+        String type = url.getParam(URLKeyConst.ALLOCATOR, ALLOCATOR_POOLED);
+        boolean direct = url.getBooleanParam(URLKeyConst.DIRECT_BUFFER, true);
+        if (ALLOCATOR_UNPOOLED.equals(type)) {
+            return direct ? UnpooledByteBufAllocator.DEFAULT : new UnpooledByteBufAllocator(false);
+        }
+        if (!ALLOCATOR_POOLED.equals(type)) {
+            throw new IllegalStateException("Unknown allocator. allocator=" + type);
+        }
+        if (direct) {
+            return PooledByteBufAllocator.DEFAULT;
+        }
+        if (pooledHeapAllocator == null) {
+            synchronized (NettyTransport.class) {
+                if (pooledHeapAllocator == null) {
+                    pooledHeapAllocator = new PooledByteBufAllocator(false);
+                }
+            }
+        }
+        return pooledHeapAllocator;
+    }
+
+    /**
+     * 写缓冲区水位，超过高水位连接变为不可写，流式调用的发送方会等待
+     */
+    static WriteBufferWaterMark waterMark(URL url) {
+        int low = url.getIntParam(URLKeyConst.WRITE_BUFFER_LOW, 0);
+        int high = url.getIntParam(URLKeyConst.WRITE_BUFFER_HIGH, 0);
+        // 只配置了一个的时候，另一个按默认值调整，保证低水位不超过高水位
+        if (high <= 0) {
+            high = Math.max(low, WriteBufferWaterMark.DEFAULT.high());
+        }
+        if (low <= 0) {
+            low = Math.min(high, WriteBufferWaterMark.DEFAULT.low());
+        }
+        if (low > high) {
+            throw new IllegalStateException("Write buffer low water mark is greater than high. low=" + low + ", high=" + high);
+        }
+        return new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * 是不是本机的地址
+     *
+     * @param host IP 地址
+     * @return true 表示是本机某个网卡的地址
+     */
+    public static boolean isLocalHost(String host) {
+        Set<String> hosts = localHosts;
+        if (hosts == null) {
+            hosts = localHosts = loadLocalHosts();
+        }
+        return hosts.contains(host);
+    }
+
+    private static Set<String> loadLocalHosts() {
+        Set<String> hosts = new HashSet<>();
+        hosts.add("localhost");
+        try {
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    hosts.add(address.getHostAddress());
+                }
+            }
+        } catch (SocketException e) {
+            log.warn("Get local addresses fail.", e);
+        }
+        return hosts;
+    }
+
+    /**
+     * 检查 epoll 本地库，netty-all 换成分开的包并且没有引入本地库的时候类会加载失败
+     */
+    private static boolean checkEpoll() {
+        try {
+            if (Epoll.isAvailable()) {
+                return true;
+            }
+            log.debug("Epoll is unavailable, use nio.", Epoll.unavailabilityCause());
+        } catch (Throwable t) {
+            log.debug("Epoll is unavailable, use nio.", t);
+        }
+        return false;
+    }
+}
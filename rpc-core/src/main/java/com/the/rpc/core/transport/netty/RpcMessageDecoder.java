@@ -0,0 +1,85 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.core.protocol.Attachments;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * 报文解码器。用报文头里面的长度字段拆包，只解析报文头，报文体保持序列化后的字节
+ *
+ * @see ProtocolConst
+ */
+public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
+
+    public RpcMessageDecoder() {
+        this(ProtocolConst.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public RpcMessageDecoder(int maxFrameLength) {
+        super(maxFrameLength, ProtocolConst.LENGTH_FIELD_OFFSET, 4, 0, 0);
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        // 不同版本的报文头长度不一样，长度字段的位置也不一样，拆包之前先检查版本，不能按错误的位置读长度
+        if (in.readableBytes() > ProtocolConst.VERSION_OFFSET) {
+            byte version = in.getByte(in.readerIndex() + ProtocolConst.VERSION_OFFSET);
+            if (version != ProtocolConst.VERSION) {
+                in.skipBytes(in.readableBytes());
+                throw new CorruptedFrameException("Unsupported version: " + version);
+            }
+        }
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if (frame == null) {
+            return null;
+        }
+        try {
+            return read(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 从一个完整的帧里面读取报文，其他传输方式也用这个方法解码
+     *
+     * @param frame 一个完整的帧
+     * @return 报文
+     */
+    public static RpcMessage read(ByteBuf frame) throws CorruptedFrameException {
+        short magic = frame.readShort();
+        if (magic != ProtocolConst.MAGIC) {
+            throw new CorruptedFrameException("Unknown magic: " + magic);
+        }
+        byte version = frame.readByte();
+        if (version != ProtocolConst.VERSION) {
+            throw new CorruptedFrameException("Unsupported version: " + version);
+        }
+        RpcMessage msg = new RpcMessage();
+        byte type = frame.readByte();
+        msg.setType((byte) (type & ~ProtocolConst.FLAG_ATTACHMENTS));
+        msg.setSerializeType(frame.readByte());
+        msg.setStatus(frame.readByte());
+        msg.setRequestId(frame.readLong());
+        msg.setMethodId(frame.readLong());
+        msg.setDeadline(frame.readLong());
+        int length = frame.readInt();
+        if ((type & ProtocolConst.FLAG_ATTACHMENTS) != 0) {
+            int attachmentsLength = frame.readUnsignedShort();
+            if (attachmentsLength + 2 > length) {
+                throw new CorruptedFrameException("Invalid attachments length: " + attachmentsLength);
+            }
+            msg.setAttachments(Attachments.read(frame, attachmentsLength));
+            length -= 2 + attachmentsLength;
+        }
+        byte[] body = new byte[length];
+        frame.readBytes(body);
+        msg.setBody(body);
+        msg.setReceivedNanos(System.nanoTime());
+        return msg;
+    }
+}
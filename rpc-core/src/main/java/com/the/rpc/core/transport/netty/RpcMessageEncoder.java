@@ -0,0 +1,66 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.core.protocol.Attachments;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * 报文编码器
+ *
+ * @see ProtocolConst
+ */
+public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) {
+        write(msg, out);
+    }
+
+    /**
+     * 把报文写到缓冲区，其他传输方式也用这个方法编码
+     *
+     * @param msg 报文
+     * @param out 缓冲区
+     */
+    public static void write(RpcMessage msg, ByteBuf out) {
+        byte[] body = msg.getBody();
+        int bodyLength = body == null ? 0 : body.length;
+        Attachments attachments = msg.getAttachments();
+        boolean attached = attachments != null && attachments.size() > 0;
+        int attachmentsLength = attached ? attachments.encodedLength() : 0;
+        int length = attached ? 2 + attachmentsLength + bodyLength : bodyLength;
+        out.ensureWritable(ProtocolConst.HEADER_LENGTH + length);
+        out.writeShort(ProtocolConst.MAGIC);
+        out.writeByte(ProtocolConst.VERSION);
+        out.writeByte(attached ? msg.getType() | ProtocolConst.FLAG_ATTACHMENTS : msg.getType());
+        out.writeByte(msg.getSerializeType());
+        out.writeByte(msg.getStatus());
+        out.writeLong(msg.getRequestId());
+        out.writeLong(msg.getMethodId());
+        out.writeLong(msg.getDeadline());
+        out.writeInt(length);
+        if (attached) {
+            out.writeShort(attachmentsLength);
+            attachments.write(out);
+        }
+        if (bodyLength > 0) {
+            out.writeBytes(body);
+        }
+    }
+
+    /**
+     * 报文编码之后的字节数
+     *
+     * @param msg 报文
+     * @return 报文头加上附件和报文体的字节数
+     */
+    public static int frameLength(RpcMessage msg) {
+        byte[] body = msg.getBody();
+        Attachments attachments = msg.getAttachments();
+        int length = ProtocolConst.HEADER_LENGTH + (body == null ? 0 : body.length);
+        return attachments != null && attachments.size() > 0 ? length + 2 + attachments.encodedLength() : length;
+    }
+}
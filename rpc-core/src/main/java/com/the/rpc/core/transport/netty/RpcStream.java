@@ -0,0 +1,360 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.common.consts.RemotingException;
+import com.the.rpc.common.consts.RpcException;
+import com.the.rpc.core.invoke.StreamObserver;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.serializer.SerializeType;
+import com.the.rpc.core.serializer.Serializer;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个流式调用，消费者和提供者各有一个，用请求 ID 对应。<br>
+ * 发送方向：作为 {@link StreamObserver} 给业务代码发送消息，每个消息单独序列化成一个报文。<br>
+ * 接收方向：收到的消息按顺序在线程池里面回调业务代码的 {@link StreamObserver}，不占用 IO 线程。
+ * 没有接收方向或者接收方向已经结束的时候，对端再发来的消息直接丢弃；对端不按授权发送、排队的消息超过窗口的时候取消整个流。<br>
+ * 流控基于授权：每个方向一开始可以发送 {@link #WINDOW} 个消息，接收方每处理完半个窗口就把授权还给发送方。
+ * 授权用完或者连接不可写的时候，发送方阻塞在 onNext 上，两边都不会把整个结果放在内存里面
+ *
+ */
+@Slf4j
+public class RpcStream implements StreamObserver<Object> {
+
+    /**
+     * 流控窗口，对端不用等待授权最多可以发送的消息数
+     */
+    static final int WINDOW = 32;
+
+    /**
+     * 等待授权的时候，最多多久检查一次连接状态
+     */
+    private static final long AWAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long requestId;
+
+    private final long methodId;
+
+    private final byte serializeType;
+
+    private final Serializer serializer;
+
+    private final Channel channel;
+
+    private final WriteQueue writeQueue;
+
+    /**
+     * 回调接收方向的线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 两个方向都结束之后调用，从连接上移除这个流
+     */
+    private final Runnable onClosed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition sendable = lock.newCondition();
+
+    /**
+     * 还可以发送的消息数
+     */
+    private int credits = WINDOW;
+
+    private volatile boolean outboundClosed;
+
+    /**
+     * 对端取消了流，或者连接断开了
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 业务代码的接收者，提供者的双向流要等服务实现返回之后才有
+     */
+    private volatile StreamObserver<Object> inbound;
+
+    private final Queue<RpcMessage> received = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 排队等待回调的数据消息数
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * 已经处理但是还没有还给对端的授权数，只在回调线程里面读写
+     */
+    private int consumed;
+
+    private volatile boolean inboundClosed;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param outbound 是否有发送方向
+     * @param inbound  是否有接收方向
+     */
+    RpcStream(long requestId, long methodId, byte serializeType, Channel channel, WriteQueue writeQueue,
+              Executor executor, Runnable onClosed, boolean outbound, boolean inbound) {
+        this.requestId = requestId;
+        this.methodId = methodId;
+        this.serializeType = serializeType;
+        this.serializer = SerializeType.getSerializer(serializeType);
+        this.channel = channel;
+        this.writeQueue = writeQueue;
+        this.executor = executor;
+        this.onClosed = onClosed;
+        this.outboundClosed = !outbound;
+        this.inboundClosed = !inbound;
+    }
+
+    @Override
+    public void onNext(Object value) {
+        if (outboundClosed) {
+            throw new IllegalStateException("Stream is closed. requestId=" + requestId);
+        }
+        acquireCredit();
+        write(ProtocolConst.STREAM_DATA, ProtocolConst.STATUS_OK, serializer.serialize(RpcResponse.success(value)));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (closeOutbound()) {
+            write(ProtocolConst.STREAM_END, ProtocolConst.STATUS_ERROR, serializer.serialize(RpcResponse.fail(t.toString())));
+            tryClose();
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        if (closeOutbound()) {
+            write(ProtocolConst.STREAM_END, ProtocolConst.STATUS_OK, null);
+            tryClose();
+        }
+    }
+
+    /**
+     * 以异常结束整个流：发送方向以异常结束，同时通知对端不要再发送
+     *
+     * @param t 异常
+     */
+    void abort(Throwable t) {
+        inboundClosed = true;
+        onError(t);
+        write(ProtocolConst.STREAM_END, ProtocolConst.STATUS_CANCELLED, null);
+        tryClose();
+    }
+
+    /**
+     * 设置接收者，之前收到的消息会马上开始回调
+     */
+    void setInbound(StreamObserver<Object> inbound) {
+        this.inbound = inbound;
+        scheduleDrain();
+    }
+
+    /**
+     * 收到对端的报文，在 IO 线程调用
+     */
+    void received(RpcMessage msg) {
+        if (msg.getType() == ProtocolConst.STREAM_CREDIT) {
+            addCredits(readInt(msg.getBody()));
+            return;
+        }
+        if (msg.getType() == ProtocolConst.STREAM_END && msg.getStatus() == ProtocolConst.STATUS_CANCELLED) {
+            cancel();
+        }
+        if (inboundClosed) {
+            return;
+        }
+        if (msg.getType() == ProtocolConst.STREAM_DATA && queued.incrementAndGet() > WINDOW) {
+            log.warn("Stream peer ignores flow control, abort it. requestId={}", requestId);
+            abort(new RpcException("Stream flow control violated. requestId=" + requestId));
+            return;
+        }
+        received.offer(msg);
+        scheduleDrain();
+    }
+
+    /**
+     * 连接可写了，唤醒等待的发送方
+     */
+    void writable() {
+        signal();
+    }
+
+    /**
+     * 连接断开，发送方向结束，接收方向以异常结束
+     */
+    void channelClosed() {
+        cancel();
+        if (inboundClosed) {
+            return;
+        }
+        RpcMessage end = new RpcMessage(ProtocolConst.STREAM_END, serializeType, ProtocolConst.STATUS_ERROR,
+                requestId, methodId, 0, serializer.serialize(RpcResponse.fail("Channel closed. channel=" + channel)));
+        received.offer(end);
+        scheduleDrain();
+    }
+
+    private void acquireCredit() {
+        lock.lock();
+        try {
+            while (credits == 0 || !channel.isWritable()) {
+                if (cancelled) {
+                    throw new RpcException("Stream is cancelled. requestId=" + requestId);
+                }
+                if (!channel.isActive()) {
+                    throw new RemotingException(String.valueOf(channel.remoteAddress()), "Channel closed. channel=" + channel);
+                }
+                sendable.awaitNanos(AWAIT_NANOS);
+            }
+            credits--;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Stream interrupted. requestId=" + requestId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addCredits(int n) {
+        lock.lock();
+        try {
+            credits += n;
+            sendable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            sendable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 对端不再接收，停止发送
+     */
+    private void cancel() {
+        cancelled = true;
+        outboundClosed = true;
+        signal();
+        tryClose();
+    }
+
+    private boolean closeOutbound() {
+        lock.lock();
+        try {
+            if (outboundClosed) {
+                return false;
+            }
+            outboundClosed = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (inbound == null || received.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            log.warn("Stream callback rejected, abort it. requestId={}", requestId);
+            abort(e);
+        }
+    }
+
+    /**
+     * 按顺序回调接收者，同一时间只有一个线程在回调
+     */
+    private void drain() {
+        try {
+            RpcMessage msg;
+            while ((msg = received.poll()) != null) {
+                if (msg.getType() == ProtocolConst.STREAM_DATA) {
+                    queued.decrementAndGet();
+                }
+                if (inboundClosed) {
+                    continue;
+                }
+                if (msg.getType() == ProtocolConst.STREAM_DATA) {
+                    deliver(msg);
+                } else if (msg.getType() == ProtocolConst.STREAM_END) {
+                    inboundClosed = true;
+                    if (msg.getStatus() == ProtocolConst.STATUS_OK) {
+                        inbound.onCompleted();
+                    } else if (msg.getStatus() == ProtocolConst.STATUS_CANCELLED) {
+                        inbound.onError(new RpcException("Stream is cancelled. requestId=" + requestId));
+                    } else {
+                        inbound.onError(new RpcException(serializer.deserialize(msg.getBody(), RpcResponse.class).getError()));
+                    }
+                    tryClose();
+                }
+            }
+        } catch (Throwable t) {
+            log.warn("Stream callback fail. requestId={}", requestId, t);
+        } finally {
+            draining.set(false);
+            scheduleDrain();
+        }
+    }
+
+    private void deliver(RpcMessage msg) {
+        try {
+            inbound.onNext(serializer.deserialize(msg.getBody(), RpcResponse.class).getData());
+        } catch (Throwable t) {
+            // 接收者处理失败，通知对端停止发送
+            log.warn("Stream inbound fail, cancel it. requestId={}", requestId, t);
+            inboundClosed = true;
+            write(ProtocolConst.STREAM_END, ProtocolConst.STATUS_CANCELLED, null);
+            inbound.onError(t);
+            cancel();
+            return;
+        }
+        if (++consumed >= WINDOW / 2) {
+            write(ProtocolConst.STREAM_CREDIT, ProtocolConst.STATUS_OK, writeInt(consumed));
+            consumed = 0;
+        }
+    }
+
+    private void tryClose() {
+        if (inboundClosed && outboundClosed && closed.compareAndSet(false, true)) {
+            onClosed.run();
+        }
+    }
+
+    private void write(byte type, byte status, byte[] body) {
+        writeQueue.enqueue(new RpcMessage(type, serializeType, status, requestId, methodId, 0, body));
+    }
+
+    private static byte[] writeInt(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static int readInt(byte[] bytes) {
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+}
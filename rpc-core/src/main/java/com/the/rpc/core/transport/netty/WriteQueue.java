@@ -0,0 +1,79 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.core.diagnostics.FlightRecorder;
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.channel.Channel;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 合并写队列。<br>
+ * 多个线程写同一个连接的时候，先放到队列里面，由 IO 线程在一次任务里面全部 write，最后只 flush 一次。
+ * 这样同一个事件循环周期里面的多个小报文只需要一次系统调用。<br>
+ * 写出的时间点记录到 {@link FlightRecorder}，取的是 IO 线程从队列里面取出这一批报文、编码之前的时间，
+ * 编码和写 socket 的系统调用算在之后的 network（提供者是 response）阶段里面。
+ * 不用 write 的回调打时间点，是为了每个报文不用再分配一个 promise 和监听器
+ *
+ */
+public class WriteQueue {
+
+    /**
+     * 一次任务最多写的报文数，防止一直写占用 IO 线程
+     */
+    private static final int MAX_WRITES_PER_FLUSH = 1024;
+
+    private final Channel channel;
+
+    /**
+     * 多生产者单消费者队列，消费者是 IO 线程
+     */
+    private final Queue<Object> queue = PlatformDependent.newMpscQueue();
+
+    /**
+     * 是否已经提交了 flush 任务
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable flushTask = this::flush;
+
+    public WriteQueue(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 放入队列，如果还没有提交 flush 任务，提交一个
+     *
+     * @param msg 报文
+     */
+    public void enqueue(Object msg) {
+        queue.offer(msg);
+        if (scheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(flushTask);
+        }
+    }
+
+    private void flush() {
+        // 先重置标记再取队列，保证取完之后放入的报文会提交新的任务
+        scheduled.set(false);
+        int written = 0;
+        // 一批报文共用取出的时间点，编码和系统调用不算在写出之前
+        long now = System.nanoTime();
+        Object msg;
+        while (written < MAX_WRITES_PER_FLUSH && (msg = queue.poll()) != null) {
+            if (msg instanceof RpcMessage) {
+                FlightRecorder.written((RpcMessage) msg, now);
+            }
+            channel.write(msg, channel.voidPromise());
+            written++;
+        }
+        if (written > 0) {
+            channel.flush();
+        }
+        // 没写完的下次再写
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(flushTask);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.the.rpc.core.transport.shm;
+
+import cn.hutool.core.io.FileUtil;
+import com.the.rpc.common.consts.RemotingException;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.FlightRecorder;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.transport.ExchangeClient;
+import com.the.rpc.core.transport.netty.NettyTransport;
+import io.netty.handler.codec.CorruptedFrameException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 共享内存客户端，实验性质。<br>
+ * 提供者注册了共享内存目录并且在同一台机器上的时候，消费者在目录里面创建一对环形缓冲区文件，
+ * 提供者发现之后接受连接，之后请求和响应都通过内存映射文件传递，不经过内核的网络栈。<br>
+ * 只用于普通的请求响应，流式调用和批量调用还是走 Netty。<br>
+ * 建立连接在后台线程里面进行，提供者接受之前的调用照常走 Netty，不阻塞调用线程；
+ * 建立连接失败的时候一段时间内不再尝试，直接走 Netty
+ *
+ * @see ShmServer
+ */
+@Slf4j
+public class ShmClient implements ExchangeClient {
+
+    /**
+     * 请求文件的后缀，消费者写，提供者读
+     */
+    static final String REQUEST_SUFFIX = ".req";
+
+    /**
+     * 响应文件的后缀，提供者写，消费者读
+     */
+    static final String RESPONSE_SUFFIX = ".resp";
+
+    /**
+     * 默认每个方向的缓冲区字节数
+     */
+    private static final int DEFAULT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * 等待提供者接受连接的毫秒数
+     */
+    private static final long CONNECT_TIMEOUT_MS = 3_000;
+
+    /**
+     * 建立连接失败之后多久再尝试
+     */
+    private static final long RETRY_INTERVAL_MS = 10_000;
+
+    /**
+     * 请求缓冲区满的时候最多等待的纳秒数
+     */
+    private static final long WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    /**
+     * 检查提供者进程是否还活着的间隔
+     */
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 客户端缓存 {address: 客户端}
+     */
+    private static final Map<String, ShmClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次建立连接失败的时间 {address: 时间戳毫秒数}
+     */
+    private static final Map<String, Long> failures = new ConcurrentHashMap<>();
+
+    /**
+     * 正在后台建立连接的提供者地址
+     */
+    private static final Set<String> connecting = ConcurrentHashMap.newKeySet();
+
+    private final String address;
+
+    private final ShmRingBuffer requests;
+
+    private final ShmRingBuffer responses;
+
+    /**
+     * 还没有收到响应的请求 {requestId: 响应}
+     */
+    private final Map<Long, CompletableFuture<RpcMessage>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+
+    private final long providerPid;
+
+    private volatile boolean active = true;
+
+    private ShmClient(String address, File dir, int size) throws IOException {
+        this.address = address;
+        String name = ProcessHandle.current().pid() + "-" + sequence.incrementAndGet();
+        // 提供者按请求文件发现连接，响应文件要先创建好
+        this.responses = ShmRingBuffer.create(new File(dir, name + RESPONSE_SUFFIX), size);
+        this.requests = ShmRingBuffer.create(new File(dir, name + REQUEST_SUFFIX), size);
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        int attempts = 0;
+        while (requests.getState() == ShmRingBuffer.STATE_CREATED) {
+            if (System.currentTimeMillis() > deadline && requests.compareAndSetState(ShmRingBuffer.STATE_CREATED, ShmRingBuffer.STATE_CLOSED)) {
+                break;
+            }
+            ShmRingBuffer.idle(attempts++);
+        }
+        if (requests.getState() != ShmRingBuffer.STATE_ACCEPTED) {
+            deleteFiles();
+            throw new RemotingException(address, "Shared memory connect timeout. address=" + address + ", dir=" + dir);
+        }
+        this.providerPid = requests.getPeerPid();
+        Thread reader = new Thread(this::readLoop, "the-rpc-shm-client-" + name);
+        reader.setDaemon(true);
+        reader.start();
+        log.info("shared memory connected. address={}, name={}", address, name);
+    }
+
+    /**
+     * 获取提供者地址对应的共享内存客户端，没有则创建
+     *
+     * @param url      提供者 URL
+     * @param consumer 消费者 URL
+     * @return 客户端，提供者没有开启、不在同一台机器上、正在建立连接或者建立连接失败返回 null
+     */
+    public static ShmClient getClient(URL url, URL consumer) {
+        String dir = url.getParam(URLKeyConst.SHM, null);
+        if (dir == null) {
+            return null;
+        }
+        String address = url.getAddress();
+        ShmClient client = clients.get(address);
+        if (client != null && client.isActive()) {
+            return client;
+        }
+        if (!consumer.getBooleanParam(URLKeyConst.PREFER_SHM, true) || !NettyTransport.isLocalHost(url.getHost())) {
+            return null;
+        }
+        Long failedAt = failures.get(address);
+        if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_INTERVAL_MS) {
+            return null;
+        }
+        if (connecting.add(address)) {
+            int size = consumer.getIntParam(URLKeyConst.SHM_SIZE, DEFAULT_SIZE);
+            Thread connector = new Thread(() -> connect(address, new File(dir), size), "the-rpc-shm-connect-" + address);
+            connector.setDaemon(true);
+            connector.start();
+        }
+        return null;
+    }
+
+    /**
+     * 在后台线程里面建立连接，成功之后放进缓存，之后的调用才走共享内存
+     */
+    private static void connect(String address, File dir, int size) {
+        try {
+            ShmClient client = new ShmClient(address, dir, size);
+            failures.remove(address);
+            clients.put(address, client);
+        } catch (Exception e) {
+            log.warn("Shared memory connect fail, use netty. address={}, dir={}", address, dir, e);
+            failures.put(address, System.currentTimeMillis());
+        } finally {
+            connecting.remove(address);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RpcMessage> send(RpcMessage msg) {
+        if (!active) {
+            throw new RemotingException(address, "Shared memory connection is closed. address=" + address);
+        }
+        long requestId = requestIdGenerator.incrementAndGet();
+        msg.setRequestId(requestId);
+        CompletableFuture<RpcMessage> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        boolean written;
+        try {
+            synchronized (requests) {
+                FlightRecorder.written(msg, System.nanoTime());
+                written = requests.offer(msg, WRITE_TIMEOUT_NANOS, () -> !active);
+            }
+        } catch (CorruptedFrameException e) {
+            pending.remove(requestId);
+            throw new RemotingException(address, "Invoke fail. address=" + address, e);
+        }
+        if (!written) {
+            pending.remove(requestId);
+            throw new RemotingException(address, "Shared memory buffer is full. address=" + address);
+        }
+        return future;
+    }
+
+    @Override
+    public void cancel(long requestId) {
+        pending.remove(requestId);
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 关闭连接，还没有收到响应的请求以异常结束
+     */
+    public void close() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        clients.remove(address, this);
+        requests.setState(ShmRingBuffer.STATE_CLOSED);
+        RemotingException e = new RemotingException(address, "Shared memory connection is closed. address=" + address);
+        pending.values().forEach(future -> future.completeExceptionally(e));
+        pending.clear();
+        deleteFiles();
+        log.info("shared memory closed. address={}", address);
+    }
+
+    /**
+     * 读取响应，没有响应的时候按等待策略自旋或者休眠
+     */
+    private void readLoop() {
+        int attempts = 0;
+        long lastCheck = System.nanoTime();
+        try {
+            while (active) {
+                RpcMessage msg = responses.poll();
+                if (msg != null) {
+                    attempts = 0;
+                    CompletableFuture<RpcMessage> future = pending.remove(msg.getRequestId());
+                    if (future != null) {
+                        future.complete(msg);
+                    }
+                    continue;
+                }
+                if (requests.getState() == ShmRingBuffer.STATE_CLOSED) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (now - lastCheck > CHECK_INTERVAL_NANOS) {
+                    lastCheck = now;
+                    if (!ShmRingBuffer.isAlive(providerPid)) {
+                        log.warn("Provider process is gone. address={}, pid={}", address, providerPid);
+                        break;
+                    }
+                }
+                ShmRingBuffer.idle(attempts++);
+            }
+        } catch (Exception e) {
+            log.warn("Shared memory read fail. address={}", address, e);
+        }
+        close();
+    }
+
+    private void deleteFiles() {
+        FileUtil.del(requests.getFile());
+        FileUtil.del(responses.getFile());
+    }
+}
@@ -0,0 +1,370 @@
+package com.the.rpc.core.transport.shm;
+
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.transport.netty.RpcMessageDecoder;
+import com.the.rpc.core.transport.netty.RpcMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 基于内存映射文件的单生产者单消费者环形缓冲区，一个方向一个文件。<br>
+ * 记录的格式是 4 字节长度加上一个和 Netty 传输完全相同的帧，按 8 字节对齐。
+ * 剩下的连续空间放不下一条记录的时候写一个填充标记，从数据区开头继续写，所以一条记录最多占一半容量，
+ * 更大的帧拆成多条记录，长度字段里面带上后面还有数据的标记，读取方拼起来再解码。<br>
+ * 读写位置是单调递增的 long，生产者写完记录之后以 release 语义发布写位置，消费者以 acquire 语义读取，
+ * 读完之后同样发布读位置。同一边有多个线程要写的时候由调用方加锁。
+ * <pre>
+ *     0    int   MAGIC，创建者最后写入，看到它说明文件头已经初始化好
+ *     4    int   数据区容量，2 的幂
+ *     8    long  创建者的进程 ID
+ *     16   long  对端的进程 ID，接受连接的时候写入
+ *     24   int   连接状态
+ *     64   long  写位置
+ *     128  long  读位置
+ *     256        数据区
+ * </pre>
+ *
+ */
+class ShmRingBuffer {
+
+    static final int STATE_CREATED = 0;
+
+    static final int STATE_ACCEPTED = 1;
+
+    static final int STATE_CLOSED = 2;
+
+    private static final int MAGIC = 0x54525043;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int CAPACITY_OFFSET = 4;
+
+    private static final int OWNER_PID_OFFSET = 8;
+
+    private static final int PEER_PID_OFFSET = 16;
+
+    private static final int STATE_OFFSET = 24;
+
+    /**
+     * 读写位置各占一个缓存行，避免两个进程互相失效对方的缓存
+     */
+    private static final int TAIL_OFFSET = 64;
+
+    private static final int HEAD_OFFSET = 128;
+
+    private static final int HEADER_LENGTH = 256;
+
+    /**
+     * 填充标记，读到它跳到数据区开头
+     */
+    private static final int PADDING = -1;
+
+    /**
+     * 长度字段里面的标记，表示帧被拆开了，后面还有记录
+     */
+    private static final int MORE = 1 << 30;
+
+    /**
+     * 等待的时候先自旋的次数。只有一个 CPU 的时候自旋只会抢走对端需要的 CPU，直接让出
+     */
+    private static final int SPIN_TIMES = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    /**
+     * 自旋之后让出 CPU 的次数，再之后开始休眠
+     */
+    private static final int YIELD_TIMES = 100;
+
+    /**
+     * 休眠的最长时间
+     */
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * 数据区，编解码器直接在上面读写
+     */
+    private final ByteBuf data;
+
+    private final int capacity;
+
+    private final int mask;
+
+    /**
+     * 一条记录最多放的字节数
+     */
+    private final int maxRecordLength;
+
+    /**
+     * 读取方拼接中的帧，只有读取线程访问
+     */
+    private ByteBuf partial;
+
+    private ShmRingBuffer(File file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxRecordLength = capacity / 2 - 8;
+        ByteBuffer region = buffer.duplicate();
+        region.position(HEADER_LENGTH);
+        this.data = Unpooled.wrappedBuffer(region.slice());
+    }
+
+    /**
+     * 创建缓冲区文件
+     *
+     * @param file     文件
+     * @param capacity 数据区容量，向上取整到 2 的幂
+     * @return 缓冲区
+     */
+    static ShmRingBuffer create(File file, int capacity) throws IOException {
+        capacity = Integer.highestOneBit(Math.max(capacity, 4096) - 1) << 1;
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER_LENGTH + capacity);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + capacity);
+        }
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        LONGS.setRelease(buffer, OWNER_PID_OFFSET, ProcessHandle.current().pid());
+        INTS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+        return new ShmRingBuffer(file, buffer, capacity);
+    }
+
+    /**
+     * 打开对端创建的缓冲区文件
+     *
+     * @param file 文件
+     * @return 缓冲区，文件还没有初始化好返回 null
+     */
+    static ShmRingBuffer open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < HEADER_LENGTH) {
+                return null;
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        if ((int) INTS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+            return null;
+        }
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (buffer.capacity() < HEADER_LENGTH + capacity) {
+            return null;
+        }
+        return new ShmRingBuffer(file, buffer, capacity);
+    }
+
+    /**
+     * 写入一个报文，缓冲区满的时候按等待策略等读取方腾出空间。
+     * 超过一条记录上限的帧先编码出来再分段写入，第一段写入之后不再受超时限制，避免读取方拿到半个帧
+     *
+     * @param msg          报文
+     * @param timeoutNanos 第一段写不进去的时候最多等待的纳秒数
+     * @param closed       连接是否已经关闭，关闭之后放弃写入
+     * @return false 表示超时或者连接已经关闭
+     * @throws CorruptedFrameException 帧超过了最大长度
+     */
+    boolean offer(RpcMessage msg, long timeoutNanos, BooleanSupplier closed) throws CorruptedFrameException {
+        int frameLength = RpcMessageEncoder.frameLength(msg);
+        if (frameLength > ProtocolConst.DEFAULT_MAX_FRAME_LENGTH) {
+            throw new CorruptedFrameException("Frame is too large: " + frameLength);
+        }
+        long start = System.nanoTime();
+        int attempts = 0;
+        if (frameLength <= maxRecordLength) {
+            // 大多数报文一条记录放得下，直接编码到数据区
+            while (!tryWrite(msg, null, 0, frameLength, false)) {
+                if (closed.getAsBoolean() || System.nanoTime() - start > timeoutNanos) {
+                    return false;
+                }
+                idle(attempts++);
+            }
+            return true;
+        }
+        ByteBuf frame = Unpooled.buffer(frameLength);
+        RpcMessageEncoder.write(msg, frame);
+        int index = 0;
+        while (index < frameLength) {
+            int length = Math.min(maxRecordLength, frameLength - index);
+            attempts = 0;
+            while (!tryWrite(null, frame, index, length, index + length < frameLength)) {
+                if (closed.getAsBoolean() || (index == 0 && System.nanoTime() - start > timeoutNanos)) {
+                    return false;
+                }
+                idle(attempts++);
+            }
+            index += length;
+        }
+        return true;
+    }
+
+    /**
+     * 读取一个报文，分段的帧读完最后一段才返回
+     *
+     * @return 报文，没有完整的报文返回 null
+     * @throws CorruptedFrameException 数据损坏
+     */
+    RpcMessage poll() throws CorruptedFrameException {
+        while (true) {
+            long head = (long) LONGS.get(buffer, HEAD_OFFSET);
+            long tail = (long) LONGS.getAcquire(buffer, TAIL_OFFSET);
+            if (head == tail) {
+                return null;
+            }
+            int offset = (int) (head & mask);
+            int length = data.getInt(offset);
+            if (length == PADDING) {
+                LONGS.setRelease(buffer, HEAD_OFFSET, head + capacity - offset);
+                continue;
+            }
+            boolean more = (length & MORE) != 0;
+            length &= ~MORE;
+            if (length <= 0 || length > maxRecordLength) {
+                throw new CorruptedFrameException("Invalid record length: " + length);
+            }
+            long next = head + align(4 + length);
+            if (!more && partial == null) {
+                data.setIndex(offset + 4, offset + 4 + length);
+                RpcMessage msg = decode(data);
+                LONGS.setRelease(buffer, HEAD_OFFSET, next);
+                return msg;
+            }
+            if (partial == null) {
+                partial = Unpooled.buffer(maxRecordLength * 2);
+            }
+            partial.writeBytes(data, offset + 4, length);
+            LONGS.setRelease(buffer, HEAD_OFFSET, next);
+            if (partial.readableBytes() > ProtocolConst.DEFAULT_MAX_FRAME_LENGTH) {
+                throw new CorruptedFrameException("Frame is too large: " + partial.readableBytes());
+            }
+            if (!more) {
+                ByteBuf frame = partial;
+                partial = null;
+                return decode(frame);
+            }
+        }
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param msg    不为 null 的时候直接编码到数据区
+     * @param frame  已经编码好的帧，写入其中的一段
+     * @param index  这一段在帧里面的位置
+     * @param length 这一段的字节数
+     * @param more   后面是否还有数据
+     * @return false 表示空间不够
+     */
+    private boolean tryWrite(RpcMessage msg, ByteBuf frame, int index, int length, boolean more) {
+        long tail = (long) LONGS.get(buffer, TAIL_OFFSET);
+        long head = (long) LONGS.getAcquire(buffer, HEAD_OFFSET);
+        int recordLength = align(4 + length);
+        int offset = (int) (tail & mask);
+        int padding = capacity - offset < recordLength ? capacity - offset : 0;
+        if (tail + padding + recordLength - head > capacity) {
+            return false;
+        }
+        if (padding > 0) {
+            data.setInt(offset, PADDING);
+            tail += padding;
+            offset = 0;
+        }
+        if (msg != null) {
+            data.setIndex(0, offset + 4);
+            RpcMessageEncoder.write(msg, data);
+        } else {
+            data.setBytes(offset + 4, frame, index, length);
+        }
+        data.setInt(offset, more ? length | MORE : length);
+        LONGS.setRelease(buffer, TAIL_OFFSET, tail + recordLength);
+        return true;
+    }
+
+    /**
+     * 解码一个完整的帧，长度字段和帧的实际长度要一致
+     */
+    private static RpcMessage decode(ByteBuf frame) throws CorruptedFrameException {
+        int length = frame.readableBytes();
+        if (length < ProtocolConst.HEADER_LENGTH
+                || frame.getInt(frame.readerIndex() + ProtocolConst.LENGTH_FIELD_OFFSET) != length - ProtocolConst.HEADER_LENGTH) {
+            throw new CorruptedFrameException("Invalid frame length: " + length);
+        }
+        return RpcMessageDecoder.read(frame);
+    }
+
+    int getState() {
+        return (int) INTS.getAcquire(buffer, STATE_OFFSET);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return INTS.compareAndSet(buffer, STATE_OFFSET, expect, update);
+    }
+
+    void setState(int state) {
+        INTS.setRelease(buffer, STATE_OFFSET, state);
+    }
+
+    long getOwnerPid() {
+        return (long) LONGS.getAcquire(buffer, OWNER_PID_OFFSET);
+    }
+
+    long getPeerPid() {
+        return (long) LONGS.getAcquire(buffer, PEER_PID_OFFSET);
+    }
+
+    void setPeerPid(long pid) {
+        LONGS.setRelease(buffer, PEER_PID_OFFSET, pid);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * 等待策略：先自旋，再让出 CPU，最后休眠，休眠时间逐渐加长
+     *
+     * @param attempts 已经连续等待的次数
+     */
+    static void idle(int attempts) {
+        if (attempts < SPIN_TIMES) {
+            Thread.onSpinWait();
+        } else if (attempts < SPIN_TIMES + YIELD_TIMES) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(attempts - SPIN_TIMES - YIELD_TIMES, 20);
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << shift));
+        }
+    }
+
+    /**
+     * 进程是否还活着
+     */
+    static boolean isAlive(long pid) {
+        return pid == 0 || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+}
@@ -0,0 +1,361 @@
+package com.the.rpc.core.transport.shm;
+
+import cn.hutool.core.io.FileUtil;
+import com.the.rpc.common.consts.URLKeyConst;
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.diagnostics.FlightRecorder;
+import com.the.rpc.core.invoke.RpcContext;
+import com.the.rpc.core.invoke.ServiceRepository;
+import com.the.rpc.core.limit.GradientLimiter;
+import com.the.rpc.core.loadbalance.LoadReporter;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import com.the.rpc.core.protocol.RpcRequest;
+import com.the.rpc.core.protocol.RpcResponse;
+import com.the.rpc.core.serializer.SerializeType;
+import com.the.rpc.core.serializer.Serializer;
+import io.netty.handler.codec.CorruptedFrameException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享内存服务端，实验性质。<br>
+ * 定时扫描共享内存目录，发现消费者新建的请求文件就接受连接，每个连接一个线程读取请求，
+ * 请求和 Netty 传输一样经过并发限制，在业务线程池里面执行，响应写回响应文件。<br>
+ * 只支持普通的请求，其他类型的报文直接返回失败
+ *
+ * @see ShmClient
+ */
+@Slf4j
+public class ShmServer {
+
+    /**
+     * 扫描目录的间隔
+     */
+    private static final long ACCEPT_INTERVAL_MS = 10;
+
+    /**
+     * 检查消费者进程是否还活着的间隔
+     */
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 响应缓冲区满的时候最多等待的纳秒数，超过了说明消费者不再读取，关闭连接
+     */
+    private static final long WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    private final File dir;
+
+    private final ExecutorService executor;
+
+    /**
+     * 已经接受的连接 {请求文件名: 连接}
+     */
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    /**
+     * 提供者是否正在关闭
+     */
+    private volatile boolean closing;
+
+    /**
+     * @param url      提供者 URL，使用其中的共享内存目录
+     * @param executor 业务线程池
+     */
+    public ShmServer(URL url, ExecutorService executor) {
+        this.dir = new File(url.getParam(URLKeyConst.SHM, null));
+        this.executor = executor;
+    }
+
+    /**
+     * 启动，开始接受连接
+     */
+    public void start() {
+        FileUtil.mkdir(dir);
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "the-rpc-shm-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("shared memory server started. dir={}", dir);
+    }
+
+    /**
+     * 提供者开始关闭，不再接受新的连接，新的请求返回过载，让消费者换提供者重试
+     */
+    public void goAway() {
+        closing = true;
+    }
+
+    /**
+     * 关闭所有连接
+     */
+    public void close() {
+        running = false;
+        connections.values().forEach(Connection::close);
+        log.info("shared memory server closed. dir={}", dir);
+    }
+
+    private void acceptLoop() {
+        while (running && !closing) {
+            try {
+                File[] files = dir.listFiles((d, name) -> name.endsWith(ShmClient.REQUEST_SUFFIX));
+                if (files != null) {
+                    for (File file : files) {
+                        if (!connections.containsKey(file.getName())) {
+                            accept(file);
+                        }
+                    }
+                }
+                Thread.sleep(ACCEPT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Shared memory accept fail. dir={}", dir, e);
+            }
+        }
+    }
+
+    private void accept(File requestFile) throws Exception {
+        ShmRingBuffer requests = ShmRingBuffer.open(requestFile);
+        if (requests == null) {
+            // 消费者还没有初始化好
+            return;
+        }
+        String name = requestFile.getName();
+        File responseFile = new File(dir, name.substring(0, name.length() - ShmClient.REQUEST_SUFFIX.length()) + ShmClient.RESPONSE_SUFFIX);
+        if (requests.getState() == ShmRingBuffer.STATE_CLOSED || !ShmRingBuffer.isAlive(requests.getOwnerPid())) {
+            // 消费者已经放弃或者退出了，留下的文件直接删除
+            FileUtil.del(requestFile);
+            FileUtil.del(responseFile);
+            return;
+        }
+        ShmRingBuffer responses = ShmRingBuffer.open(responseFile);
+        if (responses == null) {
+            return;
+        }
+        requests.setPeerPid(ProcessHandle.current().pid());
+        if (!requests.compareAndSetState(ShmRingBuffer.STATE_CREATED, ShmRingBuffer.STATE_ACCEPTED)) {
+            return;
+        }
+        Connection connection = new Connection(name, requests, responses);
+        connections.put(name, connection);
+        Thread reader = new Thread(connection::readLoop, "the-rpc-shm-server-" + name);
+        reader.setDaemon(true);
+        reader.start();
+        log.info("shared memory accepted. name={}", name);
+    }
+
+    /**
+     * 一个消费者的连接
+     */
+    private class Connection {
+
+        private final String name;
+
+        private final ShmRingBuffer requests;
+
+        private final ShmRingBuffer responses;
+
+        private volatile boolean closed;
+
+        /**
+         * 这个连接上最近一次带上的负载版本号，见 {@link LoadReporter}
+         */
+        private volatile int loadVersion;
+
+        Connection(String name, ShmRingBuffer requests, ShmRingBuffer responses) {
+            this.name = name;
+            this.requests = requests;
+            this.responses = responses;
+        }
+
+        void readLoop() {
+            int attempts = 0;
+            long lastCheck = System.nanoTime();
+            long consumerPid = requests.getOwnerPid();
+            try {
+                while (!closed) {
+                    RpcMessage msg = requests.poll();
+                    if (msg != null) {
+                        attempts = 0;
+                        dispatch(msg);
+                        continue;
+                    }
+                    if (requests.getState() == ShmRingBuffer.STATE_CLOSED) {
+                        break;
+                    }
+                    long now = System.nanoTime();
+                    if (now - lastCheck > CHECK_INTERVAL_NANOS) {
+                        lastCheck = now;
+                        if (!ShmRingBuffer.isAlive(consumerPid)) {
+                            log.warn("Consumer process is gone. name={}, pid={}", name, consumerPid);
+                            break;
+                        }
+                    }
+                    ShmRingBuffer.idle(attempts++);
+                }
+            } catch (Exception e) {
+                log.warn("Shared memory read fail. name={}", name, e);
+            }
+            close();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            requests.setState(ShmRingBuffer.STATE_CLOSED);
+            connections.remove(name, this);
+            FileUtil.del(requests.getFile());
+            FileUtil.del(responses.getFile());
+            log.info("shared memory connection closed. name={}", name);
+        }
+
+        private void dispatch(RpcMessage msg) {
+            if (isExpired(msg.getDeadline())) {
+                return;
+            }
+            Serializer serializer = getSerializer(msg);
+            if (serializer == null) {
+                return;
+            }
+            if (msg.getType() != ProtocolConst.REQUEST) {
+                reply(msg, ProtocolConst.STATUS_ERROR, serializer.serialize(RpcResponse.fail("Unsupported message type over shared memory. type=" + msg.getType())));
+                return;
+            }
+            if (closing) {
+                reply(msg, ProtocolConst.STATUS_OVERLOADED, null);
+                return;
+            }
+            GradientLimiter limiter = ServiceRepository.getLimiter(msg.getMethodId());
+            if (limiter != null && !limiter.tryAcquire()) {
+                reply(msg, ProtocolConst.STATUS_OVERLOADED, null);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                executor.execute(() -> handleRequest(msg, serializer, limiter, start));
+            } catch (RejectedExecutionException e) {
+                if (limiter != null) {
+                    limiter.releaseWithoutSample();
+                }
+                reply(msg, ProtocolConst.STATUS_ERROR, null);
+            }
+        }
+
+        /**
+         * 找到报文头里面的序列化方式对应的序列化器，在获取许可之前检查。
+         * 找不到的时候用默认的序列化器回复错误，不能抛出异常结束整个读取循环
+         *
+         * @return 序列化器，找不到的时候已经回复了错误，返回 null
+         */
+        private Serializer getSerializer(RpcMessage msg) {
+            try {
+                return SerializeType.getSerializer(msg.getSerializeType());
+            } catch (IllegalArgumentException e) {
+                log.warn("Reject request. name={}, requestId={}, {}", name, msg.getRequestId(), e.getMessage());
+                byte fallback = SerializeType.PROTOSTUFF.getCode();
+                RpcMessage response = newReply(msg, ProtocolConst.STATUS_ERROR,
+                        SerializeType.getSerializer(fallback).serialize(RpcResponse.fail(e.getMessage())));
+                response.setSerializeType(fallback);
+                attachLoad(response);
+                write(response);
+                return null;
+            }
+        }
+
+        /**
+         * 和 Netty 传输一样处理单个请求
+         */
+        private void handleRequest(RpcMessage msg, Serializer serializer, GradientLimiter limiter, long start) {
+            if (isExpired(msg.getDeadline())) {
+                if (limiter != null) {
+                    limiter.releaseWithoutSample();
+                }
+                return;
+            }
+            long record = FlightRecorder.begin(FlightRecorder.PROVIDER, msg.getMethodId(), msg.getRequestId(), msg.getReceivedNanos());
+            FlightRecorder.stamp(record, FlightRecorder.PROVIDER_EXECUTE_START, System.nanoTime());
+            RpcContext context = RpcContext.getContext();
+            context.setDeadline(msg.getDeadline());
+            RpcResponse response;
+            try {
+                RpcRequest request = serializer.deserialize(msg.getBody(), RpcRequest.class);
+                response = ServiceRepository.invoke(msg.getMethodId(), request, msg.getAttachments());
+            } catch (Exception e) {
+                response = RpcResponse.fail(e.toString());
+            } finally {
+                context.setDeadline(0);
+                long executeEnd = System.nanoTime();
+                FlightRecorder.stamp(record, FlightRecorder.PROVIDER_EXECUTE_END, executeEnd);
+                if (limiter != null) {
+                    limiter.release(executeEnd - start);
+                }
+            }
+            byte status = response.getError() == null ? ProtocolConst.STATUS_OK : ProtocolConst.STATUS_ERROR;
+            RpcMessage responseMessage = newReply(msg, status, serializer.serialize(response));
+            FlightRecorder.stamp(record, FlightRecorder.PROVIDER_SERIALIZED, System.nanoTime());
+            responseMessage.setRecord(record);
+            attachLoad(responseMessage);
+            write(responseMessage);
+        }
+
+        private void reply(RpcMessage request, byte status, byte[] body) {
+            RpcMessage response = newReply(request, status, body);
+            attachLoad(response);
+            write(response);
+        }
+
+        /**
+         * 负载上报更新之后，这个连接上的第一个响应带上负载，过载和错误响应也一样
+         */
+        private void attachLoad(RpcMessage response) {
+            int version = LoadReporter.getVersion();
+            if (version != loadVersion) {
+                loadVersion = version;
+                response.setAttachments(LoadReporter.getAttachments());
+            }
+        }
+
+        private RpcMessage newReply(RpcMessage request, byte status, byte[] body) {
+            return new RpcMessage(ProtocolConst.RESPONSE, request.getSerializeType(), status, request.getRequestId(), request.getMethodId(), 0, body);
+        }
+
+        /**
+         * 写入响应，缓冲区满的时候等消费者读取，连接关闭了就放弃。<br>
+         * 写入在业务线程上进行，最多等待 {@link #WRITE_TIMEOUT_NANOS}，超时说明消费者卡住了，关闭连接，
+         * 消费者那边还没有收到响应的请求以异常结束，之后走 Netty
+         */
+        private void write(RpcMessage msg) {
+            try {
+                boolean written;
+                synchronized (responses) {
+                    FlightRecorder.written(msg, System.nanoTime());
+                    written = responses.offer(msg, WRITE_TIMEOUT_NANOS, () -> closed);
+                }
+                if (!written && !closed) {
+                    log.warn("Shared memory response buffer is full, close connection. name={}, requestId={}", name, msg.getRequestId());
+                    close();
+                }
+            } catch (CorruptedFrameException e) {
+                log.warn("Shared memory write fail. name={}, requestId={}", name, msg.getRequestId(), e);
+                Serializer serializer = SerializeType.getSerializer(msg.getSerializeType());
+                reply(msg, ProtocolConst.STATUS_ERROR, serializer.serialize(RpcResponse.fail(e.toString())));
+            }
+        }
+    }
+
+    private static boolean isExpired(long deadline) {
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+}
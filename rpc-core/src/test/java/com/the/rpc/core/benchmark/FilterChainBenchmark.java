@@ -0,0 +1,62 @@
+package com.the.rpc.core.benchmark;
+
+import com.the.rpc.core.filter.Filter;
+import com.the.rpc.core.filter.FilterChain;
+import com.the.rpc.core.invoke.Invoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器链的开销：filters 个什么都不做的过滤器包在调用外面，和直接调用比较。<br>
+ * 运行：mvn -pl rpc-core -am test-compile 之后以 test classpath 执行本类的 main 方法
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    @Param({"0", "5"})
+    private int filters;
+
+    private Invoker chain;
+
+    private final Object[] args = {1};
+
+    @Setup
+    public void setup() {
+        List<Filter> list = new ArrayList<>(filters);
+        for (int i = 0; i < filters; i++) {
+            list.add(Invoker::invoke);
+        }
+        chain = FilterChain.build((method, a) -> a[0], list);
+    }
+
+    @Benchmark
+    public Object invoke() throws Throwable {
+        return chain.invoke(null, args);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FilterChainBenchmark.class.getSimpleName()).build()).run();
+    }
+}
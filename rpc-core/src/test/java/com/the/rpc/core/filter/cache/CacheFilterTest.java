@@ -0,0 +1,117 @@
+package com.the.rpc.core.filter.cache;
+
+import com.the.rpc.common.url.URL;
+import com.the.rpc.core.invoke.Invoker;
+import com.the.rpc.core.invoke.RemoteMethod;
+import com.the.rpc.core.invoke.ServiceDescriptor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结果缓存过滤器：同一个 key 并发没有命中的时候只发出一个调用 (singleflight)，失败的结果不缓存
+ */
+class CacheFilterTest {
+
+    private static final int THREADS = 8;
+
+    private final CacheFilter filter = new CacheFilter();
+
+    private final RemoteMethod method = RemoteMethod.of(ServiceDescriptor.of(EchoService.class, null),
+            URL.valueOf("the-rpc://127.0.0.1:0?cache=true"))[0];
+
+    @Test
+    void singleflight() throws Throwable {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Invoker next = (m, args) -> {
+            calls.incrementAndGet();
+            release.await();
+            return "echo:" + args[0];
+        };
+        List<Future<Object>> results = invokeConcurrently(next, "a", release);
+        for (Future<Object> result : results) {
+            assertEquals("echo:a", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        // 之后直接命中缓存
+        assertEquals("echo:a", filter.invoke(next, method, new Object[]{"a"}));
+        assertEquals(1, calls.get());
+        // 参数不同是不同的 key
+        assertEquals("echo:b", filter.invoke(next, method, new Object[]{"b"}));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void failureSharedAndNotCached() throws Throwable {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException error = new IllegalStateException("boom");
+        Invoker failing = (m, args) -> {
+            calls.incrementAndGet();
+            release.await();
+            throw error;
+        };
+        List<Future<Object>> results = invokeConcurrently(failing, "c", release);
+        for (Future<Object> result : results) {
+            Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(error, e.getCause());
+        }
+        assertEquals(1, calls.get());
+        // 失败没有缓存，下一次重新调用
+        assertEquals("ok", filter.invoke((m, args) -> "ok", method, new Object[]{"c"}));
+    }
+
+    @Test
+    void cacheNullResult() throws Throwable {
+        AtomicInteger calls = new AtomicInteger();
+        Invoker next = (m, args) -> {
+            calls.incrementAndGet();
+            return null;
+        };
+        assertNull(filter.invoke(next, method, new Object[]{"d"}));
+        assertNull(filter.invoke(next, method, new Object[]{"d"}));
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * 多个线程用同样的参数同时调用，等它们都进入过滤器之后再放行下游的调用
+     */
+    private List<Future<Object>> invokeConcurrently(Invoker next, String arg, CountDownLatch release) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch started = new CountDownLatch(THREADS);
+        List<Future<Object>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    started.countDown();
+                    try {
+                        return filter.invoke(next, method, new Object[]{arg});
+                    } catch (Throwable e) {
+                        throw e instanceof Exception ? (Exception) e : new RuntimeException(e);
+                    }
+                }));
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            release.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    public interface EchoService {
+
+        String echo(String value);
+    }
+}
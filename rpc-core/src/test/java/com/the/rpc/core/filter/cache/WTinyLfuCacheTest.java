@@ -0,0 +1,74 @@
+package com.the.rpc.core.filter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WTinyLfuCacheTest {
+
+    @Test
+    void getAndPut() {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<>(10, 60_000);
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void neverExceedsMaximum() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>(100, 60_000);
+        for (int i = 0; i < 10_000; i++) {
+            if (cache.get(i % 1000) == null) {
+                cache.put(i % 1000, i);
+            }
+            assertTrue(cache.size() <= 100);
+        }
+    }
+
+    @Test
+    void expireAfterWrite() throws InterruptedException {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<>(10, 50);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * 热点数据一直在被访问，同时有大量只访问一次的数据扫过，热点数据要留在缓存里面。换成 LRU 的话热点会被扫出去
+     */
+    @Test
+    void scanResistant() {
+        int maximum = 100;
+        int hot = 50;
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>(maximum, 60_000);
+        int scan = 1_000_000;
+        int hotHits = 0;
+        int hotRequests = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int key = 0; key < hot; key++) {
+                hotRequests++;
+                if (access(cache, key)) {
+                    hotHits++;
+                }
+            }
+            // 每轮扫过的新 key 比缓存还多
+            for (int i = 0; i < 2 * maximum; i++) {
+                access(cache, scan++);
+            }
+        }
+        assertTrue(hotHits > hotRequests * 0.9, "hot hit rate " + hotHits + "/" + hotRequests);
+    }
+
+    private static boolean access(WTinyLfuCache<Integer, Integer> cache, int key) {
+        if (cache.get(key) != null) {
+            return true;
+        }
+        cache.put(key, key);
+        return false;
+    }
+}
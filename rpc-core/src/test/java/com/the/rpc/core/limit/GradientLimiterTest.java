@@ -0,0 +1,86 @@
+package com.the.rpc.core.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发限制：超过限制值拒绝，RTT 稳定的时候限制值变大，RTT 变大的时候限制值变小。<br>
+ * 限制值按 100ms 的窗口更新，每个窗口先获取一批许可，等窗口结束再带着 RTT 释放
+ */
+class GradientLimiterTest {
+
+    private static final long WINDOW_MS = 110;
+
+    @Test
+    void rejectOverLimit() {
+        GradientLimiter limiter = new GradientLimiter(3);
+        assertEquals(3, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(3, limiter.getInFlight());
+        limiter.releaseWithoutSample();
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void growWhenRttIsStable() throws InterruptedException {
+        GradientLimiter limiter = new GradientLimiter(1000);
+        int initial = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            window(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertTrue(limiter.getLimit() > initial, "limit " + limiter.getLimit());
+    }
+
+    @Test
+    void shrinkWhenRttIncreases() throws InterruptedException {
+        GradientLimiter limiter = new GradientLimiter(1000);
+        for (int i = 0; i < 3; i++) {
+            window(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        int before = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            window(limiter, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertTrue(limiter.getLimit() < before, "limit " + before + " -> " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 1);
+    }
+
+    @Test
+    void keepLimitWhenUnderused() throws InterruptedException {
+        GradientLimiter limiter = new GradientLimiter(1000);
+        int initial = limiter.getLimit();
+        // 并发数远没到限制值，RTT 变大也不调整
+        for (int i = 0; i < 5; i++) {
+            window(limiter, 5, TimeUnit.MILLISECONDS.toNanos(i == 0 ? 1 : 50));
+        }
+        assertEquals(initial, limiter.getLimit());
+    }
+
+    /**
+     * 占用大半的限制值跑一个窗口
+     */
+    private static void window(GradientLimiter limiter, long rttNanos) throws InterruptedException {
+        window(limiter, limiter.getLimit() * 3 / 4, rttNanos);
+    }
+
+    private static void window(GradientLimiter limiter, int permits, long rttNanos) throws InterruptedException {
+        // 同样的 RTT 多释放几轮，窗口更新的时候样本数一定够
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < permits; i++) {
+                assertTrue(limiter.tryAcquire());
+            }
+            Thread.sleep(WINDOW_MS / 2 + 1);
+            for (int i = 0; i < permits; i++) {
+                limiter.release(rttNanos);
+            }
+        }
+        assertEquals(0, limiter.getInFlight());
+    }
+}
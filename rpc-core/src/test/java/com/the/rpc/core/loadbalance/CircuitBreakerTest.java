@@ -0,0 +1,137 @@
+package com.the.rpc.core.loadbalance;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器的状态转换，重点是半开状态：每次只放出一个探测请求，探测成功关闭，探测失败重新摘除并且摘除时间变长。<br>
+ * 摘除时间是秒级的，用例里面直接把摘除结束时间改到过去
+ */
+class CircuitBreakerTest {
+
+    private static final long LATENCY = 1_000_000;
+
+    @Test
+    void tripOnConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("127.0.0.1:1");
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(LATENCY);
+        }
+        assertTrue(breaker.isClosed());
+        // 中间的成功清零连续失败次数
+        breaker.onSuccess(LATENCY);
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(LATENCY);
+        }
+        assertTrue(breaker.isClosed());
+        breaker.onFailure(LATENCY);
+        assertFalse(breaker.isClosed());
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void tripOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker("127.0.0.1:2");
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess(LATENCY);
+            breaker.onFailure(LATENCY);
+        }
+        assertFalse(breaker.isClosed());
+    }
+
+    @Test
+    void halfOpenAllowsOneProbe() throws Exception {
+        CircuitBreaker breaker = tripped("127.0.0.1:3");
+        expireEjection(breaker);
+        assertTrue(breaker.isAvailable());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.HALF_OPEN, state(breaker));
+        // 探测请求还没有结果，其他请求不能发
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(LATENCY);
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(0, ejections(breaker));
+    }
+
+    @Test
+    void halfOpenProbeFailureReopens() throws Exception {
+        CircuitBreaker breaker = tripped("127.0.0.1:4");
+        long firstEjection = openUntil(breaker) - System.nanoTime();
+        expireEjection(breaker);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure(LATENCY);
+        assertEquals(CircuitBreaker.OPEN, state(breaker));
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, ejections(breaker));
+        // 第二次摘除的时间更长
+        assertTrue(openUntil(breaker) - System.nanoTime() > firstEjection);
+        expireEjection(breaker);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(LATENCY);
+        assertTrue(breaker.isClosed());
+    }
+
+    @Test
+    void halfOpenProbeTimeout() throws Exception {
+        CircuitBreaker breaker = tripped("127.0.0.1:5");
+        expireEjection(breaker);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        // 探测请求迟迟没有结果，超时之后允许再探测一次
+        setProbeAt(breaker, System.nanoTime() - 4_000_000_000L);
+        assertTrue(breaker.isAvailable());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    private static CircuitBreaker tripped(String address) {
+        CircuitBreaker breaker = new CircuitBreaker(address);
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure(LATENCY);
+        }
+        assertEquals(CircuitBreaker.OPEN, state(breaker));
+        return breaker;
+    }
+
+    private static void expireEjection(CircuitBreaker breaker) throws Exception {
+        Field field = CircuitBreaker.class.getDeclaredField("openUntil");
+        field.setAccessible(true);
+        field.setLong(breaker, System.nanoTime() - 1);
+    }
+
+    private static long openUntil(CircuitBreaker breaker) throws Exception {
+        Field field = CircuitBreaker.class.getDeclaredField("openUntil");
+        field.setAccessible(true);
+        return field.getLong(breaker);
+    }
+
+    private static int ejections(CircuitBreaker breaker) throws Exception {
+        Field field = CircuitBreaker.class.getDeclaredField("ejections");
+        field.setAccessible(true);
+        return field.getInt(breaker);
+    }
+
+    private static void setProbeAt(CircuitBreaker breaker, long nanos) throws Exception {
+        Field field = CircuitBreaker.class.getDeclaredField("probeAt");
+        field.setAccessible(true);
+        ((AtomicLong) field.get(breaker)).set(nanos);
+    }
+
+    private static int state(CircuitBreaker breaker) {
+        try {
+            Field field = CircuitBreaker.class.getDeclaredField("state");
+            field.setAccessible(true);
+            return ((AtomicInteger) field.get(breaker)).get();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.the.rpc.core.transport.netty;
+
+import com.the.rpc.core.protocol.Attachments;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 报文编码之后再解码，报文头、附件和报文体都要原样还原。解码一侧按字节分批送进去，覆盖拆包
+ */
+class RpcMessageCodecTest {
+
+    @Test
+    void withoutAttachmentsAndDeadline() {
+        RpcMessage msg = new RpcMessage(ProtocolConst.REQUEST, (byte) 1, ProtocolConst.STATUS_OK, 7, 0x1234_5678_9ABC_DEF0L, 0, bytes("hello"));
+        RpcMessage decoded = roundTrip(msg);
+        assertMessage(msg, decoded);
+        assertEquals(0, decoded.getDeadline());
+        assertNull(decoded.getAttachments());
+        assertEquals(ProtocolConst.HEADER_LENGTH + 5, RpcMessageEncoder.frameLength(msg));
+    }
+
+    @Test
+    void withAttachmentsAndDeadline() {
+        byte[] max = new byte[Attachments.MAX_VALUE_LENGTH];
+        Arrays.fill(max, (byte) 'x');
+        Attachments attachments = new Attachments()
+                .put(Attachments.TRACE_ID, new byte[16])
+                .put(Attachments.TRACE_FLAGS, new byte[]{1})
+                .add(Attachments.BAGGAGE, bytes("a=1"))
+                .add(Attachments.BAGGAGE, bytes("b=2"))
+                .put(Attachments.LOAD, max);
+        RpcMessage msg = new RpcMessage(ProtocolConst.RESPONSE, (byte) 2, ProtocolConst.STATUS_ERROR, Long.MAX_VALUE, -1,
+                System.currentTimeMillis() + 3000, bytes("world"));
+        msg.setAttachments(attachments);
+        RpcMessage decoded = roundTrip(msg);
+        assertMessage(msg, decoded);
+        Attachments actual = decoded.getAttachments();
+        assertEquals(attachments.size(), actual.size());
+        for (int i = 0; i < attachments.size(); i++) {
+            assertEquals(attachments.getKey(i), actual.getKey(i));
+            assertArrayEquals(attachments.getValue(i), actual.getValue(i));
+        }
+        assertArrayEquals(bytes("a=1"), actual.get(Attachments.BAGGAGE));
+    }
+
+    @Test
+    void emptyBodyAndEmptyAttachments() {
+        RpcMessage msg = new RpcMessage(ProtocolConst.GOAWAY, (byte) 0, ProtocolConst.STATUS_OK, 0, 0, 0, null);
+        msg.setAttachments(new Attachments());
+        RpcMessage decoded = roundTrip(msg);
+        assertEquals(ProtocolConst.GOAWAY, decoded.getType());
+        assertEquals(0, decoded.getBody().length);
+        // 没有附件项的时候不设置附件标记
+        assertNull(decoded.getAttachments());
+    }
+
+    @Test
+    void rejectUnsupportedVersion() {
+        ByteBuf frame = Unpooled.buffer();
+        RpcMessageEncoder.write(new RpcMessage(ProtocolConst.REQUEST, (byte) 1, ProtocolConst.STATUS_OK, 1, 1, 0, bytes("x")), frame);
+        frame.setByte(ProtocolConst.VERSION_OFFSET, ProtocolConst.VERSION + 1);
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder());
+        assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(frame));
+    }
+
+    @Test
+    void rejectInvalidAttachmentsLength() {
+        RpcMessage msg = new RpcMessage(ProtocolConst.REQUEST, (byte) 1, ProtocolConst.STATUS_OK, 1, 1, 0, bytes("x"));
+        msg.setAttachments(new Attachments().put(Attachments.SPAN_ID, new byte[8]));
+        ByteBuf frame = Unpooled.buffer();
+        RpcMessageEncoder.write(msg, frame);
+        // 附件长度比实际少一个字节
+        frame.setShort(ProtocolConst.HEADER_LENGTH, frame.getUnsignedShort(ProtocolConst.HEADER_LENGTH) - 1);
+        assertThrows(CorruptedFrameException.class, () -> RpcMessageDecoder.read(frame));
+    }
+
+    private static RpcMessage roundTrip(RpcMessage msg) {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        assertTrue(encoder.writeOutbound(msg));
+        ByteBuf encoded = encoder.readOutbound();
+        assertEquals(RpcMessageEncoder.frameLength(msg), encoded.readableBytes());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+        // 一次只送几个字节，帧要等到完整了才解码
+        while (encoded.isReadable()) {
+            decoder.writeInbound(encoded.readRetainedSlice(Math.min(7, encoded.readableBytes())));
+        }
+        encoded.release();
+        RpcMessage decoded = decoder.readInbound();
+        assertNotNull(decoded);
+        assertNull(decoder.readInbound());
+        return decoded;
+    }
+
+    private static void assertMessage(RpcMessage expected, RpcMessage actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getSerializeType(), actual.getSerializeType());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getRequestId(), actual.getRequestId());
+        assertEquals(expected.getMethodId(), actual.getMethodId());
+        assertEquals(expected.getDeadline(), actual.getDeadline());
+        assertArrayEquals(expected.getBody(), actual.getBody());
+        assertTrue(actual.getReceivedNanos() != 0);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
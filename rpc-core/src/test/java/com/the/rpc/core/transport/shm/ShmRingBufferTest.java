@@ -0,0 +1,126 @@
+package com.the.rpc.core.transport.shm;
+
+import com.the.rpc.core.protocol.Attachments;
+import com.the.rpc.core.protocol.ProtocolConst;
+import com.the.rpc.core.protocol.RpcMessage;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 共享内存环形缓冲区：写位置绕回数据区开头、超过一条记录上限的帧分段写入，读出来的报文要和写入的一样
+ */
+class ShmRingBufferTest {
+
+    /**
+     * 最小容量，一条记录最多放 2040 字节
+     */
+    private static final int CAPACITY = 4096;
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @TempDir
+    File dir;
+
+    @Test
+    void wrapAround() throws Exception {
+        ShmRingBuffer writer = ShmRingBuffer.create(new File(dir, "wrap"), CAPACITY);
+        ShmRingBuffer reader = ShmRingBuffer.open(writer.getFile());
+        Random random = new Random(34);
+        // 长度不整齐的报文反复写读，写位置会多次绕回，中间夹着填充标记
+        for (int i = 0; i < 2000; i++) {
+            RpcMessage msg = message(i, random.nextInt(1500));
+            assertTrue(writer.offer(msg, TIMEOUT_NANOS, () -> false));
+            if (random.nextBoolean()) {
+                RpcMessage next = message(-i, random.nextInt(200));
+                assertTrue(writer.offer(next, TIMEOUT_NANOS, () -> false));
+                assertMessage(msg, reader.poll());
+                assertMessage(next, reader.poll());
+            } else {
+                assertMessage(msg, reader.poll());
+            }
+            assertNull(reader.poll());
+        }
+    }
+
+    @Test
+    void fullBufferTimesOut() throws Exception {
+        ShmRingBuffer writer = ShmRingBuffer.create(new File(dir, "full"), CAPACITY);
+        int written = 0;
+        while (writer.offer(message(written, 1000), 0, () -> false)) {
+            written++;
+        }
+        assertTrue(written > 0 && written < 4);
+        assertFalse(writer.offer(message(written, 1000), TimeUnit.MILLISECONDS.toNanos(10), () -> false));
+        // 连接关闭之后不再等待
+        assertFalse(writer.offer(message(written, 1000), TIMEOUT_NANOS, () -> true));
+        ShmRingBuffer reader = ShmRingBuffer.open(writer.getFile());
+        for (int i = 0; i < written; i++) {
+            assertEquals(i, reader.poll().getRequestId());
+        }
+        assertNull(reader.poll());
+    }
+
+    @Test
+    void fragmentedFrame() throws Exception {
+        ShmRingBuffer writer = ShmRingBuffer.create(new File(dir, "fragment"), CAPACITY);
+        ShmRingBuffer reader = ShmRingBuffer.open(writer.getFile());
+        // 比整个缓冲区还大的帧，要一边写一边读
+        RpcMessage large = message(1, 3 * CAPACITY + 123);
+        large.setAttachments(new Attachments().put(Attachments.TRACE_ID, new byte[16]));
+        RpcMessage small = message(2, 10);
+        CompletableFuture<Boolean> write = CompletableFuture.supplyAsync(() -> {
+            try {
+                return writer.offer(large, TIMEOUT_NANOS, () -> false) && writer.offer(small, TIMEOUT_NANOS, () -> false);
+            } catch (CorruptedFrameException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        RpcMessage first = poll(reader);
+        assertMessage(large, first);
+        assertArrayEquals(new byte[16], first.getAttachments().get(Attachments.TRACE_ID));
+        assertMessage(small, poll(reader));
+        assertTrue(write.get(5, TimeUnit.SECONDS));
+        assertNull(reader.poll());
+    }
+
+    @Test
+    void rejectTooLargeFrame() throws Exception {
+        ShmRingBuffer writer = ShmRingBuffer.create(new File(dir, "large"), CAPACITY);
+        RpcMessage msg = message(1, ProtocolConst.DEFAULT_MAX_FRAME_LENGTH);
+        assertThrows(CorruptedFrameException.class, () -> writer.offer(msg, TIMEOUT_NANOS, () -> false));
+    }
+
+    private static RpcMessage poll(ShmRingBuffer reader) throws CorruptedFrameException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        int attempts = 0;
+        RpcMessage msg;
+        while ((msg = reader.poll()) == null) {
+            assertTrue(System.nanoTime() < deadline, "poll timeout");
+            ShmRingBuffer.idle(attempts++);
+        }
+        return msg;
+    }
+
+    private static RpcMessage message(long requestId, int bodyLength) {
+        byte[] body = new byte[bodyLength];
+        for (int i = 0; i < bodyLength; i++) {
+            body[i] = (byte) (requestId + i);
+        }
+        return new RpcMessage(ProtocolConst.REQUEST, (byte) 1, ProtocolConst.STATUS_OK, requestId, 42, 0, body);
+    }
+
+    private static void assertMessage(RpcMessage expected, RpcMessage actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getRequestId(), actual.getRequestId());
+        assertEquals(expected.getMethodId(), actual.getMethodId());
+        assertArrayEquals(expected.getBody(), actual.getBody());
+    }
+}